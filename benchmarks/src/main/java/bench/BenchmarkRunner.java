@@ -0,0 +1,39 @@
+package bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Runs JMH and always saves the results as JSON under benchmarks/results/,
+ * one timestamped file per run, so consecutive runs can be diffed.
+ *
+ * Usage: BenchmarkRunner [standard JMH command line options]
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        File dir = new File(System.getProperty("bench.results", "benchmarks/results"));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IllegalStateException("Cannot create results directory " + dir);
+        }
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        File out = new File(dir, "jmh-" + stamp + ".json");
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .resultFormat(ResultFormatType.JSON)
+                .result(out.getPath());
+
+        new Runner(options.build()).run();
+        System.out.println("Results written to " + out.getPath());
+    }
+}
@@ -0,0 +1,54 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import parser.ComputationNode;
+import spl.lae.LinearAlgebraEngine;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full LinearAlgebraEngine.run on synthetic trees.
+ * run() shuts its executor down, so each invocation builds a fresh engine and tree;
+ * thread start-up is therefore part of the measured time, as it is for a real job.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EngineBenchmark {
+
+    @Param({"64", "256"})
+    public int size;
+
+    @Param({"4"})
+    public int threads;
+
+    @Param({"mixed", "addChain"})
+    public String shape;
+
+    private double[][] a;
+    private double[][] b;
+    private double[][] c;
+    private double[][][] chain;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        a = SyntheticData.matrix(size, size, 31);
+        b = SyntheticData.matrix(size, size, 32);
+        c = SyntheticData.matrix(size, size, 33);
+        chain = new double[8][][];
+        for (int i = 0; i < chain.length; i++) {
+            chain[i] = SyntheticData.matrix(size, size, 40 + i);
+        }
+    }
+
+    @Benchmark
+    public ComputationNode run() {
+        ComputationNode root = "mixed".equals(shape)
+                ? SyntheticData.mixedTree(a, b, c)
+                : SyntheticData.addChain(chain);
+        return new LinearAlgebraEngine(threads).run(root);
+    }
+}
@@ -0,0 +1,71 @@
+package bench;
+
+import memory.LayoutConverter;
+import org.openjdk.jmh.annotations.*;
+import scheduling.TiredExecutor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Row-major -> column-major conversion kernels. Each conversion reads and writes n * n doubles,
+ * so the effective bandwidth is 16 * n * n bytes / time; copyRows is the sequential-copy ceiling
+ * the blocked kernels should approach.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayoutConversionBenchmark {
+
+    @Param({"512", "2048", "4096"})
+    public int size;
+
+    private double[][] src;
+    private double[][] dst;
+    private TiredExecutor executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        src = SyntheticData.matrix(size, size, 7);
+        dst = new double[size][size];
+        executor = new TiredExecutor(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public double[][] naive() {
+        for (int i = 0; i < size; i++) {
+            double[] s = src[i];
+            for (int j = 0; j < size; j++) {
+                dst[j][i] = s[j];
+            }
+        }
+        return dst;
+    }
+
+    @Benchmark
+    public double[][] blocked() {
+        LayoutConverter.transpose(src, dst);
+        return dst;
+    }
+
+    @Benchmark
+    public double[][] blockedParallel() {
+        LayoutConverter.transpose(src, dst, executor);
+        return dst;
+    }
+
+    @Benchmark
+    public double[][] copyRows() {
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(src[i], 0, dst[i], 0, size);
+        }
+        return dst;
+    }
+}
@@ -0,0 +1,91 @@
+package bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.*;
+import parser.ComputationNode;
+import parser.InputParser;
+import parser.OutputWriter;
+import scheduling.TiredExecutor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InputParser.parse and OutputWriter.write on generated files of a given matrix size.
+ * parallelParse uses the executor-backed reader with one worker per available core.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"64", "256", "1024"})
+    public int size;
+
+    private Path dir;
+    private String inputPath;
+    private String outputPath;
+    private double[][] result;
+    private InputParser parser;
+    private TiredExecutor executor;
+    private InputParser parallelParser;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("lae-parser-bench");
+        inputPath = dir.resolve("input.json").toString();
+        outputPath = dir.resolve("output.json").toString();
+        result = SyntheticData.matrix(size, size, 11);
+        parser = new InputParser();
+        executor = new TiredExecutor(Runtime.getRuntime().availableProcessors());
+        parallelParser = new InputParser(executor, 0);
+
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode root = mapper.createObjectNode();
+        root.put("operator", "+");
+        ArrayNode operands = root.putArray("operands");
+        for (int k = 0; k < 2; k++) {
+            double[][] m = SyntheticData.matrix(size, size, 20 + k);
+            ArrayNode rows = operands.addArray();
+            for (double[] r : m) {
+                ArrayNode row = rows.addArray();
+                for (double v : r) {
+                    row.add(v);
+                }
+            }
+        }
+        mapper.writeValue(new File(inputPath), root);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        executor.shutdown();
+        Files.deleteIfExists(Path.of(inputPath));
+        Files.deleteIfExists(Path.of(outputPath));
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public ComputationNode parse() throws ParseException {
+        return parser.parse(inputPath);
+    }
+
+    @Benchmark
+    public ComputationNode parallelParse() throws ParseException {
+        return parallelParser.parse(inputPath);
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        OutputWriter.write(result, outputPath);
+    }
+}
@@ -0,0 +1,55 @@
+package bench;
+
+import memory.SharedMatrix;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SharedMatrixBenchmark {
+
+    @Param({"128", "512", "2048"})
+    public int size;
+
+    private double[][] data;
+    private SharedMatrix target;
+    private SharedMatrix rowMajor;
+    private SharedMatrix columnMajor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        data = SyntheticData.matrix(size, size, 7);
+        target = new SharedMatrix();
+        rowMajor = new SharedMatrix();
+        rowMajor.loadRowMajor(data);
+        columnMajor = new SharedMatrix();
+        columnMajor.loadColumnMajor(data);
+    }
+
+    @Benchmark
+    public SharedMatrix loadRowMajor() {
+        target.loadRowMajor(data);
+        return target;
+    }
+
+    @Benchmark
+    public SharedMatrix loadColumnMajor() {
+        target.loadColumnMajor(data);
+        return target;
+    }
+
+    @Benchmark
+    public double[][] readRowMajorFromRows() {
+        return rowMajor.readRowMajor();
+    }
+
+    @Benchmark
+    public double[][] readRowMajorFromColumns() {
+        return columnMajor.readRowMajor();
+    }
+}
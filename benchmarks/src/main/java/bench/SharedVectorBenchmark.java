@@ -0,0 +1,55 @@
+package bench;
+
+import memory.SharedMatrix;
+import memory.SharedVector;
+import memory.VectorOrientation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SharedVectorBenchmark {
+
+    @Param({"64", "512", "2048"})
+    public int size;
+
+    private SharedVector row;
+    private SharedVector other;
+    private SharedVector column;
+    private double[] rowData;
+    private SharedMatrix columnMajor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        rowData = SyntheticData.vector(size, 1);
+        row = new SharedVector(rowData.clone(), VectorOrientation.ROW_MAJOR);
+        other = new SharedVector(SyntheticData.vector(size, 2), VectorOrientation.ROW_MAJOR);
+        column = new SharedVector(SyntheticData.vector(size, 3), VectorOrientation.COLUMN_MAJOR);
+        columnMajor = new SharedMatrix();
+        columnMajor.loadColumnMajor(SyntheticData.matrix(size, size, 4));
+    }
+
+    @Benchmark
+    public SharedVector add() {
+        row.add(other);
+        return row;
+    }
+
+    @Benchmark
+    public double dot() {
+        return row.dot(column);
+    }
+
+    @Benchmark
+    public SharedVector vecMatMul() {
+        // vecMatMul replaces the vector contents, so start from a fresh row each time
+        SharedVector v = new SharedVector(rowData.clone(), VectorOrientation.ROW_MAJOR);
+        v.vecMatMul(columnMajor);
+        return v;
+    }
+}
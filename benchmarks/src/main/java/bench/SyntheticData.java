@@ -0,0 +1,67 @@
+package bench;
+
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic random matrices and expression trees shared by the benchmarks.
+ */
+public final class SyntheticData {
+
+    private SyntheticData() {}
+
+    public static double[][] matrix(int rows, int cols, long seed) {
+        Random rnd = new Random(seed);
+        double[][] m = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                m[i][j] = rnd.nextDouble() * 2.0 - 1.0;
+            }
+        }
+        return m;
+    }
+
+    public static double[] vector(int length, long seed) {
+        Random rnd = new Random(seed);
+        double[] v = new double[length];
+        for (int i = 0; i < length; i++) {
+            v[i] = rnd.nextDouble() * 2.0 - 1.0;
+        }
+        return v;
+    }
+
+    /**
+     * Builds {@code -(A + T(B)) * C} over square n x n leaves.
+     * The engine mutates trees while resolving them, so callers need a fresh tree per run;
+     * leaf matrices can be shared because the engine copies them on load.
+     */
+    public static ComputationNode mixedTree(double[][] a, double[][] b, double[][] c) {
+        ComputationNode transposed = node(ComputationNodeType.TRANSPOSE, new ComputationNode(b));
+        ComputationNode sum = node(ComputationNodeType.ADD, new ComputationNode(a), transposed);
+        ComputationNode negated = node(ComputationNodeType.NEGATE, sum);
+        return node(ComputationNodeType.MULTIPLY, negated, new ComputationNode(c));
+    }
+
+    /**
+     * Builds a left-deep chain {@code A1 + A2 + ... + Ak} as a single n-ary node.
+     */
+    public static ComputationNode addChain(double[][][] leaves) {
+        List<ComputationNode> children = new ArrayList<>();
+        for (double[][] leaf : leaves) {
+            children.add(new ComputationNode(leaf));
+        }
+        return new ComputationNode(ComputationNodeType.ADD, children);
+    }
+
+    private static ComputationNode node(ComputationNodeType type, ComputationNode... children) {
+        List<ComputationNode> list = new ArrayList<>();
+        for (ComputationNode c : children) {
+            list.add(c);
+        }
+        return new ComputationNode(type, list);
+    }
+}
@@ -0,0 +1,55 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import scheduling.TiredExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * submitAll throughput: "tiny" measures pure scheduling overhead,
+ * "heavy" measures how well the pool spreads ~50us of work per task.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TiredExecutorBenchmark {
+
+    @Param({"4"})
+    public int threads;
+
+    @Param({"tiny", "heavy"})
+    public String taskKind;
+
+    @Param({"1000"})
+    public int tasksPerBatch;
+
+    private TiredExecutor executor;
+    private List<Runnable> tasks;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        executor = new TiredExecutor(threads);
+        tasks = new ArrayList<>(tasksPerBatch);
+        final int spin = "heavy".equals(taskKind) ? 50_000 : 0;
+        for (int i = 0; i < tasksPerBatch; i++) {
+            tasks.add(() -> Blackhole.consumeCPU(spin));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public void submitAll() {
+        executor.submitAll(tasks);
+    }
+}
@@ -0,0 +1,182 @@
+package workload;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Writes random expression trees in the JSON format InputParser expects.
+ * Shapes are chosen top-down so every generated tree is dimensionally valid:
+ * a node of shape r x c gets '+' children of r x c, a 'T' child of c x r,
+ * and '*' children forming a chain r x k1, k1 x k2, ..., kn x c.
+ *
+ * Usage: ExpressionGenerator --out DIR [--count N] [--depth D] [--fanout F]
+ *        [--mix "+=4,*=2,-=1,T=1"] [--rows R] [--cols C] [--min-dim N] [--max-dim N]
+ *        [--density P] [--seed S]
+ */
+public class ExpressionGenerator {
+
+    private static final JsonFactory factory = new JsonFactory();
+
+    private final int depth;
+    private final int fanOut;
+    private final Map<String, Integer> operatorMix;
+    private final int minDim;
+    private final int maxDim;
+    private final double density;
+    private final Random rnd;
+
+    public ExpressionGenerator(int depth, int fanOut, Map<String, Integer> operatorMix,
+                               int minDim, int maxDim, double density, long seed) {
+        if (depth < 0) throw new IllegalArgumentException("depth must be >= 0");
+        if (fanOut < 2) throw new IllegalArgumentException("fanOut must be >= 2");
+        if (minDim <= 0 || maxDim < minDim) throw new IllegalArgumentException("invalid dimension range");
+        if (density < 0.0 || density > 1.0) throw new IllegalArgumentException("density must be in [0, 1]");
+        int total = 0;
+        for (Map.Entry<String, Integer> e : operatorMix.entrySet()) {
+            if (!e.getKey().matches("[+*\\-T]")) {
+                throw new IllegalArgumentException("Unknown operator in mix: " + e.getKey());
+            }
+            total += e.getValue();
+        }
+        if (total <= 0) throw new IllegalArgumentException("operator mix must have a positive weight");
+
+        this.depth = depth;
+        this.fanOut = fanOut;
+        this.operatorMix = new LinkedHashMap<>(operatorMix);
+        this.minDim = minDim;
+        this.maxDim = maxDim;
+        this.density = density;
+        this.rnd = new Random(seed);
+    }
+
+    public static Map<String, Integer> parseMix(String spec) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String part : spec.split(",")) {
+            String[] kv = part.trim().split("=");
+            if (kv.length != 2) throw new IllegalArgumentException("Invalid mix entry: " + part);
+            mix.put(kv[0].trim(), Integer.parseInt(kv[1].trim()));
+        }
+        return mix;
+    }
+
+    /**
+     * Writes one expression whose result has shape rows x cols.
+     */
+    public void write(File file, int rows, int cols) throws IOException {
+        try (JsonGenerator gen = factory.createGenerator(file, JsonEncoding.UTF8)) {
+            writeNode(gen, rows, cols, depth);
+        }
+    }
+
+    private void writeNode(JsonGenerator gen, int rows, int cols, int remaining) throws IOException {
+        if (remaining == 0) {
+            writeMatrix(gen, rows, cols);
+            return;
+        }
+        String op = pickOperator();
+        gen.writeStartObject();
+        gen.writeStringField("operator", op);
+        gen.writeArrayFieldStart("operands");
+        switch (op) {
+            case "+":
+                for (int i = 0; i < fanOut; i++) {
+                    writeChild(gen, rows, cols, remaining - 1);
+                }
+                break;
+            case "*":
+                int inner = rows;
+                for (int i = 0; i < fanOut; i++) {
+                    int next = (i == fanOut - 1) ? cols : dim();
+                    writeChild(gen, inner, next, remaining - 1);
+                    inner = next;
+                }
+                break;
+            case "-":
+                writeChild(gen, rows, cols, remaining - 1);
+                break;
+            case "T":
+                writeChild(gen, cols, rows, remaining - 1);
+                break;
+            default:
+                throw new IllegalStateException("Unknown operator: " + op);
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    private void writeChild(JsonGenerator gen, int rows, int cols, int remaining) throws IOException {
+        // Stop early now and then so trees are not perfectly balanced
+        int next = (remaining > 0 && rnd.nextInt(4) == 0) ? 0 : remaining;
+        writeNode(gen, rows, cols, next);
+    }
+
+    private void writeMatrix(JsonGenerator gen, int rows, int cols) throws IOException {
+        gen.writeStartArray();
+        for (int i = 0; i < rows; i++) {
+            gen.writeStartArray();
+            for (int j = 0; j < cols; j++) {
+                if (rnd.nextDouble() < density) {
+                    gen.writeNumber(rnd.nextInt(19) - 9);
+                } else {
+                    gen.writeNumber(0);
+                }
+            }
+            gen.writeEndArray();
+        }
+        gen.writeEndArray();
+    }
+
+    private String pickOperator() {
+        int total = 0;
+        for (int w : operatorMix.values()) total += w;
+        int r = rnd.nextInt(total);
+        for (Map.Entry<String, Integer> e : operatorMix.entrySet()) {
+            r -= e.getValue();
+            if (r < 0) return e.getKey();
+        }
+        throw new IllegalStateException("unreachable");
+    }
+
+    private int dim() {
+        return minDim + rnd.nextInt(maxDim - minDim + 1);
+    }
+
+    public int randomDim() {
+        return dim();
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> opts = Options.parse(args);
+        File out = new File(Options.require(opts, "out"));
+        if (!out.isDirectory() && !out.mkdirs()) {
+            throw new IOException("Cannot create output directory " + out);
+        }
+        int count = Integer.parseInt(opts.getOrDefault("count", "10"));
+        int minDim = Integer.parseInt(opts.getOrDefault("min-dim", "32"));
+        int maxDim = Integer.parseInt(opts.getOrDefault("max-dim", "128"));
+
+        ExpressionGenerator gen = new ExpressionGenerator(
+                Integer.parseInt(opts.getOrDefault("depth", "3")),
+                Integer.parseInt(opts.getOrDefault("fanout", "2")),
+                parseMix(opts.getOrDefault("mix", "+=4,*=2,-=1,T=1")),
+                minDim,
+                maxDim,
+                Double.parseDouble(opts.getOrDefault("density", "1.0")),
+                Long.parseLong(opts.getOrDefault("seed", "42")));
+
+        for (int i = 0; i < count; i++) {
+            int rows = opts.containsKey("rows") ? Integer.parseInt(opts.get("rows")) : gen.randomDim();
+            int cols = opts.containsKey("cols") ? Integer.parseInt(opts.get("cols")) : gen.randomDim();
+            File f = new File(out, String.format("expr-%04d.json", i));
+            gen.write(f, rows, cols);
+        }
+        System.out.println("Wrote " + count + " expressions to " + out);
+    }
+}
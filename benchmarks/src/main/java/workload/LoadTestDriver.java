@@ -0,0 +1,208 @@
+package workload;
+
+import metrics.LatencyHistogram;
+import parser.ComputationNode;
+import parser.InputParser;
+import spl.lae.LinearAlgebraEngine;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs expression files through LinearAlgebraEngine with N jobs in flight and reports
+ * throughput, latency percentiles, GC activity and allocation rate.
+ * Inputs are either existing files (--inputs DIR) or generated on the fly (--generate N).
+ *
+ * Usage: LoadTestDriver (--inputs DIR | --generate N [generator options]) [--jobs TOTAL]
+ *        [--concurrency N] [--threads T] [--warmup W]
+ */
+public class LoadTestDriver {
+
+    private final List<File> inputs;
+    private final int concurrency;
+    private final int threadsPerJob;
+
+    public LoadTestDriver(List<File> inputs, int concurrency, int threadsPerJob) {
+        if (inputs.isEmpty()) throw new IllegalArgumentException("no input files");
+        if (concurrency <= 0) throw new IllegalArgumentException("concurrency must be > 0");
+        if (threadsPerJob <= 0) throw new IllegalArgumentException("threads must be > 0");
+        this.inputs = inputs;
+        this.concurrency = concurrency;
+        this.threadsPerJob = threadsPerJob;
+    }
+
+    public static final class Report {
+        public final int jobs;
+        public final int failures;
+        public final long wallNanos;
+        public final LatencyHistogram.Snapshot latency;
+        public final long gcCount;
+        public final long gcMillis;
+        public final long allocatedBytes;
+
+        Report(int jobs, int failures, long wallNanos, LatencyHistogram.Snapshot latency,
+               long gcCount, long gcMillis, long allocatedBytes) {
+            this.jobs = jobs;
+            this.failures = failures;
+            this.wallNanos = wallNanos;
+            this.latency = latency;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        public double jobsPerSecond() {
+            return jobs / (wallNanos / 1_000_000_000.0);
+        }
+
+        @Override
+        public String toString() {
+            double seconds = wallNanos / 1_000_000_000.0;
+            return String.format(Locale.US,
+                    "jobs=%d failures=%d wall=%.2fs throughput=%.2f jobs/s%n"
+                            + "latency p50=%.2fms p99=%.2fms max=%.2fms%n"
+                            + "gc count=%d time=%dms (%.1f%% of wall)%n"
+                            + "allocated=%.1fMB rate=%.1fMB/s",
+                    jobs, failures, seconds, jobsPerSecond(),
+                    latency.valueAtPercentile(50) / 1e6,
+                    latency.valueAtPercentile(99) / 1e6,
+                    latency.getMaxNanos() / 1e6,
+                    gcCount, gcMillis, 100.0 * gcMillis / Math.max(1.0, seconds * 1000),
+                    allocatedBytes / 1e6, allocatedBytes / 1e6 / seconds);
+        }
+    }
+
+    /**
+     * Runs totalJobs jobs, cycling through the input files.
+     */
+    public Report run(int totalJobs) throws InterruptedException {
+        LatencyHistogram latency = new LatencyHistogram();
+        AtomicInteger failures = new AtomicInteger(0);
+        InputParser parser = new InputParser();
+
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcMillis();
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+
+        ExecutorService jobs = Executors.newFixedThreadPool(concurrency);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < totalJobs; i++) {
+                final File input = inputs.get(i % inputs.size());
+                futures.add(jobs.submit(() -> {
+                    long jobStart = System.nanoTime();
+                    try {
+                        ComputationNode root = parser.parse(input.getPath());
+                        new LinearAlgebraEngine(threadsPerJob).run(root);
+                    } catch (Exception | Error e) {
+                        failures.incrementAndGet();
+                        System.err.println("Job " + input.getName() + " failed: " + e);
+                    } finally {
+                        latency.record(System.nanoTime() - jobStart);
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (java.util.concurrent.ExecutionException e) {
+                    failures.incrementAndGet();
+                }
+            }
+        } finally {
+            jobs.shutdown();
+            jobs.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        long wall = System.nanoTime() - start;
+        return new Report(totalJobs, failures.get(), wall, latency.snapshot(),
+                gcCount() - gcCountBefore, gcMillis() - gcTimeBefore, allocatedBytes() - allocatedBefore);
+    }
+
+    private static long gcCount() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            n += Math.max(0, gc.getCollectionCount());
+        }
+        return n;
+    }
+
+    private static long gcMillis() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            n += Math.max(0, gc.getCollectionTime());
+        }
+        return n;
+    }
+
+    /**
+     * Bytes allocated by all live threads. Engine workers exit when a job ends, so this
+     * under-counts their share; it is still a stable signal for comparing runs.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return 0L;
+        }
+        com.sun.management.ThreadMXBean tb = (com.sun.management.ThreadMXBean) bean;
+        long total = 0;
+        for (long bytes : tb.getThreadAllocatedBytes(tb.getAllThreadIds())) {
+            if (bytes > 0) total += bytes;
+        }
+        return total;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = Options.parse(args);
+        List<File> files = new ArrayList<>();
+
+        if (opts.containsKey("inputs")) {
+            File[] listed = new File(opts.get("inputs")).listFiles((d, n) -> n.endsWith(".json"));
+            if (listed == null) throw new IllegalArgumentException("Not a directory: " + opts.get("inputs"));
+            Arrays.sort(listed);
+            files.addAll(Arrays.asList(listed));
+        } else {
+            int n = Integer.parseInt(Options.require(opts, "generate"));
+            File dir = Files.createTempDirectory("lae-load").toFile();
+            ExpressionGenerator gen = new ExpressionGenerator(
+                    Integer.parseInt(opts.getOrDefault("depth", "3")),
+                    Integer.parseInt(opts.getOrDefault("fanout", "2")),
+                    ExpressionGenerator.parseMix(opts.getOrDefault("mix", "+=4,*=2,-=1,T=1")),
+                    Integer.parseInt(opts.getOrDefault("min-dim", "32")),
+                    Integer.parseInt(opts.getOrDefault("max-dim", "128")),
+                    Double.parseDouble(opts.getOrDefault("density", "1.0")),
+                    Long.parseLong(opts.getOrDefault("seed", "42")));
+            for (int i = 0; i < n; i++) {
+                File f = new File(dir, String.format("expr-%04d.json", i));
+                gen.write(f, gen.randomDim(), gen.randomDim());
+                f.deleteOnExit();
+                files.add(f);
+            }
+            dir.deleteOnExit();
+        }
+
+        LoadTestDriver driver = new LoadTestDriver(files,
+                Integer.parseInt(opts.getOrDefault("concurrency", "4")),
+                Integer.parseInt(opts.getOrDefault("threads", "4")));
+
+        int warmup = Integer.parseInt(opts.getOrDefault("warmup", String.valueOf(files.size())));
+        if (warmup > 0) {
+            driver.run(warmup);
+        }
+        Report report = driver.run(Integer.parseInt(opts.getOrDefault("jobs", String.valueOf(files.size() * 5))));
+        System.out.println(report);
+    }
+}
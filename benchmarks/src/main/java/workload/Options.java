@@ -0,0 +1,35 @@
+package workload;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Minimal "--key value" command line parsing for the workload tools.
+ */
+final class Options {
+
+    private Options() {}
+
+    static Map<String, String> parse(String[] args) {
+        Map<String, String> opts = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (!a.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + a);
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + a);
+            }
+            opts.put(a.substring(2), args[++i]);
+        }
+        return opts;
+    }
+
+    static String require(Map<String, String> opts, String key) {
+        String v = opts.get(key);
+        if (v == null) {
+            throw new IllegalArgumentException("Missing required option --" + key);
+        }
+        return v;
+    }
+}
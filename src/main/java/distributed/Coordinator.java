@@ -0,0 +1,464 @@
+package distributed;
+
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+import spl.lae.ExecutionPlan;
+import spl.lae.ExecutionPlanner;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Evaluates expression trees across {@link WorkerNode} processes. Every node is split into one
+ * task per output tile (tileSize x tileSize): ADD and MULTIPLY combine operand tiles, NEGATE and
+ * TRANSPOSE map a single tile, and POWER runs as its repeated-squaring sequence of distributed
+ * multiplies. Operand tiles are shipped to the workers on demand and result tiles are gathered
+ * back; intermediates stay tile grids and only the root is assembled into a matrix.
+ *
+ * Placement is locality-aware: workers keep the tiles they received or computed while they are
+ * still needed, and a task goes to the live worker that minimises (tiles it would have to
+ * receive) + (tile products already queued on it). A result tile therefore tends to be consumed
+ * where it was produced. If a worker dies, its unfinished tasks are placed again on the
+ * remaining workers, which are sent the operand tiles they lack. For this the coordinator holds
+ * a node's result tiles until every node consuming it has finished, then drops them here and on
+ * the workers; leaf tiles are cut from the input matrices whenever they are shipped. The run
+ * fails only when no worker is left.
+ *
+ * One tree is evaluated at a time.
+ */
+public class Coordinator implements AutoCloseable {
+
+    private final List<WorkerLink> links = new ArrayList<>();
+    private final int tileSize;
+    private long nextId = 1;
+    private int retries = 0;
+    private long heldBytes = 0;
+    private long peakHeldBytes = 0;
+
+    // state of the current run
+    private final Map<Long, Protocol.Tile> tiles = new HashMap<>(); // computed tiles still needed
+    private final Map<Long, LeafTile> leafTiles = new HashMap<>();
+    private final Map<ComputationNode, long[][]> grids = new IdentityHashMap<>();
+    private final Map<ComputationNode, Integer> parents = new IdentityHashMap<>();
+    private final Map<long[][], Integer> pendingUses = new IdentityHashMap<>();
+
+    public Coordinator(List<InetSocketAddress> workers, int tileSize) throws IOException {
+        if (workers == null || workers.isEmpty()) {
+            throw new IllegalArgumentException("At least one worker is required");
+        }
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("tileSize must be > 0");
+        }
+        this.tileSize = tileSize;
+        try {
+            for (InetSocketAddress address : workers) {
+                links.add(new WorkerLink(address));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Evaluates the tree and returns the root's matrix. The tree itself is not modified apart
+     * from ExecutionPlanner.rewritePowers() and associativeNesting().
+     *
+     * @throws IllegalArgumentException if the tree is invalid, see ExecutionPlanner
+     * @throws IllegalStateException if a task fails or every worker has died
+     */
+    public double[][] run(ComputationNode root) {
+        ExecutionPlanner.rewritePowers(root);
+        root.associativeNesting();
+        ExecutionPlan plan = ExecutionPlanner.plan(root);
+        if (root.getNodeType() == ComputationNodeType.MATRIX) {
+            return root.getMatrix();
+        }
+        try {
+            countParents(root);
+            ExecutionPlan.Step s = plan.get(root);
+            return assemble(evaluate(root, plan), s.rows, s.cols);
+        } finally {
+            List<Long> ids = new ArrayList<>(tiles.keySet());
+            ids.addAll(leafTiles.keySet());
+            forget(ids);
+            tiles.clear();
+            leafTiles.clear();
+            grids.clear();
+            parents.clear();
+            pendingUses.clear();
+            heldBytes = 0;
+        }
+    }
+
+    private void countParents(ComputationNode node) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            return;
+        }
+        for (ComputationNode child : node.getChildren()) {
+            if (parents.merge(child, 1, Integer::sum) == 1) {
+                countParents(child);
+            }
+        }
+    }
+
+    private long[][] evaluate(ComputationNode node, ExecutionPlan plan) {
+        long[][] known = grids.get(node);
+        if (known != null) {
+            return known;
+        }
+        ComputationNodeType type = node.getNodeType();
+        long[][] result;
+        if (type == ComputationNodeType.MATRIX) {
+            result = leafGrid(node.getMatrix());
+        } else {
+            List<ComputationNode> children = node.getChildren();
+            long[][] a = evaluate(children.get(0), plan);
+            ExecutionPlan.Step s = plan.get(node);
+            switch (type) {
+                case NEGATE:
+                case TRANSPOSE:
+                    result = grid(s.rows, s.cols);
+                    distribute(type, a, null, s.rows, s.cols, result);
+                    break;
+                case ADD:
+                case MULTIPLY:
+                    result = grid(s.rows, s.cols);
+                    distribute(type, a, evaluate(children.get(1), plan), s.rows, s.cols, result);
+                    break;
+                case POWER:
+                    result = power(a, s.rows, node.getExponent());
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Unsupported operation: " + type);
+            }
+            for (ComputationNode child : children) {
+                consumed(grids.get(child));
+            }
+        }
+        grids.put(node, result);
+        pendingUses.merge(result, parents.getOrDefault(node, 0), Integer::sum);
+        return result;
+    }
+
+    /**
+     * One consumer of the grid has finished; the last one releases its tiles.
+     */
+    private void consumed(long[][] grid) {
+        if (pendingUses.merge(grid, -1, Integer::sum) <= 0) {
+            pendingUses.remove(grid);
+            release(grid);
+        }
+    }
+
+    private void release(long[][] grid) {
+        List<Long> ids = new ArrayList<>();
+        for (long[] row : grid) {
+            for (long id : row) {
+                Protocol.Tile t = tiles.remove(id);
+                if (t != null) {
+                    heldBytes -= 8L * t.values.length;
+                }
+                leafTiles.remove(id);
+                ids.add(id);
+            }
+        }
+        forget(ids);
+    }
+
+    private void forget(List<Long> ids) {
+        for (WorkerLink link : links) {
+            List<Long> held = new ArrayList<>();
+            for (Long id : ids) {
+                if (link.cached.contains(id)) held.add(id);
+            }
+            if (!held.isEmpty()) {
+                link.forget(held);
+            }
+        }
+    }
+
+    private void hold(long id, Protocol.Tile tile) {
+        tiles.put(id, tile);
+        heldBytes += 8L * tile.values.length;
+        peakHeldBytes = Math.max(peakHeldBytes, heldBytes);
+    }
+
+    private static final class TileTask {
+        final byte op;
+        final long id;
+        final long outTile;
+        final long[] inputs;
+        WorkerLink worker;
+        CompletableFuture<Protocol.Tile> result;
+        int attempts = 0;
+
+        TileTask(byte op, long id, long outTile, long[] inputs) {
+            this.op = op;
+            this.id = id;
+            this.outTile = outTile;
+            this.inputs = inputs;
+        }
+
+        int products() {
+            return op == Protocol.MULTIPLY ? inputs.length / 2 : 1;
+        }
+    }
+
+    /**
+     * A^k by repeated squaring; squares and partial products are released once consumed.
+     */
+    private long[][] power(long[][] base, int n, int k) {
+        long[][] result = null;
+        long[][] square = base;
+        while (true) {
+            if ((k & 1) != 0) {
+                if (result == null) {
+                    result = square;
+                } else {
+                    long[][] out = grid(n, n);
+                    distribute(ComputationNodeType.MULTIPLY, result, square, n, n, out);
+                    if (result != square && result != base) release(result);
+                    result = out;
+                }
+            }
+            k >>>= 1;
+            if (k == 0) {
+                break;
+            }
+            long[][] out = grid(n, n);
+            distribute(ComputationNodeType.MULTIPLY, square, square, n, n, out);
+            if (square != result && square != base) release(square);
+            square = out;
+        }
+        if (square != result && square != base) release(square);
+        return result;
+    }
+
+    /**
+     * Runs one node over tiled operands (b is null for NEGATE and TRANSPOSE); the result tiles
+     * are held under the ids in out.
+     */
+    private void distribute(ComputationNodeType type, long[][] a, long[][] b, int rows, int cols, long[][] out) {
+        if (rows == 0 || cols == 0) {
+            return;
+        }
+        int shared = type == ComputationNodeType.MULTIPLY ? a[0].length : 0;
+        List<TileTask> tasks = new ArrayList<>(out.length * out[0].length);
+        for (int ti = 0; ti < out.length; ti++) {
+            for (int tj = 0; tj < out[ti].length; tj++) {
+                long[] inputs;
+                byte op;
+                switch (type) {
+                    case NEGATE:
+                        op = Protocol.NEGATE;
+                        inputs = new long[]{a[ti][tj]};
+                        break;
+                    case TRANSPOSE:
+                        op = Protocol.TRANSPOSE;
+                        inputs = new long[]{a[tj][ti]};
+                        break;
+                    case ADD:
+                        op = Protocol.ADD;
+                        inputs = new long[]{a[ti][tj], b[ti][tj]};
+                        break;
+                    default:
+                        op = Protocol.MULTIPLY;
+                        inputs = new long[2 * shared];
+                        for (int k = 0; k < shared; k++) {
+                            inputs[2 * k] = a[ti][k];
+                            inputs[2 * k + 1] = b[k][tj];
+                        }
+                }
+                if (inputs.length == 0) {
+                    // an empty shared dimension gives zeros
+                    int h = Math.min(tileSize, rows - ti * tileSize);
+                    int w = Math.min(tileSize, cols - tj * tileSize);
+                    hold(out[ti][tj], new Protocol.Tile(h, w, new double[h * w]));
+                    continue;
+                }
+                tasks.add(new TileTask(op, nextId++, out[ti][tj], inputs));
+            }
+        }
+        for (TileTask t : tasks) {
+            dispatch(t);
+        }
+        for (TileTask t : tasks) {
+            hold(t.outTile, await(t));
+        }
+    }
+
+    /**
+     * Copies the tiles of a grid into one rows x cols matrix.
+     */
+    private double[][] assemble(long[][] grid, int rows, int cols) {
+        double[][] result = new double[rows][cols];
+        for (int ti = 0; ti < grid.length; ti++) {
+            for (int tj = 0; tj < grid[ti].length; tj++) {
+                Protocol.Tile tile = tile(grid[ti][tj]);
+                for (int i = 0; i < tile.rows; i++) {
+                    System.arraycopy(tile.values, i * tile.cols, result[ti * tileSize + i], tj * tileSize, tile.cols);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Fresh tile ids for a rows x cols result.
+     */
+    private long[][] grid(int rows, int cols) {
+        long[][] ids = new long[tiles(rows)][tiles(cols)];
+        for (long[] row : ids) {
+            for (int j = 0; j < row.length; j++) row[j] = nextId++;
+        }
+        return ids;
+    }
+
+    private void dispatch(TileTask task) {
+        WorkerLink best = null;
+        long bestScore = Long.MAX_VALUE;
+        for (WorkerLink link : links) {
+            if (!link.isAlive()) {
+                continue;
+            }
+            long missing = 0;
+            for (long id : task.inputs) {
+                if (!link.cached.contains(id)) missing++;
+            }
+            long score = missing + link.inFlight.get() * (long) task.products();
+            if (score < bestScore) {
+                best = link;
+                bestScore = score;
+            }
+        }
+        if (best == null) {
+            throw new IllegalStateException("No live workers left");
+        }
+        task.attempts++;
+        task.worker = best;
+        task.result = best.submit(task.op, task.id, task.outTile, task.inputs, this::tile);
+        // the worker keeps the result tile, so later tasks that consume it prefer this worker
+        best.cached.add(task.outTile);
+    }
+
+    private Protocol.Tile await(TileTask task) {
+        while (true) {
+            try {
+                return task.result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for workers", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (!(cause instanceof IOException)) {
+                    throw new IllegalStateException("Tile task failed on " + task.worker.getAddress() + ": " + cause.getMessage(), cause);
+                }
+                if (task.attempts > links.size()) {
+                    throw new IllegalStateException("Tile task failed " + task.attempts + " times: " + cause.getMessage(), cause);
+                }
+                retries++;
+                dispatch(task);
+            }
+        }
+    }
+
+    /**
+     * A leaf tile: cut from its input matrix each time it is shipped instead of being copied.
+     */
+    private static final class LeafTile {
+        final double[][] matrix;
+        final int ti;
+        final int tj;
+
+        LeafTile(double[][] matrix, int ti, int tj) {
+            this.matrix = matrix;
+            this.ti = ti;
+            this.tj = tj;
+        }
+    }
+
+    private long[][] leafGrid(double[][] m) {
+        int rows = m.length;
+        int cols = rows == 0 ? 0 : m[0].length;
+        long[][] grid = grid(rows, cols);
+        for (int ti = 0; ti < grid.length; ti++) {
+            for (int tj = 0; tj < grid[ti].length; tj++) {
+                leafTiles.put(grid[ti][tj], new LeafTile(m, ti, tj));
+            }
+        }
+        return grid;
+    }
+
+    private Protocol.Tile tile(long id) {
+        Protocol.Tile t = tiles.get(id);
+        if (t != null) {
+            return t;
+        }
+        LeafTile leaf = leafTiles.get(id);
+        if (leaf == null) {
+            throw new IllegalStateException("Tile " + id + " is no longer held");
+        }
+        int rows = leaf.matrix.length;
+        int cols = leaf.matrix[0].length;
+        int h = Math.min(tileSize, rows - leaf.ti * tileSize);
+        int w = Math.min(tileSize, cols - leaf.tj * tileSize);
+        double[] values = new double[h * w];
+        for (int i = 0; i < h; i++) {
+            System.arraycopy(leaf.matrix[leaf.ti * tileSize + i], leaf.tj * tileSize, values, i * w, w);
+        }
+        return new Protocol.Tile(h, w, values);
+    }
+
+    private int tiles(int n) {
+        return (n + tileSize - 1) / tileSize;
+    }
+
+    public int getLiveWorkers() {
+        int n = 0;
+        for (WorkerLink link : links) {
+            if (link.isAlive()) n++;
+        }
+        return n;
+    }
+
+    /**
+     * Number of tile tasks that were placed again after their worker died.
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * Largest amount of computed tile data the coordinator held at once, in bytes.
+     */
+    public long getPeakHeldBytes() {
+        return peakHeldBytes;
+    }
+
+    public String getReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "Coordinator: tile=%d, workers=%d/%d live, retries=%d, held peak=%.1f MB%n",
+                tileSize, getLiveWorkers(), links.size(), retries, peakHeldBytes / (1024.0 * 1024.0)));
+        for (WorkerLink link : links) {
+            sb.append(String.format(Locale.US, "  %s: %s, tasks=%d, sent=%.1f MB%n", link.getAddress(),
+                    link.isAlive() ? "live" : "dead", link.tasksCompleted.get(), link.bytesSent.get() / (1024.0 * 1024.0)));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void close() {
+        for (WorkerLink link : links) {
+            link.close();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package distributed;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Launches N {@link WorkerNode} JVMs on this host, with the current classpath, for testing the
+ * distributed mode. Workers exit when the cluster is closed or this JVM exits.
+ */
+public class LocalCluster implements AutoCloseable {
+
+    private final List<Process> processes = new ArrayList<>();
+    private final List<InetSocketAddress> addresses = new ArrayList<>();
+
+    private LocalCluster() {
+    }
+
+    public static LocalCluster start(int workers, int threadsPerWorker) throws IOException {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Number of workers must be positive");
+        }
+        if (threadsPerWorker <= 0) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        LocalCluster cluster = new LocalCluster();
+        try {
+            for (int i = 0; i < workers; i++) {
+                Process p = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        WorkerNode.class.getName(), "0", Integer.toString(threadsPerWorker))
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start();
+                cluster.processes.add(p);
+            }
+            for (Process p : cluster.processes) {
+                cluster.addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), awaitReady(p)));
+            }
+        } catch (IOException | RuntimeException e) {
+            cluster.close();
+            throw e;
+        }
+        return cluster;
+    }
+
+    private static int awaitReady(Process p) throws IOException {
+        BufferedReader out = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8));
+        String line = out.readLine();
+        if (line == null || !line.startsWith("READY ")) {
+            throw new IOException("Worker process did not start (exit code "
+                    + (p.isAlive() ? "none" : Integer.toString(p.exitValue())) + ")");
+        }
+        return Integer.parseInt(line.substring("READY ".length()).trim());
+    }
+
+    public List<InetSocketAddress> getAddresses() {
+        return List.copyOf(addresses);
+    }
+
+    /**
+     * Kills one worker process abruptly, e.g. to exercise retries.
+     */
+    public void kill(int index) {
+        processes.get(index).destroyForcibly();
+    }
+
+    @Override
+    public void close() {
+        for (Process p : processes) {
+            try {
+                p.getOutputStream().close(); // the worker exits when its stdin closes
+            } catch (IOException ignored) {
+            }
+        }
+        for (Process p : processes) {
+            try {
+                if (!p.waitFor(2, java.util.concurrent.TimeUnit.SECONDS)) {
+                    p.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                p.destroyForcibly();
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package distributed;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Binary frames exchanged between a {@link Coordinator} and a {@link WorkerNode}. Every frame
+ * is one opcode byte followed by fixed-width big-endian fields; tile values are sent as one
+ * block of raw doubles.
+ *
+ *   PUT_TILE  tileId, rows, cols, values        coordinator -> worker, cached by the worker
+ *   ADD       taskId, outTileId, a, b           out = a + b
+ *   MULTIPLY  taskId, outTileId, n, (a, b) * n  out = sum of a_i * b_i
+ *   NEGATE    taskId, outTileId, a              out = -a
+ *   TRANSPOSE taskId, outTileId, a              out = a^T
+ *   FORGET    n, tileId * n                     drop cached tiles
+ *   RESULT    taskId, rows, cols, values        worker -> coordinator; the worker also caches
+ *                                               the result tile under outTileId
+ *   ERROR     taskId, message
+ */
+final class Protocol {
+
+    static final byte PUT_TILE = 1;
+    static final byte ADD = 2;
+    static final byte MULTIPLY = 3;
+    static final byte FORGET = 4;
+    static final byte NEGATE = 5;
+    static final byte TRANSPOSE = 6;
+    static final byte RESULT = 10;
+    static final byte ERROR = 11;
+
+    private Protocol() {
+    }
+
+    /**
+     * A rows x cols block of a matrix, row-major.
+     */
+    static final class Tile {
+        final int rows;
+        final int cols;
+        final double[] values;
+
+        Tile(int rows, int cols, double[] values) {
+            if (values.length != rows * cols) {
+                throw new IllegalArgumentException("Tile " + rows + "x" + cols + " needs " + rows * cols + " values");
+            }
+            this.rows = rows;
+            this.cols = cols;
+            this.values = values;
+        }
+
+        long bytes() {
+            return (long) values.length * Double.BYTES;
+        }
+    }
+
+    static void writeTile(DataOutputStream out, Tile tile) throws IOException {
+        out.writeInt(tile.rows);
+        out.writeInt(tile.cols);
+        ByteBuffer buf = ByteBuffer.allocate(tile.values.length * Double.BYTES).order(ByteOrder.BIG_ENDIAN);
+        buf.asDoubleBuffer().put(tile.values);
+        out.write(buf.array());
+    }
+
+    static Tile readTile(DataInputStream in) throws IOException {
+        int rows = in.readInt();
+        int cols = in.readInt();
+        if (rows < 0 || cols < 0 || (long) rows * cols > Integer.MAX_VALUE / Double.BYTES) {
+            throw new IOException("Bad tile shape " + rows + "x" + cols);
+        }
+        byte[] bytes = new byte[rows * cols * Double.BYTES];
+        in.readFully(bytes);
+        double[] values = new double[rows * cols];
+        ByteBuffer.wrap(bytes).order(ByteOrder.BIG_ENDIAN).asDoubleBuffer().get(values);
+        return new Tile(rows, cols, values);
+    }
+
+    static Tile add(Tile a, Tile b) {
+        if (a.rows != b.rows || a.cols != b.cols) {
+            throw new IllegalArgumentException("ADD of " + a.rows + "x" + a.cols + " and " + b.rows + "x" + b.cols + " tiles");
+        }
+        double[] out = new double[a.values.length];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = a.values[i] + b.values[i];
+        }
+        return new Tile(a.rows, a.cols, out);
+    }
+
+    static Tile negate(Tile a) {
+        double[] out = new double[a.values.length];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = -a.values[i];
+        }
+        return new Tile(a.rows, a.cols, out);
+    }
+
+    static Tile transpose(Tile a) {
+        double[] out = new double[a.values.length];
+        for (int i = 0; i < a.rows; i++) {
+            for (int j = 0; j < a.cols; j++) {
+                out[j * a.rows + i] = a.values[i * a.cols + j];
+            }
+        }
+        return new Tile(a.cols, a.rows, out);
+    }
+
+    /**
+     * out += a * b, with out of a.rows x b.cols values.
+     */
+    static void multiplyAdd(Tile a, Tile b, double[] out) {
+        if (a.cols != b.rows) {
+            throw new IllegalArgumentException("MULTIPLY of " + a.rows + "x" + a.cols + " and " + b.rows + "x" + b.cols + " tiles");
+        }
+        int n = b.cols;
+        for (int i = 0; i < a.rows; i++) {
+            int rowBase = i * n;
+            for (int k = 0; k < a.cols; k++) {
+                double v = a.values[i * a.cols + k];
+                int bBase = k * n;
+                for (int j = 0; j < n; j++) {
+                    out[rowBase + j] += v * b.values[bBase + j];
+                }
+            }
+        }
+    }
+}
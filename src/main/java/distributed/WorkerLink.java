@@ -0,0 +1,165 @@
+package distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Coordinator side of one worker connection. Tasks complete their future with the result tile,
+ * with an IllegalStateException if the worker reported an error, or with an IOException once
+ * the connection fails; after a failure the link stays dead.
+ */
+final class WorkerLink {
+
+    private final InetSocketAddress address;
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final Map<Long, CompletableFuture<Protocol.Tile>> pending = new ConcurrentHashMap<>();
+    final Set<Long> cached = ConcurrentHashMap.newKeySet(); // tiles this worker holds
+    final AtomicInteger inFlight = new AtomicInteger(0);
+    final AtomicLong tasksCompleted = new AtomicLong(0);
+    final AtomicLong bytesSent = new AtomicLong(0);
+    private volatile IOException failure = null;
+
+    WorkerLink(InetSocketAddress address) throws IOException {
+        this.address = address;
+        this.socket = new Socket(address.getAddress(), address.getPort());
+        this.socket.setTcpNoDelay(true);
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+        Thread reader = new Thread(this::readLoop, "coordinator-link-" + address.getPort());
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    boolean isAlive() {
+        return failure == null;
+    }
+
+    InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Sends the tiles the worker does not hold yet, looked up through tiles, then the task.
+     */
+    CompletableFuture<Protocol.Tile> submit(byte op, long taskId, long outTileId, long[] inputs,
+                                            LongFunction<Protocol.Tile> tiles) {
+        CompletableFuture<Protocol.Tile> future = new CompletableFuture<>();
+        pending.put(taskId, future);
+        inFlight.incrementAndGet();
+        future.whenComplete((t, e) -> inFlight.decrementAndGet());
+        try {
+            synchronized (out) {
+                if (failure != null) {
+                    throw failure;
+                }
+                for (long id : inputs) {
+                    if (cached.add(id)) {
+                        Protocol.Tile t = tiles.apply(id);
+                        out.writeByte(Protocol.PUT_TILE);
+                        out.writeLong(id);
+                        Protocol.writeTile(out, t);
+                        bytesSent.addAndGet(t.bytes());
+                    }
+                }
+                out.writeByte(op);
+                out.writeLong(taskId);
+                out.writeLong(outTileId);
+                if (op == Protocol.MULTIPLY) {
+                    out.writeInt(inputs.length / 2);
+                }
+                for (long id : inputs) {
+                    out.writeLong(id);
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            fail(e);
+            if (pending.remove(taskId) != null) {
+                future.completeExceptionally(failure);
+            }
+        }
+        return future;
+    }
+
+    void forget(Collection<Long> ids) {
+        if (ids.isEmpty() || failure != null) {
+            return;
+        }
+        try {
+            synchronized (out) {
+                out.writeByte(Protocol.FORGET);
+                out.writeInt(ids.size());
+                for (long id : ids) {
+                    out.writeLong(id);
+                }
+                out.flush();
+            }
+            cached.removeAll(ids);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void readLoop() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16))) {
+            while (true) {
+                byte op = in.readByte();
+                long taskId = in.readLong();
+                CompletableFuture<Protocol.Tile> f;
+                if (op == Protocol.RESULT) {
+                    Protocol.Tile t = Protocol.readTile(in);
+                    f = pending.remove(taskId);
+                    tasksCompleted.incrementAndGet();
+                    if (f != null) {
+                        f.complete(t);
+                    }
+                } else if (op == Protocol.ERROR) {
+                    String message = in.readUTF();
+                    f = pending.remove(taskId);
+                    if (f != null) {
+                        f.completeExceptionally(new IllegalStateException(message));
+                    }
+                } else {
+                    throw new IOException("Unknown opcode " + op + " from " + address);
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(IOException cause) {
+        synchronized (this) {
+            if (failure != null) {
+                return;
+            }
+            failure = new IOException("Worker " + address + " failed: " + cause.getMessage(), cause);
+        }
+        cached.clear();
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+        for (CompletableFuture<Protocol.Tile> f : pending.values()) {
+            f.completeExceptionally(failure);
+        }
+        pending.clear();
+    }
+
+    void close() {
+        fail(new IOException("closed"));
+    }
+}
@@ -0,0 +1,237 @@
+package distributed;
+
+import scheduling.TiredExecutor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Worker process of the distributed mode: caches the tiles a {@link Coordinator} sends and
+ * computes ADD / MULTIPLY / NEGATE / TRANSPOSE tile tasks on its own TiredExecutor. Each connection has its own
+ * tile cache, which is dropped when the connection closes.
+ *
+ * Run standalone with: java distributed.WorkerNode <port> <threads>. The process prints
+ * "READY <port>" once it accepts connections and exits when its standard input is closed,
+ * so workers launched by LocalCluster do not outlive their parent.
+ */
+public class WorkerNode implements AutoCloseable {
+
+    private final ServerSocket server;
+    private final TiredExecutor executor;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+    private volatile boolean closed = false;
+
+    private WorkerNode(ServerSocket server, int threads) {
+        this.server = server;
+        this.executor = new TiredExecutor(threads);
+        this.acceptor = new Thread(this::acceptLoop, "worker-node-accept");
+        this.acceptor.start();
+    }
+
+    /**
+     * Starts a worker on the loopback interface; port 0 picks a free port.
+     */
+    public static WorkerNode start(int port, int threads) throws IOException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        return new WorkerNode(new ServerSocket(port, 50, InetAddress.getLoopbackAddress()), threads);
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                Thread t = new Thread(() -> serve(socket), "worker-node-conn");
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("Worker accept failed: " + e.getMessage());
+                }
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        Map<Long, Protocol.Tile> tiles = new ConcurrentHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16))) {
+            while (true) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                switch (op) {
+                    case Protocol.PUT_TILE: {
+                        long id = in.readLong();
+                        tiles.put(id, Protocol.readTile(in));
+                        break;
+                    }
+                    case Protocol.ADD: {
+                        long taskId = in.readLong();
+                        long outId = in.readLong();
+                        long[] inputs = {in.readLong(), in.readLong()};
+                        executor.submit(() -> compute(op, taskId, outId, inputs, tiles, out));
+                        break;
+                    }
+                    case Protocol.NEGATE:
+                    case Protocol.TRANSPOSE: {
+                        long taskId = in.readLong();
+                        long outId = in.readLong();
+                        long[] inputs = {in.readLong()};
+                        executor.submit(() -> compute(op, taskId, outId, inputs, tiles, out));
+                        break;
+                    }
+                    case Protocol.MULTIPLY: {
+                        long taskId = in.readLong();
+                        long outId = in.readLong();
+                        int n = in.readInt();
+                        long[] inputs = new long[2 * n];
+                        for (int i = 0; i < inputs.length; i++) {
+                            inputs[i] = in.readLong();
+                        }
+                        executor.submit(() -> compute(op, taskId, outId, inputs, tiles, out));
+                        break;
+                    }
+                    case Protocol.FORGET: {
+                        int n = in.readInt();
+                        for (int i = 0; i < n; i++) {
+                            tiles.remove(in.readLong());
+                        }
+                        break;
+                    }
+                    default:
+                        throw new IOException("Unknown opcode " + op);
+                }
+            }
+        } catch (SocketException | IllegalStateException e) {
+            // connection reset or worker closed (its executor no longer takes tasks)
+        } catch (IOException e) {
+            if (!closed) {
+                System.err.println("Worker connection failed: " + e.getMessage());
+            }
+        } finally {
+            connections.remove(socket);
+            tiles.clear();
+        }
+    }
+
+    private static void compute(byte op, long taskId, long outId, long[] inputs,
+                                Map<Long, Protocol.Tile> tiles, DataOutputStream out) {
+        Protocol.Tile result;
+        try {
+            if (op == Protocol.ADD) {
+                result = Protocol.add(tile(tiles, inputs[0]), tile(tiles, inputs[1]));
+            } else if (op == Protocol.NEGATE) {
+                result = Protocol.negate(tile(tiles, inputs[0]));
+            } else if (op == Protocol.TRANSPOSE) {
+                result = Protocol.transpose(tile(tiles, inputs[0]));
+            } else {
+                Protocol.Tile first = tile(tiles, inputs[0]);
+                int cols = tile(tiles, inputs[1]).cols;
+                double[] values = new double[first.rows * cols];
+                for (int i = 0; i < inputs.length; i += 2) {
+                    Protocol.multiplyAdd(tile(tiles, inputs[i]), tile(tiles, inputs[i + 1]), values);
+                }
+                result = new Protocol.Tile(first.rows, cols, values);
+            }
+            tiles.put(outId, result);
+        } catch (RuntimeException e) {
+            sendError(out, taskId, e.getMessage() == null ? e.toString() : e.getMessage());
+            return;
+        }
+        try {
+            synchronized (out) {
+                out.writeByte(Protocol.RESULT);
+                out.writeLong(taskId);
+                Protocol.writeTile(out, result);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the coordinator is gone; the read loop notices and closes the connection
+        }
+    }
+
+    private static Protocol.Tile tile(Map<Long, Protocol.Tile> tiles, long id) {
+        Protocol.Tile t = tiles.get(id);
+        if (t == null) {
+            throw new IllegalStateException("Tile " + id + " is not cached on this worker");
+        }
+        return t;
+    }
+
+    private static void sendError(DataOutputStream out, long taskId, String message) {
+        try {
+            synchronized (out) {
+                out.writeByte(Protocol.ERROR);
+                out.writeLong(taskId);
+                out.writeUTF(message);
+                out.flush();
+            }
+        } catch (IOException ignored) {
+            // the coordinator is gone
+        }
+    }
+
+    /**
+     * Stops accepting, drops all connections (coordinators see the worker die) and stops the
+     * executor.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            server.close();
+        } catch (IOException ignored) {
+        }
+        for (Socket s : connections) {
+            try {
+                s.close();
+            } catch (IOException ignored) {
+            }
+        }
+        try {
+            acceptor.join(1000);
+            executor.shutdown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: WorkerNode <port> <threads>");
+            System.exit(2);
+        }
+        WorkerNode node = start(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+        System.out.println("READY " + node.getPort());
+        System.out.flush();
+        while (System.in.read() >= 0) {
+            // wait for the parent to close our stdin
+        }
+        node.close();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,122 @@
+package memory;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of double[] buffers for intermediate rows and columns.
+ * Size classes are exact lengths: every row of a matrix has the same length, so a released
+ * row is reused as-is by the next matrix of the same width without any slack.
+ * The total size of pooled (idle) buffers is bounded; releases beyond the bound are dropped
+ * and left to the garbage collector.
+ *
+ * Only buffers that nobody else references may be released. Acquired buffers have
+ * undefined contents unless acquireZeroed() is used.
+ */
+public class BufferPool {
+
+    private static final BufferPool GLOBAL = new BufferPool(defaultCapacity());
+
+    private final long maxPooledBytes;
+    private final ConcurrentHashMap<Integer, ConcurrentLinkedDeque<double[]>> classes = new ConcurrentHashMap<>();
+    private final AtomicLong pooledBytes = new AtomicLong(0);
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong dropped = new AtomicLong(0);
+
+    public BufferPool(long maxPooledBytes) {
+        if (maxPooledBytes < 0) {
+            throw new IllegalArgumentException("maxPooledBytes must be >= 0");
+        }
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+    public static BufferPool global() {
+        return GLOBAL;
+    }
+
+    private static long defaultCapacity() {
+        return Math.min(256L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 8);
+    }
+
+    public double[] acquire(int length) {
+        if (length == 0) {
+            return new double[0];
+        }
+        ConcurrentLinkedDeque<double[]> deque = classes.get(length);
+        double[] buf = deque == null ? null : deque.pollFirst();
+        if (buf == null) {
+            misses.incrementAndGet();
+            return new double[length];
+        }
+        pooledBytes.addAndGet(-bytes(length));
+        hits.incrementAndGet();
+        return buf;
+    }
+
+    public double[] acquireZeroed(int length) {
+        double[] buf = acquire(length);
+        Arrays.fill(buf, 0.0);
+        return buf;
+    }
+
+    public void release(double[] buf) {
+        if (buf == null || buf.length == 0) {
+            return;
+        }
+        long size = bytes(buf.length);
+        if (pooledBytes.addAndGet(size) > maxPooledBytes) {
+            pooledBytes.addAndGet(-size);
+            dropped.incrementAndGet();
+            return;
+        }
+        classes.computeIfAbsent(buf.length, k -> new ConcurrentLinkedDeque<>()).offerFirst(buf);
+    }
+
+    /**
+     * Releases every row of a matrix that is no longer referenced anywhere.
+     */
+    public void release(double[][] matrix) {
+        if (matrix == null) {
+            return;
+        }
+        for (double[] row : matrix) {
+            release(row);
+        }
+    }
+
+    public void clear() {
+        classes.clear();
+        pooledBytes.set(0);
+    }
+
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public String getStats() {
+        long h = hits.get();
+        long m = misses.get();
+        return String.format(Locale.US, "BufferPool: pooled=%d/%d bytes, hits=%d, misses=%d, hitRate=%.1f%%, dropped=%d",
+                pooledBytes.get(), maxPooledBytes, h, m, (h + m) == 0 ? 0.0 : 100.0 * h / (h + m), dropped.get());
+    }
+
+    private static long bytes(int length) {
+        return (long) length * Double.BYTES;
+    }
+}
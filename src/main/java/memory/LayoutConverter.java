@@ -0,0 +1,91 @@
+package memory;
+
+import scheduling.CancellationToken;
+import scheduling.ExecutorJob;
+import scheduling.TiredExecutor;
+import scheduling.TiredThread;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cache-blocked row-major <-> column-major conversion, i.e. dst[j][i] = src[i][j].
+ * A plain double loop reads one array sequentially but writes the other with a stride of a whole
+ * row, touching a new cache line for every element. Walking TILE x TILE tiles instead keeps the
+ * TILE destination lines of a tile in L1 while they are filled, so each line is loaded once.
+ * Large conversions are split into bands of destination rows on a TiredExecutor; bands write
+ * disjoint arrays, so no synchronisation is needed.
+ */
+public final class LayoutConverter {
+
+    public static final int TILE = 32; // two 32x32 double tiles take 16 KB, half of a typical L1
+    public static final long PARALLEL_MIN_ELEMENTS = 1L << 18; // below this a task costs more than it saves
+    private static final int BANDS_PER_WORKER = 4;
+
+    private LayoutConverter() {
+    }
+
+    /**
+     * Transposes src (rows x cols) into dst (cols arrays of length rows) on the calling thread.
+     */
+    public static void transpose(double[][] src, double[][] dst) {
+        transposeBand(src, dst, 0, dst.length);
+    }
+
+    /**
+     * Same as transpose(src, dst), split across the executor's workers when the matrix is large
+     * enough. Runs on the calling thread when executor is null or the caller is itself a worker,
+     * which must not block on the pool it belongs to.
+     */
+    public static void transpose(double[][] src, double[][] dst, TiredExecutor executor) {
+        transpose(src, dst, executor, null, null);
+    }
+
+    /**
+     * Same as transpose(src, dst, executor), with the band tasks queued on the caller's job, so
+     * they get its priority class and fair share, and skipped once the token is cancelled.
+     * A null job or token falls back to the executor's default job or to never cancelling.
+     *
+     * @throws java.util.concurrent.CancellationException if the token is cancelled; dst is then
+     *         partly filled
+     */
+    public static void transpose(double[][] src, double[][] dst, TiredExecutor executor,
+                                 CancellationToken token, ExecutorJob job) {
+        int rows = src.length;
+        int cols = dst.length;
+        if (executor == null || (long) rows * cols < PARALLEL_MIN_ELEMENTS
+                || Thread.currentThread() instanceof TiredThread) {
+            transpose(src, dst);
+            return;
+        }
+        int bands = executor.getWorkerCount() * BANDS_PER_WORKER;
+        int bandRows = Math.max(TILE, (cols / bands + TILE - 1) / TILE * TILE);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int from = 0; from < cols; from += bandRows) {
+            final int lo = from;
+            final int hi = Math.min(cols, from + bandRows);
+            tasks.add(() -> transposeBand(src, dst, lo, hi));
+        }
+        executor.submitAll(tasks, token != null ? token : new CancellationToken(),
+                job != null ? job : executor.getDefaultJob());
+    }
+
+    /**
+     * Fills dst[dstFrom .. dstTo) from the matching columns of src, tile by tile.
+     */
+    static void transposeBand(double[][] src, double[][] dst, int dstFrom, int dstTo) {
+        int rows = src.length;
+        for (int i0 = 0; i0 < rows; i0 += TILE) {
+            int i1 = Math.min(rows, i0 + TILE);
+            for (int j0 = dstFrom; j0 < dstTo; j0 += TILE) {
+                int j1 = Math.min(dstTo, j0 + TILE);
+                for (int i = i0; i < i1; i++) {
+                    double[] s = src[i];
+                    for (int j = j0; j < j1; j++) {
+                        dst[j][i] = s[j];
+                    }
+                }
+            }
+        }
+    }
+}
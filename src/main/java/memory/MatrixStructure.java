@@ -0,0 +1,78 @@
+package memory;
+
+/**
+ * Structure of a square matrix that lets kernels skip work: the zero half of a triangular
+ * matrix, everything off the diagonal of a diagonal one, and the transpose of a symmetric one.
+ * Non-square matrices are always GENERAL.
+ */
+public enum MatrixStructure {
+    GENERAL,
+    SYMMETRIC,
+    UPPER_TRIANGULAR,
+    LOWER_TRIANGULAR,
+    DIAGONAL,
+    IDENTITY;
+
+    private static final int BLOCK = 64; // block size of the symmetry scan
+
+    public boolean isDiagonal() {
+        return this == DIAGONAL || this == IDENTITY;
+    }
+
+    public boolean isSymmetric() {
+        return this == SYMMETRIC || this == DIAGONAL || this == IDENTITY;
+    }
+
+    public boolean isUpperTriangular() {
+        return this == UPPER_TRIANGULAR || this == DIAGONAL || this == IDENTITY;
+    }
+
+    public boolean isLowerTriangular() {
+        return this == LOWER_TRIANGULAR || this == DIAGONAL || this == IDENTITY;
+    }
+
+    /**
+     * Classifies a rectangular matrix. The scan stops as soon as the matrix can be nothing but
+     * GENERAL, which for dense data is after the first few entries.
+     */
+    public static MatrixStructure detect(double[][] m) {
+        int n = m.length;
+        if (n == 0 || m[0].length != n) {
+            return GENERAL;
+        }
+        boolean upper = true; // zeros below the diagonal
+        boolean lower = true; // zeros above the diagonal
+        boolean symmetric = true;
+        // blocks (bi, bj) with bj <= bi cover every pair (i > j) once
+        for (int bi = 0; bi < n && (upper || lower || symmetric); bi += BLOCK) {
+            for (int bj = 0; bj <= bi && (upper || lower || symmetric); bj += BLOCK) {
+                int iEnd = Math.min(bi + BLOCK, n);
+                int jEnd = Math.min(bj + BLOCK, n);
+                for (int i = bi; i < iEnd; i++) {
+                    double[] row = m[i];
+                    for (int j = bj; j < Math.min(jEnd, i); j++) {
+                        double below = row[j];
+                        double above = m[j][i];
+                        upper &= below == 0.0;
+                        lower &= above == 0.0;
+                        symmetric &= below == above;
+                    }
+                    if (!(upper || lower || symmetric)) {
+                        return GENERAL;
+                    }
+                }
+            }
+        }
+        if (upper && lower) {
+            for (int i = 0; i < n; i++) {
+                if (m[i][i] != 1.0) {
+                    return DIAGONAL;
+                }
+            }
+            return IDENTITY;
+        }
+        if (upper) return UPPER_TRIANGULAR;
+        if (lower) return LOWER_TRIANGULAR;
+        return symmetric ? SYMMETRIC : GENERAL;
+    }
+}
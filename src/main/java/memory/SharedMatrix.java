@@ -2,10 +2,19 @@ package memory;
 
 import java.util.Objects;
 
+import metrics.EngineMetrics;
+import scheduling.CancellationToken;
+import scheduling.ExecutorJob;
+import scheduling.TiredExecutor;
+
 public class SharedMatrix {
 
     private volatile SharedVector[] vectors = {}; // underlying vectors
     private volatile VectorOrientation orientation; // added field
+    private volatile MatrixStructure structure = MatrixStructure.GENERAL; // of the data as loaded
+    private volatile TiredExecutor executor = null; // optional, parallelises layout conversion
+    private volatile ExecutorJob job = null; // null: the executor's default job
+    private volatile CancellationToken token = null; // null: conversions are not cancelled
 
 
     public SharedMatrix() {
@@ -20,6 +29,17 @@ public class SharedMatrix {
 
     }
 
+    public SharedMatrix(SharedVector[] vectors, VectorOrientation orientation) {
+        // Wrap already-built vectors without copying
+        Objects.requireNonNull(vectors, "vectors must not be null");
+        Objects.requireNonNull(orientation, "orientation must not be null");
+        for (int i = 0; i < vectors.length; i++) {
+            Objects.requireNonNull(vectors[i], "vector " + i + " is null");
+        }
+        this.vectors = vectors.clone();
+        this.orientation = orientation;
+    }
+
     public void loadRowMajor(double[][] matrix) {
         // TODO: replace internal data with new row-major matrix
         load(matrix, VectorOrientation.ROW_MAJOR);
@@ -37,44 +57,57 @@ public class SharedMatrix {
         
         // Snapshot current references
         SharedVector[] vecs = this.vectors;
-        VectorOrientation ori = this.orientation;
 
         // 0x0 case
         if (vecs.length == 0) {
             return new double[0][0];
         }
 
+        // Vectors transposed in place (row tasks of TRANSPOSE) now describe columns,
+        // so their own orientation decides how they are laid out
+        VectorOrientation ori = vecs[0].getOrientation();
+
         // Lock all vectors for consistent read
         acquireAllVectorReadLocks(vecs);
         try {
             if (ori == VectorOrientation.ROW_MAJOR) {
                 int rows = vecs.length;
                 int cols = vecs[0].length();
-                double[][] out = new double[rows][cols];
+                double[][] out = new double[rows][];
 
                 for (int i = 0; i < rows; i++) {
                     if (vecs[i].length() != cols) {
                         throw new IllegalStateException("Corrupt SharedMatrix: inconsistent row lengths");
                     }
-                    for (int j = 0; j < cols; j++) {
-                        out[i][j] = vecs[i].get(j);
-                    }
+                    // Read locks are already held, copy the row in one go
+                    out[i] = BufferPool.global().acquire(cols);
+                    vecs[i].copyTo(out[i], 0);
                 }
+                EngineMetrics.global().recordBytesCopied((long) rows * cols * Double.BYTES);
                 return out;
             } else {
                 // COLUMN_MAJOR: vecs are columns
                 int cols = vecs.length;
                 int rows = vecs[0].length();
-                double[][] out = new double[rows][cols];
+                double[][] out = new double[rows][];
+                for (int i = 0; i < rows; i++) {
+                    out[i] = BufferPool.global().acquire(cols);
+                }
 
+                double[][] columns = new double[cols][];
                 for (int j = 0; j < cols; j++) {
                     if (vecs[j].length() != rows) {
                         throw new IllegalStateException("Corrupt SharedMatrix: inconsistent column lengths");
                     }
-                    for (int i = 0; i < rows; i++) {
-                        out[i][j] = vecs[j].get(i);
-                    }
+                    columns[j] = vecs[j].unsafeArray();
                 }
+                try {
+                    LayoutConverter.transpose(columns, out, executor, token, job);
+                } catch (RuntimeException e) {
+                    BufferPool.global().release(out);
+                    throw e;
+                }
+                EngineMetrics.global().recordBytesCopied((long) rows * cols * Double.BYTES);
                 return out;
             }
         } finally {
@@ -98,6 +131,32 @@ public class SharedMatrix {
         return this.orientation;
     }
 
+    /**
+     * Structure detected when the matrix was loaded. Row tasks that update the vectors in place
+     * do not change the tag; it describes the operand as loaded.
+     */
+    public MatrixStructure getStructure() {
+        return this.structure;
+    }
+
+    /**
+     * Lets loadColumnMajor() and the column-major readRowMajor() split large conversions
+     * across the executor's workers (see LayoutConverter); null converts on the calling thread.
+     */
+    public void setExecutor(TiredExecutor executor) {
+        setExecutor(executor, null, null);
+    }
+
+    /**
+     * Like setExecutor(executor), but the conversion tasks run as part of the given job and
+     * stop when the token is cancelled; either may be null.
+     */
+    public void setExecutor(TiredExecutor executor, ExecutorJob job, CancellationToken token) {
+        this.executor = executor;
+        this.job = job;
+        this.token = token;
+    }
+
     private void acquireAllVectorReadLocks(SharedVector[] vecs) {
         // TODO: acquire read lock for each vector
         for (SharedVector v : vecs) {
@@ -144,27 +203,66 @@ public class SharedMatrix {
             }
         }
 
+        MatrixStructure detected = MatrixStructure.detect(matrix);
+
         // Build vectors in requested orientation
         SharedVector[] newVecs;
-        if (target == VectorOrientation.ROW_MAJOR) {
+        if (target == VectorOrientation.COLUMN_MAJOR && detected.isSymmetric()) {
+            // column j of a symmetric matrix is row j: copy rows instead of gathering columns
+            newVecs = new SharedVector[cols];
+            for (int j = 0; j < cols; j++) {
+                double[] col = BufferPool.global().acquire(rows);
+                System.arraycopy(matrix[j], 0, col, 0, rows);
+                newVecs[j] = new SharedVector(col, VectorOrientation.COLUMN_MAJOR, true);
+            }
+        } else if (target == VectorOrientation.ROW_MAJOR) {
             newVecs = new SharedVector[rows];
             for (int i = 0; i < rows; i++) {
-                newVecs[i] = new SharedVector(matrix[i].clone(), VectorOrientation.ROW_MAJOR);
+                double[] row = BufferPool.global().acquire(cols);
+                System.arraycopy(matrix[i], 0, row, 0, cols);
+                newVecs[i] = new SharedVector(row, VectorOrientation.ROW_MAJOR, true);
             }
         } else { // COLUMN_MAJOR
+            double[][] columns = new double[cols][];
+            for (int j = 0; j < cols; j++) {
+                columns[j] = BufferPool.global().acquire(rows);
+            }
+            try {
+                LayoutConverter.transpose(matrix, columns, executor, token, job);
+            } catch (RuntimeException e) {
+                BufferPool.global().release(columns);
+                throw e;
+            }
             newVecs = new SharedVector[cols];
             for (int j = 0; j < cols; j++) {
-                double[] col = new double[rows];
-                for (int i = 0; i < rows; i++) {
-                    col[i] = matrix[i][j];
-                }
-                newVecs[j] = new SharedVector(col, VectorOrientation.COLUMN_MAJOR);
+                newVecs[j] = new SharedVector(columns[j], VectorOrientation.COLUMN_MAJOR, true);
             }
         }
 
-        // Publish
+        EngineMetrics.global().recordBytesCopied((long) rows * cols * Double.BYTES);
+
+        // Publish, then recycle the buffers of the data we replaced
+        SharedVector[] old = this.vectors;
         this.vectors = newVecs;
         this.orientation = target;
+        this.structure = detected;
+        releaseVectors(old);
+    }
+
+    /**
+     * Drops the current contents and returns owned buffers to the BufferPool.
+     */
+    public void release() {
+        SharedVector[] old = this.vectors;
+        this.vectors = new SharedVector[0];
+        this.structure = MatrixStructure.GENERAL;
+        releaseVectors(old);
+    }
+
+    private static void releaseVectors(SharedVector[] vecs) {
+        for (SharedVector v : vecs) {
+            v.releaseBuffer(); // no-op for vectors that do not own a pooled buffer
+        }
     }
 
     private static double[] requireNonNullRow(double[][] matrix, int i) {
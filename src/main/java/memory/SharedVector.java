@@ -1,14 +1,22 @@
 package memory;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.Objects;
+import java.util.function.BooleanSupplier;
+
+import metrics.EngineMetrics;
 
 
 public class SharedVector {
 
+    private static final int CANCEL_CHECK_COLUMNS = 64;
+
     private double[] vector;
     private VectorOrientation orientation;
     private ReadWriteLock lock = new java.util.concurrent.locks.ReentrantReadWriteLock();
+    private boolean pooled = false; // true when vector came from BufferPool and is owned by this object
 
     public SharedVector(double[] vector, VectorOrientation orientation) {
         // TODO: store vector data and its orientation
@@ -18,6 +26,12 @@ public class SharedVector {
         this.orientation = orientation;
     }
 
+    // Takes ownership of a buffer obtained from BufferPool
+    SharedVector(double[] vector, VectorOrientation orientation, boolean pooled) {
+        this(vector, orientation);
+        this.pooled = pooled;
+    }
+
     public double get(int index) {
         // TODO: return element at index (read-locked)
         readLock();
@@ -48,7 +62,7 @@ public class SharedVector {
 
     public void writeLock() {
         // TODO: acquire write lock
-        lock.writeLock().lock();
+        acquire(lock.writeLock());
 
     }
 
@@ -60,7 +74,7 @@ public class SharedVector {
 
     public void readLock() {
         // TODO: acquire read lock
-        lock.readLock().lock();
+        acquire(lock.readLock());
 
     }
 
@@ -70,6 +84,16 @@ public class SharedVector {
 
     }
 
+    private static void acquire(Lock l) {
+        // Uncontended fast path is not timed; only blocking acquisitions are recorded
+        if (l.tryLock()) {
+            return;
+        }
+        long start = System.nanoTime();
+        l.lock();
+        EngineMetrics.global().recordLockWait(System.nanoTime() - start);
+    }
+
     public void transpose() {
         // TODO: transpose vector
         writeLock();
@@ -151,7 +175,25 @@ public class SharedVector {
 
     public void vecMatMul(SharedMatrix matrix) {
         // TODO: compute row-vector × matrix
+        vecMatMul(matrix, () -> false);
+    }
+
+    /**
+     * Same as vecMatMul(matrix), polling cancelled every CANCEL_CHECK_COLUMNS output columns.
+     * On cancellation this vector is left unchanged and a CancellationException is thrown.
+     */
+    public void vecMatMul(SharedMatrix matrix, BooleanSupplier cancelled) {
+        vecMatMul(matrix, 0, Integer.MAX_VALUE, cancelled);
+    }
+
+    /**
+     * Same as vecMatMul(matrix, cancelled) for a row whose entries outside [nonZeroFrom, nonZeroTo)
+     * are known to be zero, e.g. a row of a triangular matrix. The products skip those entries,
+     * and the zero part of each column of a triangular or diagonal matrix (see getStructure()).
+     */
+    public void vecMatMul(SharedMatrix matrix, int nonZeroFrom, int nonZeroTo, BooleanSupplier cancelled) {
         Objects.requireNonNull(matrix, "matrix must not be null");
+        Objects.requireNonNull(cancelled, "cancelled must not be null");
 
         if (this.getOrientation() != VectorOrientation.ROW_MAJOR) {
             throw new IllegalArgumentException("vecMatMul requires this vector to be ROW_MAJOR");
@@ -172,6 +214,10 @@ public class SharedVector {
             );
         }
 
+        MatrixStructure structure = matrix.getStructure();
+        int from = Math.max(0, nonZeroFrom);
+        int to = Math.min(m, nonZeroTo);
+
         this.writeLock();
         SharedVector[] cols = new SharedVector[nCols];
         try {
@@ -181,18 +227,35 @@ public class SharedVector {
                 cols[j].readLock();
             }
 
-            double[] result = new double[nCols];
+            double[] result = BufferPool.global().acquire(nCols);
 
             for (int j = 0; j < nCols; j++) {
+                if (j % CANCEL_CHECK_COLUMNS == 0 && cancelled.getAsBoolean()) {
+                    BufferPool.global().release(result);
+                    throw new CancellationException("Cancelled during vecMatMul");
+                }
                 SharedVector col = cols[j];
+                if (structure.isDiagonal()) {
+                    result[j] = j >= from && j < to ? this.vector[j] * col.vector[j] : 0.0;
+                    continue;
+                }
+                // column j of an upper triangular matrix is zero below row j, of a lower one above it
+                int kFrom = structure.isLowerTriangular() ? Math.max(from, j) : from;
+                int kTo = structure.isUpperTriangular() ? Math.min(to, j + 1) : to;
                 double sum = 0.0;
-                for (int k = 0; k < m; k++) {
+                for (int k = kFrom; k < kTo; k++) {
                     sum += this.vector[k] * col.vector[k];
                 }
                 result[j] = sum;
             }
 
+            // The old row is dead now; recycle it only if this vector owns it
+            double[] old = this.vector;
             this.vector = result;
+            if (pooled) {
+                BufferPool.global().release(old);
+            }
+            pooled = true;
 
         } finally {
             for (int j = nCols - 1; j >= 0; j--) {
@@ -201,4 +264,52 @@ public class SharedVector {
             this.writeUnlock();
         }
     }
+
+    /**
+     * Returns the underlying buffer to the pool if this vector owns a pooled buffer.
+     * The vector must not be used afterwards.
+     */
+    void releaseBuffer() {
+        writeLock();
+        try {
+            if (pooled) {
+                BufferPool.global().release(vector);
+                vector = new double[0];
+                pooled = false;
+            }
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Hands the contents over to the caller, who may return the array to the BufferPool once
+     * done with it. The vector is empty afterwards.
+     */
+    public double[] takeBuffer() {
+        writeLock();
+        try {
+            double[] out = vector;
+            vector = new double[0];
+            pooled = false;
+            return out;
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    // Copies the contents into dest starting at offset (caller holds the read lock)
+    void copyTo(double[] dest, int offset) {
+        System.arraycopy(vector, 0, dest, offset, vector.length);
+    }
+
+    // The backing array, for layout kernels in this package (caller holds the lock)
+    double[] unsafeArray() {
+        return vector;
+    }
+
+    // Raw access for kernels in this package (caller holds the read lock)
+    double unsafeGet(int index) {
+        return vector[index];
+    }
 }
@@ -0,0 +1,266 @@
+package memory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A matrix stored on disk as square tiles in a scratch file, for operands that do not fit in RAM.
+ * Tile (ti, tj) covers rows [ti*T, min((ti+1)*T, rows)) and columns [tj*T, min((tj+1)*T, cols))
+ * and is read and written as a row-major double[] of tileHeight(ti) * tileWidth(tj) values.
+ * Every tile has a fixed T*T slot in the file, so tiles can be read and written concurrently
+ * with positional I/O and no locking.
+ */
+public class TiledMatrix implements AutoCloseable {
+
+    private final int rows;
+    private final int cols;
+    private final int tileSize;
+    private final int tileRows;
+    private final int tileCols;
+    private final Path file;
+    private final FileChannel channel;
+
+    private TiledMatrix(Path file, int rows, int cols, int tileSize) throws IOException {
+        this.rows = rows;
+        this.cols = cols;
+        this.tileSize = tileSize;
+        this.tileRows = (rows + tileSize - 1) / tileSize;
+        this.tileCols = (cols + tileSize - 1) / tileSize;
+        this.file = file;
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * Creates a zero-initialised tiled matrix in a new temporary file under scratchDir.
+     */
+    public static TiledMatrix create(Path scratchDir, int rows, int cols, int tileSize) {
+        Objects.requireNonNull(scratchDir, "scratchDir must not be null");
+        if (rows < 0 || cols < 0) {
+            throw new IllegalArgumentException("Negative dimensions: " + rows + "x" + cols);
+        }
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("tileSize must be > 0");
+        }
+        try {
+            Path f = Files.createTempFile(scratchDir, "tiles-", ".bin");
+            return new TiledMatrix(f, rows, cols, tileSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create tile file in " + scratchDir, e);
+        }
+    }
+
+    public static TiledMatrix fromArray(double[][] matrix, Path scratchDir, int tileSize) {
+        Objects.requireNonNull(matrix, "matrix must not be null");
+        int rows = matrix.length;
+        int cols = rows == 0 ? 0 : matrix[0].length;
+        TiledMatrix t = create(scratchDir, rows, cols, tileSize);
+        try {
+            for (int ti = 0; ti < t.tileRows; ti++) {
+                int from = ti * tileSize;
+                t.writeRowBand(ti, Arrays.copyOfRange(matrix, from, from + t.tileHeight(ti)));
+            }
+        } catch (RuntimeException e) {
+            t.close();
+            throw e;
+        }
+        return t;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    public int tileSize() {
+        return tileSize;
+    }
+
+    public int tileRowCount() {
+        return tileRows;
+    }
+
+    public int tileColCount() {
+        return tileCols;
+    }
+
+    public int tileHeight(int ti) {
+        return Math.min(tileSize, rows - ti * tileSize);
+    }
+
+    public int tileWidth(int tj) {
+        return Math.min(tileSize, cols - tj * tileSize);
+    }
+
+    public double[] readTile(int ti, int tj) {
+        checkTile(ti, tj);
+        return read(ti, tj, offset(ti, tj), tileHeight(ti) * tileWidth(tj));
+    }
+
+    public void writeTile(int ti, int tj, double[] data) {
+        checkTile(ti, tj);
+        int n = tileHeight(ti) * tileWidth(tj);
+        if (data.length != n) {
+            throw new IllegalArgumentException("Tile (" + ti + "," + tj + ") needs " + n + " values, got " + data.length);
+        }
+        write(ti, tj, offset(ti, tj), data);
+    }
+
+    /**
+     * Reads tile row ti as full-width rows; needs tileSize * cols doubles of memory.
+     */
+    public double[][] readRowBand(int ti) {
+        checkTile(ti, 0);
+        return readRows(ti * tileSize, ti * tileSize + tileHeight(ti));
+    }
+
+    /**
+     * Writes tile row ti from full-width rows, the inverse of readRowBand().
+     */
+    public void writeRowBand(int ti, double[][] band) {
+        checkTile(ti, 0);
+        int h = tileHeight(ti);
+        if (band.length != h) {
+            throw new IllegalArgumentException("Tile row " + ti + " needs " + h + " rows, got " + band.length);
+        }
+        writeRows(ti * tileSize, band);
+    }
+
+    /**
+     * Reads rows [from, to) at full width. Rows of a tile are contiguous in its slot, so any
+     * row range is read with one positional read per tile it touches; this lets wide matrices
+     * be streamed a few rows at a time instead of a whole tile row.
+     */
+    public double[][] readRows(int from, int to) {
+        checkRows(from, to);
+        double[][] out = new double[to - from][cols];
+        for (int r = from; r < to; ) {
+            int ti = r / tileSize;
+            int end = Math.min(to, (ti + 1) * tileSize);
+            int n = end - r;
+            for (int tj = 0; tj < tileCols; tj++) {
+                int w = tileWidth(tj);
+                double[] part = read(ti, tj, rowOffset(ti, tj, r), n * w);
+                for (int i = 0; i < n; i++) {
+                    System.arraycopy(part, i * w, out[r - from + i], tj * tileSize, w);
+                }
+            }
+            r = end;
+        }
+        return out;
+    }
+
+    /**
+     * Writes full-width rows starting at row from, the inverse of readRows(); lets a matrix
+     * be spilled a few rows at a time.
+     */
+    public void writeRows(int from, double[][] band) {
+        checkRows(from, from + band.length);
+        for (int i = 0; i < band.length; i++) {
+            if (band[i].length != cols) {
+                throw new IllegalArgumentException("Non-rectangular matrix at row " + (from + i));
+            }
+        }
+        int to = from + band.length;
+        for (int r = from; r < to; ) {
+            int ti = r / tileSize;
+            int end = Math.min(to, (ti + 1) * tileSize);
+            int n = end - r;
+            for (int tj = 0; tj < tileCols; tj++) {
+                int w = tileWidth(tj);
+                double[] part = new double[n * w];
+                for (int i = 0; i < n; i++) {
+                    System.arraycopy(band[r - from + i], tj * tileSize, part, i * w, w);
+                }
+                write(ti, tj, rowOffset(ti, tj, r), part);
+            }
+            r = end;
+        }
+    }
+
+    private double[] read(int ti, int tj, long pos, int n) {
+        ByteBuffer buf = ByteBuffer.allocate(n * Double.BYTES).order(ByteOrder.nativeOrder());
+        try {
+            while (buf.hasRemaining()) {
+                int read = channel.read(buf, pos + buf.position());
+                if (read < 0) {
+                    break; // never written: the rest of the tile is zero
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read tile (" + ti + "," + tj + ")", e);
+        }
+        buf.clear();
+        double[] out = new double[n];
+        buf.asDoubleBuffer().get(out);
+        return out;
+    }
+
+    private void write(int ti, int tj, long pos, double[] data) {
+        ByteBuffer buf = ByteBuffer.allocate(data.length * Double.BYTES).order(ByteOrder.nativeOrder());
+        buf.asDoubleBuffer().put(data);
+        try {
+            while (buf.hasRemaining()) {
+                channel.write(buf, pos + buf.position());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write tile (" + ti + "," + tj + ")", e);
+        }
+    }
+
+    /**
+     * Materialises the whole matrix; only for results known to fit in memory.
+     */
+    public double[][] toArray() {
+        double[][] out = new double[rows][];
+        for (int ti = 0; ti < tileRows; ti++) {
+            double[][] band = readRowBand(ti);
+            System.arraycopy(band, 0, out, ti * tileSize, band.length);
+        }
+        return out;
+    }
+
+    private long offset(int ti, int tj) {
+        return ((long) ti * tileCols + tj) * tileSize * tileSize * Double.BYTES;
+    }
+
+    private long rowOffset(int ti, int tj, int row) {
+        return offset(ti, tj) + (long) (row - ti * tileSize) * tileWidth(tj) * Double.BYTES;
+    }
+
+    private void checkRows(int from, int to) {
+        if (from < 0 || to > rows || from > to) {
+            throw new IndexOutOfBoundsException("Rows [" + from + ", " + to + ") outside 0.." + rows);
+        }
+    }
+
+    private void checkTile(int ti, int tj) {
+        if (ti < 0 || ti >= tileRows || tj < 0 || tj >= tileCols) {
+            throw new IndexOutOfBoundsException("Tile (" + ti + "," + tj + ") outside " + tileRows + "x" + tileCols);
+        }
+    }
+
+    /**
+     * Closes and deletes the scratch file.
+     */
+    @Override
+    public void close() {
+        try {
+            channel.close();
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete " + file, e);
+        }
+    }
+}
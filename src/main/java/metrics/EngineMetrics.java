@@ -0,0 +1,161 @@
+package metrics;
+
+import parser.ComputationNodeType;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide metrics for the engine, the executor and the memory package.
+ * All record* methods are allocation-free and safe to call from any thread.
+ */
+public class EngineMetrics implements EngineMetricsMBean {
+
+    public static final String OBJECT_NAME = "spl.lae:type=EngineMetrics";
+
+    private static final EngineMetrics GLOBAL = new EngineMetrics();
+
+    private final Map<ComputationNodeType, LatencyHistogram> nodeLatency = new EnumMap<>(ComputationNodeType.class);
+    private final LatencyHistogram taskLatency = new LatencyHistogram();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram lockWait = new LatencyHistogram();
+    private final LongAdder tasksCompleted = new LongAdder();
+    private final LongAdder bytesCopied = new LongAdder();
+
+    private volatile long startNanos = System.nanoTime();
+    private volatile boolean registered = false;
+
+    public EngineMetrics() {
+        for (ComputationNodeType type : ComputationNodeType.values()) {
+            nodeLatency.put(type, new LatencyHistogram());
+        }
+    }
+
+    public static EngineMetrics global() {
+        return GLOBAL;
+    }
+
+    // ---------- recording (hot path) ----------
+
+    public void recordNode(ComputationNodeType type, long nanos) {
+        nodeLatency.get(type).record(nanos);
+    }
+
+    public void recordTask(long queueWaitNanos, long runNanos) {
+        queueWait.record(queueWaitNanos);
+        taskLatency.record(runNanos);
+        tasksCompleted.increment();
+    }
+
+    public void recordBytesCopied(long bytes) {
+        bytesCopied.add(bytes);
+    }
+
+    public void recordLockWait(long nanos) {
+        lockWait.record(nanos);
+    }
+
+    // ---------- snapshot API ----------
+
+    public MetricsSnapshot snapshot() {
+        Map<ComputationNodeType, LatencyHistogram.Snapshot> nodes = new EnumMap<>(ComputationNodeType.class);
+        for (Map.Entry<ComputationNodeType, LatencyHistogram> e : nodeLatency.entrySet()) {
+            nodes.put(e.getKey(), e.getValue().snapshot());
+        }
+        return new MetricsSnapshot(
+                System.nanoTime() - startNanos,
+                tasksCompleted.sum(),
+                bytesCopied.sum(),
+                nodes,
+                taskLatency.snapshot(),
+                queueWait.snapshot(),
+                lockWait.snapshot()
+        );
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram h : nodeLatency.values()) {
+            h.reset();
+        }
+        taskLatency.reset();
+        queueWait.reset();
+        lockWait.reset();
+        tasksCompleted.reset();
+        bytesCopied.reset();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Registers this instance with the platform MBean server (idempotent).
+     */
+    public synchronized void registerMBean() {
+        if (registered) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+            registered = true;
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to register metrics MBean: " + e.getMessage(), e);
+        }
+    }
+
+    // ---------- JMX attributes ----------
+
+    @Override
+    public long getTasksCompleted() {
+        return tasksCompleted.sum();
+    }
+
+    @Override
+    public double getTasksPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        return seconds <= 0 ? 0.0 : tasksCompleted.sum() / seconds;
+    }
+
+    @Override
+    public long getBytesCopied() {
+        return bytesCopied.sum();
+    }
+
+    @Override
+    public double getQueueWaitP50Micros() {
+        return queueWait.snapshot().valueAtPercentile(50) / 1_000.0;
+    }
+
+    @Override
+    public double getQueueWaitP99Micros() {
+        return queueWait.snapshot().valueAtPercentile(99) / 1_000.0;
+    }
+
+    @Override
+    public double getTaskLatencyP99Micros() {
+        return taskLatency.snapshot().valueAtPercentile(99) / 1_000.0;
+    }
+
+    @Override
+    public long getLockWaitCount() {
+        return lockWait.getCount();
+    }
+
+    @Override
+    public double getLockWaitP99Micros() {
+        return lockWait.snapshot().valueAtPercentile(99) / 1_000.0;
+    }
+
+    @Override
+    public double nodeLatencyMillis(String nodeType, double percentile) {
+        ComputationNodeType type = ComputationNodeType.valueOf(nodeType);
+        return nodeLatency.get(type).snapshot().valueAtPercentile(percentile) / 1_000_000.0;
+    }
+}
@@ -0,0 +1,27 @@
+package metrics;
+
+/**
+ * JMX view of {@link EngineMetrics}. Times are reported in micro/milliseconds.
+ */
+public interface EngineMetricsMBean {
+
+    long getTasksCompleted();
+
+    double getTasksPerSecond();
+
+    long getBytesCopied();
+
+    double getQueueWaitP50Micros();
+
+    double getQueueWaitP99Micros();
+
+    double getTaskLatencyP99Micros();
+
+    long getLockWaitCount();
+
+    double getLockWaitP99Micros();
+
+    double nodeLatencyMillis(String nodeType, double percentile);
+
+    void reset();
+}
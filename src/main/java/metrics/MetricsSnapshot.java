@@ -0,0 +1,94 @@
+package metrics;
+
+import parser.ComputationNodeType;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Point-in-time copy of {@link EngineMetrics}.
+ */
+public class MetricsSnapshot {
+
+    private final long uptimeNanos;
+    private final long tasksCompleted;
+    private final long bytesCopied;
+    private final Map<ComputationNodeType, LatencyHistogram.Snapshot> nodeLatency;
+    private final LatencyHistogram.Snapshot taskLatency;
+    private final LatencyHistogram.Snapshot queueWait;
+    private final LatencyHistogram.Snapshot lockWait;
+
+    MetricsSnapshot(long uptimeNanos,
+                    long tasksCompleted,
+                    long bytesCopied,
+                    Map<ComputationNodeType, LatencyHistogram.Snapshot> nodeLatency,
+                    LatencyHistogram.Snapshot taskLatency,
+                    LatencyHistogram.Snapshot queueWait,
+                    LatencyHistogram.Snapshot lockWait) {
+        this.uptimeNanos = uptimeNanos;
+        this.tasksCompleted = tasksCompleted;
+        this.bytesCopied = bytesCopied;
+        this.nodeLatency = Collections.unmodifiableMap(nodeLatency);
+        this.taskLatency = taskLatency;
+        this.queueWait = queueWait;
+        this.lockWait = lockWait;
+    }
+
+    public long getUptimeNanos() {
+        return uptimeNanos;
+    }
+
+    public long getTasksCompleted() {
+        return tasksCompleted;
+    }
+
+    public double getTasksPerSecond() {
+        return uptimeNanos <= 0 ? 0.0 : tasksCompleted / (uptimeNanos / 1_000_000_000.0);
+    }
+
+    public long getBytesCopied() {
+        return bytesCopied;
+    }
+
+    public LatencyHistogram.Snapshot getNodeLatency(ComputationNodeType type) {
+        return nodeLatency.get(type);
+    }
+
+    public LatencyHistogram.Snapshot getTaskLatency() {
+        return taskLatency;
+    }
+
+    public LatencyHistogram.Snapshot getQueueWait() {
+        return queueWait;
+    }
+
+    public LatencyHistogram.Snapshot getLockWait() {
+        return lockWait;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "tasks=%d (%.1f/s), bytesCopied=%d%n",
+                tasksCompleted, getTasksPerSecond(), bytesCopied));
+        appendLine(sb, "queueWait", queueWait);
+        appendLine(sb, "task", taskLatency);
+        appendLine(sb, "lockWait", lockWait);
+        for (Map.Entry<ComputationNodeType, LatencyHistogram.Snapshot> e : nodeLatency.entrySet()) {
+            if (e.getValue().getCount() > 0) {
+                appendLine(sb, "node " + e.getKey(), e.getValue());
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendLine(StringBuilder sb, String label, LatencyHistogram.Snapshot h) {
+        sb.append(String.format(Locale.US, "%s: count=%d, p50=%.3fms, p99=%.3fms, max=%.3fms%n",
+                label,
+                h.getCount(),
+                h.valueAtPercentile(50) / 1_000_000.0,
+                h.valueAtPercentile(99) / 1_000_000.0,
+                h.getMaxNanos() / 1_000_000.0));
+    }
+}
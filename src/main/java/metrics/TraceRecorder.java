@@ -0,0 +1,107 @@
+package metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Collects timed spans (per computation node, per phase and per task) and exports them
+ * in the Chrome trace-event format, which opens offline in chrome://tracing or Perfetto.
+ * Tracing is opt-in: nothing is recorded unless a recorder is attached to the engine.
+ */
+public class TraceRecorder {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final long originNanos = System.nanoTime();
+    private final ConcurrentLinkedQueue<Span> spans = new ConcurrentLinkedQueue<>();
+    private final Map<Integer, String> threadNames = new ConcurrentHashMap<>();
+
+    public static final class Span {
+        public final String name;
+        public final String category;
+        public final int threadId;
+        public final long startNanos;
+        public final long durationNanos;
+        public final Map<String, Object> args;
+
+        Span(String name, String category, int threadId, long startNanos, long durationNanos, Map<String, Object> args) {
+            this.name = name;
+            this.category = category;
+            this.threadId = threadId;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+            this.args = args;
+        }
+    }
+
+    /**
+     * Records a completed span. Timestamps are System.nanoTime() values.
+     */
+    public void record(String name, String category, int threadId, long startNanos, long endNanos, Map<String, Object> args) {
+        spans.add(new Span(name, category, threadId, startNanos - originNanos, endNanos - startNanos,
+                args == null ? Collections.emptyMap() : args));
+    }
+
+    public void nameThread(int threadId, String name) {
+        threadNames.putIfAbsent(threadId, name);
+    }
+
+    public List<Span> getSpans() {
+        return new ArrayList<>(spans);
+    }
+
+    public void clear() {
+        spans.clear();
+    }
+
+    public static Map<String, Object> args(Object... keyValues) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            m.put(String.valueOf(keyValues[i]), keyValues[i + 1]);
+        }
+        return m;
+    }
+
+    public ObjectNode toChromeTrace() {
+        ObjectNode root = mapper.createObjectNode();
+        ArrayNode events = root.putArray("traceEvents");
+
+        for (Map.Entry<Integer, String> e : threadNames.entrySet()) {
+            ObjectNode meta = events.addObject();
+            meta.put("name", "thread_name");
+            meta.put("ph", "M");
+            meta.put("pid", 1);
+            meta.put("tid", e.getKey());
+            meta.putObject("args").put("name", e.getValue());
+        }
+
+        for (Span s : spans) {
+            ObjectNode ev = events.addObject();
+            ev.put("name", s.name);
+            ev.put("cat", s.category);
+            ev.put("ph", "X");
+            ev.put("pid", 1);
+            ev.put("tid", s.threadId);
+            ev.put("ts", s.startNanos / 1_000.0);
+            ev.put("dur", s.durationNanos / 1_000.0);
+            ev.set("args", mapper.valueToTree(s.args));
+        }
+        root.put("displayTimeUnit", "ms");
+        return root;
+    }
+
+    public void writeChromeTrace(String filePath) throws IOException {
+        mapper.writerWithDefaultPrettyPrinter().writeValue(new File(filePath), toChromeTrace());
+    }
+}
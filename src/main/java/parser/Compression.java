@@ -0,0 +1,111 @@
+package parser;
+
+import io.airlift.compress.zstd.ZstdInputStream;
+import io.airlift.compress.zstd.ZstdOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression of input and output files. Compressed inputs are recognised by their magic bytes,
+ * compressed outputs by the file suffix (.gz or .zst). Both codecs are pure Java.
+ *
+ * The codec always runs on its own pipeline thread: a compressed input is inflated ahead of the
+ * parser that reads it, and an output is compressed while the writer is still serialising.
+ */
+public enum Compression {
+    NONE(""),
+    GZIP(".gz"),
+    ZSTD(".zst");
+
+    private static final int IO_BUFFER = 64 * 1024;
+
+    private final String suffix;
+
+    Compression(String suffix) {
+        this.suffix = suffix;
+    }
+
+    public String getSuffix() {
+        return suffix;
+    }
+
+    /**
+     * Compression of an existing file, from its first bytes.
+     */
+    public static Compression detect(Path file) throws IOException {
+        byte[] magic = new byte[4];
+        int n;
+        try (InputStream in = Files.newInputStream(file)) {
+            n = in.readNBytes(magic, 0, 4);
+        }
+        if (n >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b) {
+            return GZIP;
+        }
+        if (n == 4 && (magic[0] & 0xff) == 0x28 && (magic[1] & 0xff) == 0xb5
+                && (magic[2] & 0xff) == 0x2f && (magic[3] & 0xff) == 0xfd) {
+            return ZSTD;
+        }
+        return NONE;
+    }
+
+    /**
+     * Compression implied by a file name.
+     */
+    public static Compression forName(String fileName) {
+        if (fileName.endsWith(GZIP.suffix)) return GZIP;
+        if (fileName.endsWith(ZSTD.suffix)) return ZSTD;
+        return NONE;
+    }
+
+    /**
+     * Strips this compression's suffix from a file name, if present.
+     */
+    public String stripSuffix(String fileName) {
+        return this != NONE && fileName.endsWith(suffix) ? fileName.substring(0, fileName.length() - suffix.length()) : fileName;
+    }
+
+    /**
+     * Opens a file for reading, inflating it on a pipeline thread if it is compressed.
+     */
+    public static InputStream openInput(Path file) throws IOException {
+        Compression c = detect(file);
+        InputStream raw = new BufferedInputStream(Files.newInputStream(file), IO_BUFFER);
+        switch (c) {
+            case GZIP:
+                return new PipelinedInputStream(new GZIPInputStream(raw, IO_BUFFER), "gzip-inflate");
+            case ZSTD:
+                return new PipelinedInputStream(new ZstdInputStream(raw), "zstd-inflate");
+            default:
+                return raw;
+        }
+    }
+
+    /**
+     * Opens a file for writing, compressed according to its suffix on a pipeline thread.
+     */
+    public static OutputStream openOutput(Path file) throws IOException {
+        Compression c = forName(file.getFileName().toString());
+        OutputStream raw = new BufferedOutputStream(Files.newOutputStream(file), IO_BUFFER);
+        try {
+            switch (c) {
+                case GZIP:
+                    return new PipelinedOutputStream(new GZIPOutputStream(raw, IO_BUFFER), "gzip-deflate");
+                case ZSTD:
+                    return new PipelinedOutputStream(new ZstdOutputStream(raw), "zstd-deflate");
+                default:
+                    return raw;
+            }
+        } catch (IOException | RuntimeException e) {
+            raw.close();
+            throw e;
+        }
+    }
+}
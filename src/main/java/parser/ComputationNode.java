@@ -1,19 +1,28 @@
 package parser;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class ComputationNode {
 
     private ComputationNodeType nodeType;
     private List<ComputationNode> children = null;
-    private double[][] matrix = null; // only used for MATRIX nodes
+    private volatile double[][] matrix = null; // only used for MATRIX nodes
+    private LazyMatrix lazy = null; // source of a leaf decoded on first use
+    private int exponent = 0; // only used for POWER nodes
 
     public ComputationNode(String operatorStr, List<ComputationNode> children) throws IllegalArgumentException {
-        this.nodeType = mapOperator(operatorStr);
-        this.children = children;
+        this(operatorStr, children, 0);
     }
 
-    private ComputationNodeType mapOperator(String operatorStr) throws IllegalArgumentException {
+    /**
+     * Operation node with an exponent, which is required for "^" and ignored otherwise.
+     */
+    public ComputationNode(String operatorStr, List<ComputationNode> children, int exponent) throws IllegalArgumentException {
+        this(mapOperator(operatorStr), children, exponent);
+    }
+
+    private static ComputationNodeType mapOperator(String operatorStr) throws IllegalArgumentException {
         switch (operatorStr) {
             case "+":
                 return ComputationNodeType.ADD;
@@ -23,14 +32,24 @@ public class ComputationNode {
                 return ComputationNodeType.NEGATE;
             case "T":
                 return ComputationNodeType.TRANSPOSE;
+            case "^":
+                return ComputationNodeType.POWER;
             default:
                 throw new IllegalArgumentException("Unknown operator: " + operatorStr);
         }
     }
 
     public ComputationNode(ComputationNodeType nodeType, List<ComputationNode> children) {
+        this(nodeType, children, 0);
+    }
+
+    public ComputationNode(ComputationNodeType nodeType, List<ComputationNode> children, int exponent) {
+        if (nodeType == ComputationNodeType.POWER && exponent < 1) {
+            throw new IllegalArgumentException("POWER requires a positive exponent, got " + exponent);
+        }
         this.nodeType = nodeType;
         this.children = children;
+        this.exponent = nodeType == ComputationNodeType.POWER ? exponent : 0;
     }
 
     public ComputationNode(double[][] matrix) {
@@ -38,10 +57,22 @@ public class ComputationNode {
         this.matrix = matrix;
     }
 
+    /**
+     * Leaf whose matrix is decoded from the input only when getMatrix() is first called.
+     */
+    public ComputationNode(LazyMatrix lazy) {
+        this.nodeType = ComputationNodeType.MATRIX;
+        this.lazy = lazy;
+    }
+
     public ComputationNodeType getNodeType() {
         return nodeType;
     }
 
+    public int getExponent() {
+        return exponent;
+    }
+
     public List<ComputationNode> getChildren() {
         return children;
     }
@@ -77,8 +108,41 @@ public class ComputationNode {
             ComputationNode lastChild = children.remove(children.size() - 1);
             ComputationNode newNode = new ComputationNode(nodeType, children);
             children = List.of(newNode, lastChild);
-            newNode.associativeNesting();
         }
+        if (children != null) {
+            // operands may be n-ary operations themselves
+            for (ComputationNode child : children) {
+                child.associativeNesting();
+            }
+        }
+    }
+
+    /**
+     * Replaces the operand at the given index, e.g. to share one instance of a repeated subtree.
+     */
+    public void replaceChild(int index, ComputationNode child) {
+        if (children == null) {
+            throw new IllegalStateException("MATRIX nodes have no children.");
+        }
+        List<ComputationNode> updated = new ArrayList<>(children);
+        updated.set(index, child);
+        children = updated;
+    }
+
+    /**
+     * Turns this operation node into another operation in place, e.g. when a planner pass
+     * rewrites A * A * A into A ^ 3.
+     */
+    public void rewrite(ComputationNodeType nodeType, List<ComputationNode> children, int exponent) {
+        if (this.nodeType == ComputationNodeType.MATRIX || nodeType == ComputationNodeType.MATRIX) {
+            throw new IllegalStateException("Only operation nodes can be rewritten.");
+        }
+        if (nodeType == ComputationNodeType.POWER && exponent < 1) {
+            throw new IllegalArgumentException("POWER requires a positive exponent, got " + exponent);
+        }
+        this.nodeType = nodeType;
+        this.children = children;
+        this.exponent = nodeType == ComputationNodeType.POWER ? exponent : 0;
     }
 
     /**
@@ -87,14 +151,65 @@ public class ComputationNode {
     public void resolve(double[][] matrix) {
         this.nodeType = ComputationNodeType.MATRIX;
         this.children = null;
+        this.lazy = null;
         this.matrix = matrix;
     }
 
     public double[][] getMatrix() {
-        if (matrix == null) {
+        double[][] m = matrix;
+        if (m == null && lazy != null) {
+            synchronized (this) {
+                m = matrix;
+                if (m == null) {
+                    m = lazy.decode();
+                    matrix = m;
+                }
+            }
+        }
+        if (m == null) {
             throw new IllegalStateException("This node does not contain a matrix.");
         }
-        return matrix;
+        return m;
+    }
+
+    /**
+     * The lazy source of this leaf, or null if its matrix was given up front or computed.
+     */
+    public LazyMatrix getLazySource() {
+        return lazy;
+    }
+
+    public int getRows() {
+        if (lazy != null) {
+            return lazy.getRows();
+        }
+        return getMatrix().length;
+    }
+
+    public int getCols() {
+        if (lazy != null) {
+            return lazy.getCols();
+        }
+        double[][] m = getMatrix();
+        return m.length == 0 ? 0 : m[0].length;
+    }
+
+    /**
+     * Whether the node's values are on the heap: false for a lazy leaf not decoded yet, or
+     * released since, and for operator nodes.
+     */
+    public boolean isResident() {
+        return matrix != null;
+    }
+
+    /**
+     * Drops the decoded matrix of a lazy leaf once it has been consumed; it is decoded again
+     * if needed later. No-op for other nodes.
+     */
+    public void releaseMatrix() {
+        if (lazy != null) {
+            matrix = null;
+        }
     }
 
 
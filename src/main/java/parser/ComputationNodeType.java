@@ -9,5 +9,6 @@ public enum ComputationNodeType {
     MULTIPLY,
     NEGATE,
     TRANSPOSE,
+    POWER, // one square operand raised to a positive integer exponent
     MATRIX,
 }
\ No newline at end of file
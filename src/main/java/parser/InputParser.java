@@ -3,20 +3,73 @@ package parser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import scheduling.CancellationToken;
+import scheduling.ExecutorJob;
+import scheduling.TiredExecutor;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.text.ParseException;
 import java.util.*;
 
 public class InputParser {
 
+    // Files at least this large are parsed in parallel when an executor is available
+    public static final long DEFAULT_PARALLEL_THRESHOLD_BYTES = 1L << 20;
+
     private final ObjectMapper mapper = new ObjectMapper();
+    private final TiredExecutor executor; // null: always parse on the calling thread
+    private final long parallelThresholdBytes;
+
+    public InputParser() {
+        this(null, DEFAULT_PARALLEL_THRESHOLD_BYTES);
+    }
 
+    /**
+     * Creates a parser that converts the numbers of large input files on the executor's
+     * workers, see ParallelMatrixReader. Small files and JSON trees are parsed as before.
+     */
+    public InputParser(TiredExecutor executor) {
+        this(executor, DEFAULT_PARALLEL_THRESHOLD_BYTES);
+    }
+
+    public InputParser(TiredExecutor executor, long parallelThresholdBytes) {
+        if (parallelThresholdBytes < 0) {
+            throw new IllegalArgumentException("parallelThresholdBytes must be >= 0");
+        }
+        this.executor = executor;
+        this.parallelThresholdBytes = parallelThresholdBytes;
+    }
+
+    /**
+     * Parses an input file. gzip and zstd files are recognised by content and inflated on a
+     * pipeline thread while Jackson parses; the parallel reader needs random access and is
+     * only used for uncompressed files.
+     */
     public ComputationNode parse(String inputPath) throws ParseException {
+        return parse(inputPath, null, null);
+    }
+
+    /**
+     * Same as parse(inputPath), with the parallel reader's number conversion queued on the
+     * caller's job and skipped once the token is cancelled. A null job or token falls back to
+     * the executor's default job or to never cancelling.
+     *
+     * @throws java.util.concurrent.CancellationException if the token is cancelled
+     */
+    public ComputationNode parse(String inputPath, CancellationToken token, ExecutorJob job) throws ParseException {
+        File inputFile = new File(inputPath);
         try {
-            File inputFile = new File(inputPath);
-            JsonNode rootJsonNode = mapper.readTree(inputFile);
+            if (executor != null && inputFile.isFile() && inputFile.length() >= parallelThresholdBytes
+                    && Compression.detect(inputFile.toPath()) == Compression.NONE) {
+                return ParallelMatrixReader.read(inputFile.toPath(), executor, token, job);
+            }
+        } catch (IOException e) {
+            throw new ParseException("Failed to read the input JSON file: " + e.getMessage(), 0);
+        }
+        try (InputStream in = Compression.openInput(inputFile.toPath())) {
+            JsonNode rootJsonNode = mapper.readTree(in);
             ComputationNode root = parseJsonNode(rootJsonNode);
             return root;
         } catch (IOException e) {
@@ -24,6 +77,34 @@ public class InputParser {
         }
     }
 
+    /**
+     * Like parse(), but one fast scan only records where each matrix literal's rows start; the
+     * leaves are decoded when the engine first uses them and dropped once consumed (see
+     * LazyMatrix), so resident memory follows the working set rather than the input size.
+     * Compressed files cannot be indexed and are parsed eagerly.
+     */
+    public ComputationNode parseLazy(String inputPath) throws ParseException {
+        File inputFile = new File(inputPath);
+        try {
+            if (inputFile.isFile() && Compression.detect(inputFile.toPath()) == Compression.NONE) {
+                return ParallelMatrixReader.read(inputFile.toPath(), executor, true);
+            }
+        } catch (IOException e) {
+            throw new ParseException("Failed to read the input JSON file: " + e.getMessage(), 0);
+        }
+        return parse(inputPath);
+    }
+
+    /**
+     * Parses an expression that has already been read into a JSON tree (e.g. from a socket).
+     */
+    public ComputationNode parse(JsonNode rootJsonNode) throws ParseException {
+        if (rootJsonNode == null || rootJsonNode.isNull()) {
+            throw new ParseException("Missing expression.", 0);
+        }
+        return parseJsonNode(rootJsonNode);
+    }
+
     private ComputationNode parseJsonNode(JsonNode jsonNode) throws ParseException {
         if (jsonNode.has("operator") && jsonNode.has("operands")) {
             String operatorStr = jsonNode.get("operator").asText();
@@ -32,7 +113,15 @@ public class InputParser {
             for (int i = 0; i < operandJsonNodes.size(); i++) {
                 operands.add(parseJsonNode(operandJsonNodes.get(i)));
             }
-            return new ComputationNode(operatorStr, operands);
+            int exponent = 0;
+            JsonNode exponentJsonNode = jsonNode.get("exponent");
+            if (exponentJsonNode != null) {
+                if (!exponentJsonNode.canConvertToInt() || !exponentJsonNode.isIntegralNumber()) {
+                    throw new ParseException("Exponent must be an integer: " + exponentJsonNode, 0);
+                }
+                exponent = exponentJsonNode.intValue();
+            }
+            return new ComputationNode(operatorStr, operands, exponent);
         }
         else if (jsonNode.isArray()) {
             if (jsonNode.size() == 0) {
@@ -0,0 +1,125 @@
+package parser;
+
+import scheduling.CancellationToken;
+import scheduling.ExecutorJob;
+import scheduling.TiredExecutor;
+import scheduling.TiredThread;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A matrix literal of a memory-mapped input file that is decoded only when its node is used.
+ * The structural scan of ParallelMatrixReader records where each row starts, the shape, and a
+ * fingerprint of the literal's bytes, so the matrix can be planned and keyed without decoding it.
+ */
+public final class LazyMatrix {
+
+    private static final int MIN_CHUNK_VALUES = 4096;
+
+    private final ParallelMatrixReader reader;
+    private final long[] rowStarts;
+    private final int rows;
+    private final int cols;
+    private final long hashHi;
+    private final long hashLo;
+    private final TiredExecutor executor; // null: decode on the calling thread
+    // job and token of the run that uses the matrix, for decodes through ComputationNode.getMatrix()
+    private volatile ExecutorJob job = null;
+    private volatile CancellationToken token = null;
+
+    LazyMatrix(ParallelMatrixReader reader, long[] rowStarts, int rows, int cols,
+               long hashHi, long hashLo, TiredExecutor executor) {
+        this.reader = reader;
+        this.rowStarts = rowStarts;
+        this.rows = rows;
+        this.cols = cols;
+        this.hashHi = hashHi;
+        this.hashLo = hashLo;
+        this.executor = executor;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Fingerprint of the literal's bytes: equal bytes mean equal values, but the same values
+     * written differently (1 vs 1.0) have different fingerprints.
+     */
+    public long getHashHi() {
+        return hashHi;
+    }
+
+    public long getHashLo() {
+        return hashLo;
+    }
+
+    /**
+     * Queues the decode tasks of later decode() / decodeRows(from, to) calls on the caller's job
+     * and skips them once the token is cancelled; null resets to the executor's default job or
+     * to never cancelling.
+     */
+    public void setJob(ExecutorJob job, CancellationToken token) {
+        this.job = job;
+        this.token = token;
+    }
+
+    /**
+     * Parses the values, splitting large matrices into row chunks on the executor unless this
+     * already runs on one of its workers.
+     *
+     * @throws NumberFormatException if a value is not a valid number
+     */
+    double[][] decode() {
+        return decodeRows(0, rows);
+    }
+
+    /**
+     * Parses rows [from, to) only, e.g. to spill a large leaf band by band without holding
+     * all of it; split across the executor like decode().
+     *
+     * @throws NumberFormatException if a value is not a valid number
+     */
+    public double[][] decodeRows(int from, int to) {
+        return decodeRows(from, to, token, job);
+    }
+
+    /**
+     * Same as decodeRows(from, to), with the row tasks on the given job and token; null falls
+     * back to those of setJob().
+     *
+     * @throws java.util.concurrent.CancellationException if the token is cancelled
+     */
+    public double[][] decodeRows(int from, int to, CancellationToken token, ExecutorJob job) {
+        if (from < 0 || to > rows || from > to) {
+            throw new IndexOutOfBoundsException("Rows [" + from + ", " + to + ") outside 0.." + rows);
+        }
+        double[][] data = new double[to - from][];
+        long chunkRows = Math.max(1, MIN_CHUNK_VALUES / Math.max(1, cols));
+        if (executor == null || data.length <= chunkRows || Thread.currentThread() instanceof TiredThread) {
+            for (int r = from; r < to; r++) {
+                data[r - from] = reader.parseRow(rowStarts[r], cols);
+            }
+            return data;
+        }
+        List<Runnable> tasks = new ArrayList<>();
+        for (int start = from; start < to; start += chunkRows) {
+            final int lo = start;
+            final int hi = (int) Math.min(to, start + chunkRows);
+            tasks.add(() -> {
+                for (int r = lo; r < hi; r++) {
+                    data[r - from] = reader.parseRow(rowStarts[r], cols);
+                }
+            });
+        }
+        CancellationToken t = token != null ? token : this.token;
+        ExecutorJob j = job != null ? job : this.job;
+        executor.submitAll(tasks, t != null ? t : new CancellationToken(), j != null ? j : executor.getDefaultJob());
+        return data;
+    }
+}
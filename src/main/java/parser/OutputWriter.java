@@ -2,8 +2,12 @@ package parser;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import memory.TiledMatrix;
 
 public class OutputWriter {
 
@@ -22,13 +26,61 @@ public class OutputWriter {
     public OutputWriter() {}
 
     public static void write(double[][] matrix, String filePath) throws IOException {
-        File file = new File(filePath);
-        mapper.writerWithDefaultPrettyPrinter().writeValue(file, new ResultMatrix(matrix));
+        try (OutputStream out = open(filePath)) {
+            mapper.writerWithDefaultPrettyPrinter().writeValue(out, new ResultMatrix(matrix));
+        }
+    }
+
+    /**
+     * Writes a tiled (out-of-core) result in the same format as write(double[][], String)
+     * without materialising the whole matrix. Rows are read a band at a time, holding about one
+     * tile's worth of values (at least one row), however wide the matrix is.
+     */
+    public static void write(TiledMatrix matrix, String filePath) throws IOException {
+        int t = matrix.tileSize();
+        int band = (int) Math.max(1, Math.min(t, (long) t * t / Math.max(1, matrix.cols())));
+        try (JsonGenerator gen = startResult(filePath)) {
+            for (int from = 0; from < matrix.rows(); from += band) {
+                for (double[] row : matrix.readRows(from, Math.min(matrix.rows(), from + band))) {
+                    gen.writeArray(row, 0, row.length);
+                }
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+    }
+
+    /**
+     * Opens the output and writes everything up to the first row of a result; the caller writes
+     * the rows, then closes the array and the object.
+     */
+    static JsonGenerator startResult(String filePath) throws IOException {
+        OutputStream out = open(filePath);
+        try {
+            JsonGenerator gen = mapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+            gen.useDefaultPrettyPrinter();
+            gen.writeStartObject();
+            gen.writeFieldName("result");
+            gen.writeStartArray();
+            return gen;
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
     }
 
     public static void write(String error, String filePath) throws IOException {
-        File file = new File(filePath);
-        mapper.writerWithDefaultPrettyPrinter().writeValue(file, new ErrorMessage(error));
+        try (OutputStream out = open(filePath)) {
+            mapper.writerWithDefaultPrettyPrinter().writeValue(out, new ErrorMessage(error));
+        }
+    }
+
+    /**
+     * Output paths ending in .gz or .zst are compressed on a pipeline thread while the
+     * result is serialised.
+     */
+    private static OutputStream open(String filePath) throws IOException {
+        return Compression.openOutput(new File(filePath).toPath());
     }
 
 }
@@ -0,0 +1,644 @@
+package parser;
+
+import scheduling.CancellationToken;
+import scheduling.ExecutorJob;
+import scheduling.TiredExecutor;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parallel reader for large input files, producing the same tree as InputParser.
+ *
+ * One thread memory-maps the file and scans it once: it builds the operator nodes, and for
+ * every matrix literal it records where each row starts and checks that all rows have the same
+ * number of values. No numbers are converted during the scan. The matrices are then allocated,
+ * and their rows are split into chunks that are parsed on the TiredExecutor. Each chunk converts
+ * its numbers straight from the mapped bytes into the matrix with a fast double parser.
+ *
+ * In lazy mode no values are parsed at all: every matrix literal becomes a LazyMatrix leaf that
+ * decodes its rows from the mapping when the engine first needs it.
+ */
+final class ParallelMatrixReader {
+
+    private static final int SEGMENT_BITS = 30; // 1 GB mappings, so files above 2 GB work too
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+    private static final int MIN_CHUNK_VALUES = 4096;
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // 128-bit truncated mantissas of 10^e for e in [MIN_POW10, MAX_POW10], for Eisel-Lemire
+    private static final int MIN_POW10 = -348;
+    private static final int MAX_POW10 = 347;
+    private static final long[] POW10_HI = new long[MAX_POW10 - MIN_POW10 + 1];
+    private static final long[] POW10_LO = new long[MAX_POW10 - MIN_POW10 + 1];
+
+    static {
+        BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        for (int e = MIN_POW10; e <= MAX_POW10; e++) {
+            BigInteger p = BigInteger.TEN.pow(Math.abs(e));
+            BigInteger m;
+            if (e >= 0) {
+                int shift = p.bitLength() - 128;
+                m = shift > 0 ? p.shiftRight(shift) : p.shiftLeft(-shift);
+            } else {
+                m = BigInteger.ONE.shiftLeft(p.bitLength() + 127).divide(p);
+                if (m.bitLength() > 128) {
+                    m = m.shiftRight(1);
+                }
+            }
+            POW10_HI[e - MIN_POW10] = m.shiftRight(64).longValue();
+            POW10_LO[e - MIN_POW10] = m.and(mask).longValue();
+        }
+    }
+
+    private final MappedByteBuffer[] segments;
+    private final long length;
+    private final List<PendingMatrix> matrices = new ArrayList<>();
+    private final boolean lazy;
+    private final TiredExecutor executor;
+    private long pos = 0; // scan cursor
+
+    /**
+     * A matrix literal whose row boundaries are known but whose values are not parsed yet.
+     */
+    private static final class PendingMatrix {
+        long[] rowStarts = new long[16]; // offset of each row's '['
+        int rows = 0;
+        int width = -1;
+        double[][] data;
+        long hashHi = 0xCBF29CE484222325L; // of the literal's bytes, lazy mode only
+        long hashLo = 0x84222325CBF29CE4L;
+
+        void hash(int c) {
+            hashHi = (hashHi ^ c) * 0x100000001B3L;
+            hashLo = Long.rotateLeft(hashLo + c * 0x9E3779B97F4A7C15L, 29) * 0xBF58476D1CE4E5B9L;
+        }
+
+        void addRow(long start) {
+            if (rows == rowStarts.length) {
+                rowStarts = Arrays.copyOf(rowStarts, rows * 2);
+            }
+            rowStarts[rows++] = start;
+        }
+    }
+
+    private ParallelMatrixReader(MappedByteBuffer[] segments, long length, boolean lazy, TiredExecutor executor) {
+        this.segments = segments;
+        this.length = length;
+        this.lazy = lazy;
+        this.executor = executor;
+    }
+
+    static ComputationNode read(Path file, TiredExecutor executor) throws ParseException {
+        return read(file, executor, false);
+    }
+
+    /**
+     * Eager read whose number conversion runs on the caller's job and stops with its token;
+     * null falls back to the executor's default job or to never cancelling.
+     */
+    static ComputationNode read(Path file, TiredExecutor executor, CancellationToken token, ExecutorJob job)
+            throws ParseException {
+        return read(file, executor, false, token, job);
+    }
+
+    /**
+     * With lazy set, leaves are LazyMatrix nodes decoded on first use (on the executor if given,
+     * which may be null) and the mapping stays alive as long as the tree does.
+     */
+    static ComputationNode read(Path file, TiredExecutor executor, boolean lazy) throws ParseException {
+        return read(file, executor, lazy, null, null);
+    }
+
+    private static ComputationNode read(Path file, TiredExecutor executor, boolean lazy,
+                                        CancellationToken token, ExecutorJob job) throws ParseException {
+        ParallelMatrixReader reader;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            int count = (int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            MappedByteBuffer[] segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long offset = (long) i << SEGMENT_BITS;
+                segments[i] = ch.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(SEGMENT_SIZE, size - offset));
+            }
+            reader = new ParallelMatrixReader(segments, size, lazy, executor);
+        } catch (IOException e) {
+            throw new ParseException("Failed to read the input JSON file: " + e.getMessage(), 0);
+        }
+
+        ComputationNode root = reader.readValue();
+        reader.skipWhitespace();
+        if (reader.pos != reader.length) {
+            throw reader.error("Unexpected content after the expression");
+        }
+        if (!lazy) {
+            reader.parseMatrices(executor, token != null ? token : new CancellationToken(),
+                    job != null ? job : executor.getDefaultJob());
+        }
+        return root;
+    }
+
+    // ---------- structural scan ----------
+
+    private ComputationNode readValue() throws ParseException {
+        skipWhitespace();
+        int c = peek();
+        if (c == '{') {
+            return readOperation();
+        }
+        if (c == '[') {
+            return readMatrix();
+        }
+        throw error("Invalid node structure");
+    }
+
+    private ComputationNode readOperation() throws ParseException {
+        long start = pos;
+        pos++; // '{'
+        String operator = null;
+        List<ComputationNode> operands = null;
+        int exponent = 0;
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+        } else {
+            while (true) {
+                skipWhitespace();
+                String key = readString();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                if (key.equals("operator")) {
+                    operator = peek() == '"' ? readString() : readLiteral();
+                } else if (key.equals("operands")) {
+                    operands = readOperands();
+                } else if (key.equals("exponent")) {
+                    long literalStart = pos;
+                    String literal = readLiteral();
+                    try {
+                        exponent = Integer.parseInt(literal);
+                    } catch (NumberFormatException e) {
+                        pos = literalStart;
+                        throw error("Exponent must be an integer");
+                    }
+                } else {
+                    skipValue();
+                }
+                skipWhitespace();
+                int c = next();
+                if (c == '}') {
+                    break;
+                }
+                if (c != ',') {
+                    pos--;
+                    throw error("Expected ',' or '}'");
+                }
+            }
+        }
+        if (operator == null || operands == null) {
+            pos = start;
+            throw error("Invalid node structure");
+        }
+        return new ComputationNode(operator, operands, exponent);
+    }
+
+    private List<ComputationNode> readOperands() throws ParseException {
+        if (peek() != '[') {
+            throw error("operands must be an array");
+        }
+        pos++;
+        List<ComputationNode> operands = new ArrayList<>();
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return operands;
+        }
+        while (true) {
+            operands.add(readValue());
+            skipWhitespace();
+            int c = next();
+            if (c == ']') {
+                return operands;
+            }
+            if (c != ',') {
+                pos--;
+                throw error("Expected ',' or ']'");
+            }
+        }
+    }
+
+    private ComputationNode readMatrix() throws ParseException {
+        pos++; // outer '['
+        skipWhitespace();
+        int c = peek();
+        if (c == ']') {
+            throw error("Empty array cannot be parsed as DataNode.");
+        }
+        if (c == '-' || (c >= '0' && c <= '9')) {
+            throw error("Vectors (1D arrays) are not supported as standalone nodes.");
+        }
+        PendingMatrix m = new PendingMatrix();
+        while (true) {
+            if (peek() != '[') {
+                throw error("Invalid matrix row");
+            }
+            m.addRow(pos);
+            int width = scanRow(lazy ? m : null);
+            if (m.width < 0) {
+                m.width = width;
+            } else if (width != m.width) {
+                throw error("Inconsistent row sizes in matrix.");
+            }
+            skipWhitespace();
+            c = next();
+            if (c == ']') {
+                break;
+            }
+            if (c != ',') {
+                pos--;
+                throw error("Expected ',' or ']' after a matrix row");
+            }
+            skipWhitespace();
+        }
+        if (lazy) {
+            return new ComputationNode(new LazyMatrix(this, Arrays.copyOf(m.rowStarts, m.rows), m.rows, m.width,
+                    m.hashHi, m.hashLo, executor));
+        }
+        m.data = new double[m.rows][];
+        matrices.add(m);
+        return new ComputationNode(m.data);
+    }
+
+    /**
+     * Skips one row of numbers and returns how many values it holds; only checks the characters,
+     * and hashes them into hashInto unless it is null.
+     */
+    private int scanRow(PendingMatrix hashInto) throws ParseException {
+        pos++; // '['
+        int values = 0;
+        boolean inValue = false;
+        while (pos < length) {
+            int c = get(pos);
+            if (c == ']') {
+                pos++;
+                if (hashInto != null) {
+                    hashInto.hash(']');
+                }
+                return inValue || values > 0 ? values + 1 : 0;
+            }
+            if (hashInto != null && c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                hashInto.hash(c);
+            }
+            if (c == ',') {
+                values++;
+                inValue = false;
+            } else if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+                inValue = true;
+            } else if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                throw error("Invalid matrix row");
+            }
+            pos++;
+        }
+        throw error("Unterminated matrix row");
+    }
+
+    private String readString() throws ParseException {
+        if (peek() != '"') {
+            throw error("Expected a string");
+        }
+        pos++;
+        StringBuilder sb = new StringBuilder();
+        while (pos < length) {
+            int c = get(pos++);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c == '\\') {
+                if (pos >= length) break;
+                int e = get(pos++);
+                switch (e) {
+                    case 'n': sb.append('\n'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'u':
+                        if (pos + 4 > length) throw error("Bad escape");
+                        sb.append((char) Integer.parseInt(ascii(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default: sb.append((char) e);
+                }
+            } else {
+                sb.append((char) c); // operator names and keys are ASCII
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private String readLiteral() {
+        long start = pos;
+        while (pos < length) {
+            int c = get(pos);
+            if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                break;
+            }
+            pos++;
+        }
+        return ascii(start, pos);
+    }
+
+    private void skipValue() throws ParseException {
+        skipWhitespace();
+        int c = peek();
+        if (c == '"') {
+            readString();
+            return;
+        }
+        if (c != '{' && c != '[') {
+            readLiteral();
+            return;
+        }
+        int depth = 0;
+        while (pos < length) {
+            c = get(pos);
+            if (c == '"') {
+                readString();
+                continue;
+            }
+            pos++;
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                if (--depth == 0) {
+                    return;
+                }
+            }
+        }
+        throw error("Unterminated value");
+    }
+
+    private void skipWhitespace() {
+        while (pos < length) {
+            int c = get(pos);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private void expect(char c) throws ParseException {
+        if (next() != c) {
+            pos--;
+            throw error("Expected '" + c + "'");
+        }
+    }
+
+    private int peek() throws ParseException {
+        if (pos >= length) {
+            throw error("Unexpected end of input");
+        }
+        return get(pos);
+    }
+
+    private int next() throws ParseException {
+        int c = peek();
+        pos++;
+        return c;
+    }
+
+    private ParseException error(String message) {
+        return new ParseException(message + " (at byte " + pos + ")", (int) Math.min(pos, Integer.MAX_VALUE));
+    }
+
+    // ---------- parallel number parsing ----------
+
+    private void parseMatrices(TiredExecutor executor, CancellationToken token, ExecutorJob job) throws ParseException {
+        long totalValues = 0;
+        for (PendingMatrix m : matrices) {
+            totalValues += (long) m.rows * Math.max(1, m.width);
+        }
+        long chunkValues = Math.max(MIN_CHUNK_VALUES, totalValues / ((long) executor.getWorkerCount() * CHUNKS_PER_WORKER));
+
+        List<Runnable> tasks = new ArrayList<>();
+        for (PendingMatrix m : matrices) {
+            int rowsPerChunk = (int) Math.max(1, Math.min(m.rows, chunkValues / Math.max(1, m.width)));
+            for (int from = 0; from < m.rows; from += rowsPerChunk) {
+                final int lo = from;
+                final int hi = Math.min(m.rows, from + rowsPerChunk);
+                tasks.add(() -> {
+                    for (int r = lo; r < hi; r++) {
+                        m.data[r] = parseRow(m.rowStarts[r], m.width);
+                    }
+                });
+            }
+        }
+        try {
+            executor.submitAll(tasks, token, job);
+        } catch (NumberFormatException e) {
+            throw new ParseException(e.getMessage(), 0);
+        }
+    }
+
+    /**
+     * Parses the row starting at its '['. The scan only counted the commas, so each value must
+     * be followed by ',' (or ']' after the last one) here, e.g. to reject [1 2] and [1-2, 3].
+     *
+     * @throws NumberFormatException if a value or separator is malformed
+     */
+    double[] parseRow(long start, int width) {
+        double[] row = new double[width];
+        long[] cursor = {start + 1};
+        for (int j = 0; j < width; j++) {
+            skipWhitespace(cursor);
+            row[j] = parseDouble(cursor);
+            skipWhitespace(cursor);
+            int expected = j == width - 1 ? ']' : ',';
+            if (cursor[0] >= length || get(cursor[0]) != expected) {
+                throw new NumberFormatException("Expected '" + (char) expected + "' at byte " + cursor[0]);
+            }
+            cursor[0]++;
+        }
+        return row;
+    }
+
+    private void skipWhitespace(long[] cursor) {
+        long p = cursor[0];
+        while (p < length) {
+            int c = get(p);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                break;
+            }
+            p++;
+        }
+        cursor[0] = p;
+    }
+
+    /**
+     * Parses the number at cursor[0] and advances past it. The digits are collected into a long
+     * mantissa (at most 19 significant digits) and a decimal exponent. Short mantissas with a
+     * small exponent are exact with one multiplication or division by a power of ten; the rest
+     * go through the Eisel-Lemire algorithm, and the rare inputs it cannot decide fall back to
+     * Double.parseDouble, so the result is always correctly rounded.
+     */
+    double parseDouble(long[] cursor) {
+        long start = cursor[0];
+        long p = start;
+        boolean negative = false;
+        int c = p < length ? get(p) : -1;
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            c = ++p < length ? get(p) : -1;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exp10 = 0;
+        boolean anyDigit = false;
+        boolean truncated = false;
+        while (c >= '0' && c <= '9') {
+            anyDigit = true;
+            if (digits < 19) {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0) digits++;
+            } else {
+                exp10++;
+                truncated = true;
+            }
+            c = ++p < length ? get(p) : -1;
+        }
+        if (c == '.') {
+            c = ++p < length ? get(p) : -1;
+            while (c >= '0' && c <= '9') {
+                anyDigit = true;
+                if (digits < 19) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) digits++;
+                    exp10--;
+                } else {
+                    truncated = true;
+                }
+                c = ++p < length ? get(p) : -1;
+            }
+        }
+        if (!anyDigit) {
+            throw new NumberFormatException("Invalid number at byte " + start);
+        }
+        if (c == 'e' || c == 'E') {
+            c = ++p < length ? get(p) : -1;
+            int sign = 1;
+            if (c == '-' || c == '+') {
+                sign = c == '-' ? -1 : 1;
+                c = ++p < length ? get(p) : -1;
+            }
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Invalid exponent at byte " + start);
+            }
+            int e = 0;
+            while (c >= '0' && c <= '9') {
+                if (e < 100_000) e = e * 10 + (c - '0');
+                c = ++p < length ? get(p) : -1;
+            }
+            exp10 += sign * e;
+        }
+        cursor[0] = p;
+
+        double value;
+        if (mantissa == 0) {
+            value = 0.0;
+        } else if (!truncated && digits <= 15 && exp10 >= -22 && exp10 <= 22) {
+            value = exp10 >= 0 ? mantissa * POW10[exp10] : mantissa / POW10[-exp10];
+        } else {
+            long bits = eiselLemire(mantissa, exp10);
+            // a truncated mantissa lies in [mantissa, mantissa + 1): only safe if both round alike
+            if (bits < 0 || (truncated && eiselLemire(mantissa + 1, exp10) != bits)) {
+                try {
+                    return Double.parseDouble(ascii(start, p));
+                } catch (NumberFormatException e) {
+                    throw new NumberFormatException("Invalid number at byte " + start);
+                }
+            }
+            value = Double.longBitsToDouble(bits);
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Bits of the double nearest to man * 10^exp10 (man != 0), or -1 when the 128-bit product
+     * is too close to a rounding boundary, or the result is subnormal or out of range.
+     */
+    static long eiselLemire(long man, int exp10) {
+        if (exp10 < MIN_POW10 || exp10 > MAX_POW10) {
+            return -1;
+        }
+        int clz = Long.numberOfLeadingZeros(man);
+        man <<= clz;
+        long retExp2 = (((217706L * exp10) >> 16) + 64 + 1023) - clz;
+        int i = exp10 - MIN_POW10;
+
+        long xHi = unsignedMultiplyHigh(man, POW10_HI[i]);
+        long xLo = man * POW10_HI[i];
+        if ((xHi & 0x1FF) == 0x1FF && Long.compareUnsigned(xLo + man, man) < 0) {
+            long yHi = unsignedMultiplyHigh(man, POW10_LO[i]);
+            long yLo = man * POW10_LO[i];
+            long mergedHi = xHi;
+            long mergedLo = xLo + yHi;
+            if (Long.compareUnsigned(mergedLo, xLo) < 0) {
+                mergedHi++;
+            }
+            if ((mergedHi & 0x1FF) == 0x1FF && mergedLo + 1 == 0 && Long.compareUnsigned(yLo + man, man) < 0) {
+                return -1;
+            }
+            xHi = mergedHi;
+            xLo = mergedLo;
+        }
+
+        long msb = xHi >>> 63;
+        long retMantissa = xHi >>> (msb + 9);
+        retExp2 -= 1 ^ msb;
+        if (xLo == 0 && (xHi & 0x1FF) == 0 && (retMantissa & 3) == 1) {
+            return -1; // exactly half-way
+        }
+        retMantissa += retMantissa & 1;
+        retMantissa >>>= 1;
+        if ((retMantissa >>> 53) > 0) {
+            retMantissa >>>= 1;
+            retExp2++;
+        }
+        if (Long.compareUnsigned(retExp2 - 1, 0x7FF - 1) >= 0) {
+            return -1;
+        }
+        return (retExp2 << 52) | (retMantissa & 0x000FFFFFFFFFFFFFL);
+    }
+
+    private static long unsignedMultiplyHigh(long a, long b) {
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+
+    // ---------- mapped input ----------
+
+    private int get(long p) {
+        return segments[(int) (p >>> SEGMENT_BITS)].get((int) (p & (SEGMENT_SIZE - 1))) & 0xff;
+    }
+
+    private String ascii(long from, long to) {
+        StringBuilder sb = new StringBuilder((int) (to - from));
+        for (long p = from; p < to; p++) {
+            sb.append((char) get(p));
+        }
+        return sb.toString();
+    }
+}
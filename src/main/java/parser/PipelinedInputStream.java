@@ -0,0 +1,113 @@
+package parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads a source stream on a background thread into a bounded queue of chunks, so the work of
+ * producing the bytes (e.g. decompression) overlaps with the consumer of this stream.
+ */
+final class PipelinedInputStream extends InputStream {
+
+    private static final int CHUNK = 256 * 1024;
+    private static final int DEPTH = 8; // chunks buffered ahead of the reader
+    private static final byte[] EOF = new byte[0];
+
+    private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(DEPTH);
+    private final Thread producer;
+    private volatile IOException failure = null;
+    private volatile boolean closed = false;
+
+    private byte[] current = null;
+    private int currentLength = 0;
+    private int offset = 0;
+    private boolean done = false;
+
+    PipelinedInputStream(InputStream source, String name) {
+        this.producer = new Thread(() -> pump(source), name);
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    private void pump(InputStream source) {
+        try (source) {
+            while (!closed) {
+                byte[] buf = new byte[CHUNK];
+                int n = source.readNBytes(buf, 0, CHUNK);
+                if (n == 0) {
+                    break;
+                }
+                chunks.put(n == CHUNK ? buf : java.util.Arrays.copyOf(buf, n));
+                if (n < CHUNK) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            return; // closed by the consumer
+        }
+        try {
+            chunks.put(EOF);
+        } catch (InterruptedException ignored) {
+            // closed by the consumer
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (done) {
+            return false;
+        }
+        while (current == null || offset == currentLength) {
+            byte[] next;
+            try {
+                next = chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading", e);
+            }
+            if (next == EOF) {
+                done = true;
+                if (failure != null) {
+                    throw failure;
+                }
+                return false;
+            }
+            current = next;
+            currentLength = next.length;
+            offset = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return current[offset++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, currentLength - offset);
+        System.arraycopy(current, offset, b, off, n);
+        offset += n;
+        return n;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        producer.interrupt();
+        chunks.clear();
+    }
+}
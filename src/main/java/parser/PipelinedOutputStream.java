@@ -0,0 +1,137 @@
+package parser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Collects writes into chunks that a background thread writes to the sink (e.g. a compressor),
+ * so serialisation and compression overlap. close() waits for the sink to be finished and
+ * reports any failure of the background thread. After a failed write the background thread
+ * keeps taking and discarding chunks, so a writer blocked on the full queue is released and
+ * sees the failure on its next write.
+ */
+final class PipelinedOutputStream extends OutputStream {
+
+    private static final int CHUNK = 256 * 1024;
+    private static final int DEPTH = 8;
+    private static final byte[] EOF = new byte[0];
+
+    private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(DEPTH);
+    private final Thread consumer;
+    private volatile IOException failure = null;
+
+    private byte[] buffer = new byte[CHUNK];
+    private int count = 0;
+    private boolean closed = false;
+
+    PipelinedOutputStream(OutputStream sink, String name) {
+        this.consumer = new Thread(() -> drain(sink), name);
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    private void drain(OutputStream sink) {
+        try {
+            while (true) {
+                byte[] chunk = chunks.take();
+                if (chunk == EOF) {
+                    break;
+                }
+                if (failure == null) {
+                    try {
+                        sink.write(chunk);
+                    } catch (IOException | RuntimeException e) {
+                        fail(e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            fail(new IOException("Interrupted while writing", e));
+        } finally {
+            try {
+                sink.close();
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        }
+    }
+
+    private void fail(Exception e) {
+        if (failure == null) {
+            failure = e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    private void hand(byte[] chunk) throws IOException {
+        checkFailure();
+        try {
+            chunks.put(chunk);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing", e);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == CHUNK) {
+            flushChunk();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == CHUNK) {
+                flushChunk();
+            }
+            int n = Math.min(len, CHUNK - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void flushChunk() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        byte[] chunk = count == CHUNK ? buffer : Arrays.copyOf(buffer, count);
+        buffer = new byte[CHUNK];
+        count = 0;
+        hand(chunk);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flushChunk();
+        } finally {
+            // EOF is handed over even after a failure so the background thread ends
+            try {
+                chunks.put(EOF);
+                consumer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while finishing the output", e);
+            }
+        }
+        checkFailure();
+    }
+}
@@ -0,0 +1,233 @@
+package parser;
+
+import java.io.IOException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import memory.BufferPool;
+import scheduling.CancellationToken;
+
+/**
+ * Writes a result matrix row by row while it is still being computed, in the same format as
+ * OutputWriter.write(double[][], String). Rows may be handed in from any thread and in any
+ * order; a writer thread serialises them in row order as soon as the next one is available
+ * and returns each written row to the BufferPool.
+ *
+ * At most window rows past the next row to write are buffered; put() of a row further ahead
+ * blocks until the writer catches up. Producers must therefore start rows in ascending order
+ * (as the executor runs a batch of row tasks), so the row being waited for is never queued
+ * behind a blocked put(). A producer that gives up on its rows calls abandon() to release the
+ * blocked ones; a put() blocked while the token passed to start() is cancelled drops its row.
+ *
+ * Call start() once the row count is known, put() every row, then finish(). close() without
+ * finish() abandons the output, e.g. before the caller writes an error instead.
+ */
+public class RowStreamWriter implements AutoCloseable {
+
+    public static final int DEFAULT_WINDOW = 1024;
+    private static final long POLL_MILLIS = 50;
+
+    private final String filePath;
+    private final int window;
+    private volatile CancellationToken token = null;
+
+    // guarded by this
+    private double[][] slots = null; // finished rows the writer has not reached yet
+    private int nextRow = 0;
+    private int received = 0;
+    private boolean abandoned = false;
+    private IOException failure = null;
+
+    private JsonGenerator gen = null;
+    private Thread writer = null;
+    private boolean finished = false;
+
+    public RowStreamWriter(String filePath) {
+        this(filePath, DEFAULT_WINDOW);
+    }
+
+    public RowStreamWriter(String filePath, int window) {
+        if (filePath == null) {
+            throw new IllegalArgumentException("filePath must not be null");
+        }
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be > 0");
+        }
+        this.filePath = filePath;
+        this.window = window;
+    }
+
+    public boolean isStarted() {
+        return writer != null;
+    }
+
+    /**
+     * Opens the output and starts the writer thread for a result with the given row count.
+     */
+    public void start(int rows) throws IOException {
+        start(rows, null);
+    }
+
+    /**
+     * Same as start(rows); a put() blocked on the window gives up once the token is cancelled.
+     */
+    public void start(int rows, CancellationToken token) throws IOException {
+        if (rows < 0) {
+            throw new IllegalArgumentException("rows must be >= 0");
+        }
+        if (writer != null) {
+            throw new IllegalStateException("Stream already started");
+        }
+        this.token = token;
+        gen = OutputWriter.startResult(filePath);
+        synchronized (this) {
+            slots = new double[rows][];
+        }
+        writer = new Thread(this::drain, "row-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Hands row i over to the writer; the array must not be used by the caller afterwards.
+     * Blocks while i is window or more rows ahead of the next row to write.
+     */
+    public void put(int i, double[] row) {
+        if (row == null) {
+            throw new IllegalArgumentException("row must not be null");
+        }
+        synchronized (this) {
+            if (slots == null) {
+                throw new IllegalStateException("Stream not started");
+            }
+            if (i < nextRow || i >= slots.length || slots[i] != null) {
+                throw new IllegalArgumentException("Row " + i + " already written or out of range");
+            }
+            while (i - nextRow >= window && !abandoned && failure == null && !cancelled()) {
+                try {
+                    wait(POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    BufferPool.global().release(row);
+                    throw new IllegalStateException("Interrupted while waiting to write row " + i, e);
+                }
+            }
+            received++;
+            if (abandoned || failure != null || i - nextRow >= window) {
+                BufferPool.global().release(row);
+                return;
+            }
+            slots[i] = row;
+            if (i == nextRow) {
+                notifyAll();
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            double[] row;
+            synchronized (this) {
+                while (nextRow < slots.length && slots[nextRow] == null && !abandoned) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        failure = new IOException("Interrupted while writing", e);
+                        return;
+                    }
+                }
+                if (abandoned || nextRow == slots.length) {
+                    return;
+                }
+                row = slots[nextRow];
+                slots[nextRow] = null;
+            }
+            try {
+                gen.writeArray(row, 0, row.length);
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                }
+                return;
+            } finally {
+                BufferPool.global().release(row);
+            }
+            synchronized (this) {
+                nextRow++;
+                notifyAll(); // wakes puts waiting for the window
+            }
+        }
+    }
+
+    private boolean cancelled() {
+        CancellationToken t = token;
+        return t != null && t.isCancelled();
+    }
+
+    /**
+     * Drops the buffered rows and every later put(), releasing producers blocked on the window,
+     * e.g. after a row task failed and the rows they wait for will never come. close() must
+     * still be called.
+     */
+    public void abandon() {
+        synchronized (this) {
+            abandoned = true;
+            notifyAll();
+            if (slots != null) {
+                for (int i = 0; i < slots.length; i++) {
+                    if (slots[i] != null) {
+                        BufferPool.global().release(slots[i]);
+                        slots[i] = null;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for every row to be written and completes the file.
+     *
+     * @throws IllegalStateException if a row was never put
+     */
+    public void finish() throws IOException {
+        if (writer == null) {
+            throw new IllegalStateException("Stream not started");
+        }
+        synchronized (this) {
+            if (received != slots.length) {
+                throw new IllegalStateException("Only " + received + " of " + slots.length + " rows were put");
+            }
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing " + filePath, e);
+        }
+        synchronized (this) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+        finished = true;
+        gen.writeEndArray();
+        gen.writeEndObject();
+        gen.close();
+    }
+
+    /**
+     * Stops the writer and closes the (incomplete) output if finish() did not run.
+     */
+    @Override
+    public void close() throws IOException {
+        if (writer == null || finished) {
+            return;
+        }
+        abandon();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finished = true;
+        gen.close();
+    }
+}
@@ -0,0 +1,72 @@
+package scheduling;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cooperative cancellation for one job. Nothing is interrupted: tasks poll the token at chunk
+ * boundaries (before a row task starts, every few columns of a row product, between tiles)
+ * and give up with a CancellationException once it is cancelled.
+ * A token created with a timeout cancels itself when its deadline passes.
+ */
+public class CancellationToken {
+
+    private final long timeoutMillis;
+    private final long deadlineNanos; // only meaningful when timeoutMillis > 0
+    private final AtomicReference<String> reason = new AtomicReference<>(null);
+
+    public CancellationToken() {
+        this.timeoutMillis = 0;
+        this.deadlineNanos = 0;
+    }
+
+    private CancellationToken(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        this.deadlineNanos = System.nanoTime() + timeoutMillis * 1_000_000L;
+    }
+
+    /**
+     * Creates a token that cancels itself timeoutMillis from now; 0 means no deadline.
+     */
+    public static CancellationToken withTimeout(long timeoutMillis) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("timeoutMillis must be >= 0");
+        }
+        return timeoutMillis == 0 ? new CancellationToken() : new CancellationToken(timeoutMillis);
+    }
+
+    /**
+     * Cancels the job; the first reason wins.
+     */
+    public void cancel(String why) {
+        reason.compareAndSet(null, why == null ? "Cancelled" : why);
+    }
+
+    public boolean isCancelled() {
+        if (reason.get() != null) {
+            return true;
+        }
+        if (timeoutMillis > 0 && System.nanoTime() - deadlineNanos >= 0) {
+            reason.compareAndSet(null, "Timed out after " + timeoutMillis + " ms");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Why the job was cancelled, or null while it is still live.
+     */
+    public String getReason() {
+        return isCancelled() ? reason.get() : null;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public void throwIfCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException(reason.get());
+        }
+    }
+}
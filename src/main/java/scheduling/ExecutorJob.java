@@ -0,0 +1,78 @@
+package scheduling;
+
+import java.util.ArrayDeque;
+
+/**
+ * A job's share of a TiredExecutor: its pending task batches, its fair-share position and its
+ * accounting. Obtained from TiredExecutor.openJob() and closed when the job is done, which
+ * folds its totals into the per-class counters of the worker report.
+ *
+ * All mutable state is guarded by the owning executor's monitor.
+ */
+public class ExecutorJob implements AutoCloseable {
+
+    private final TiredExecutor executor;
+    private final String name;
+    private final JobPriority priority;
+    private final long seq;
+
+    final ArrayDeque<TiredExecutor.Batch> batches = new ArrayDeque<>();
+    double vruntime = 0; // weighted worker time, the fair-share clock
+    int running = 0;
+    long pending = 0;
+    long tasksCompleted = 0;
+    long runNanos = 0;
+    long queueWaitNanos = 0;
+    boolean closed = false;
+
+    ExecutorJob(TiredExecutor executor, String name, JobPriority priority, long seq) {
+        this.executor = executor;
+        this.name = name;
+        this.priority = priority;
+        this.seq = seq;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public JobPriority getPriority() {
+        return priority;
+    }
+
+    long getSeq() {
+        return seq;
+    }
+
+    /**
+     * Fair-share key: worker time already used plus the expected cost of the tasks still running,
+     * both scaled down by the class weight. The runnable job with the lowest key goes next.
+     */
+    double shareKey() {
+        double meanTask = tasksCompleted == 0 ? 0 : (double) runNanos / tasksCompleted;
+        return vruntime + running * meanTask / priority.getWeight();
+    }
+
+    public long getTasksCompleted() {
+        synchronized (executor) {
+            return tasksCompleted;
+        }
+    }
+
+    public long getRunNanos() {
+        synchronized (executor) {
+            return runNanos;
+        }
+    }
+
+    public long getQueueWaitNanos() {
+        synchronized (executor) {
+            return queueWaitNanos;
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.closeJob(this);
+    }
+}
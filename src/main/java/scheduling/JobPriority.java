@@ -0,0 +1,22 @@
+package scheduling;
+
+/**
+ * Priority class of a job on a shared TiredExecutor. Workers are shared between concurrent
+ * jobs in proportion to their class weight, so an INTERACTIVE job gets 16 times the worker
+ * time of a BATCH job while both have tasks waiting, and neither is ever starved.
+ */
+public enum JobPriority {
+    INTERACTIVE(16),
+    NORMAL(4),
+    BATCH(1);
+
+    private final int weight;
+
+    JobPriority(int weight) {
+        this.weight = weight;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+}
@@ -1,95 +1,269 @@
 package scheduling;
 
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.Objects;
 import java.util.Locale;
 
+import metrics.EngineMetrics;
+
+/**
+ * Runs tasks on TiredThreads, always handing the next task to the least fatigued idle worker.
+ *
+ * Tasks belong to jobs (see openJob()). Each job keeps its own queue of task batches, and a
+ * worker that becomes free takes the next task of the job with the least weighted worker time
+ * (its virtual runtime), so concurrent jobs share the workers in proportion to the weights of
+ * their priority classes. A small interactive job submitted while a large batch job is running
+ * starts on the next free worker instead of queueing behind the batch job's tasks.
+ *
+ * An elastic executor (minThreads < maxThreads) adds a worker whenever the oldest queued task
+ * has waited longer than GROW_AFTER_WAIT_MILLIS with every worker busy, and retires the most
+ * fatigued worker that has been idle for the keep-alive, never going below minThreads.
+ */
 public class TiredExecutor {
 
-    private final TiredThread[] workers;
+    private static final CancellationToken NEVER_CANCELLED = new CancellationToken();
+    private static final long CANCEL_POLL_MILLIS = 20;
+    private static final long GROW_AFTER_WAIT_MILLIS = 5;
+    private static final long SCALE_TICK_MILLIS = 5;
+
+    // Live workers, guarded by this; retired workers are dropped and only their totals kept
+    private final List<TiredThread> workers = new ArrayList<>();
+    private int retiredCount = 0;
+    private long retiredTasks = 0;
+    private long retiredUsedNanos = 0;
+    private long retiredIdleNanos = 0;
+    private double retiredFatigue = 0;
+    private final int minThreads;
+    private final int maxThreads;
+    private final long keepAliveNanos;
+    private final Thread scaler; // null for a fixed-size executor
+    private int nextWorkerId = 0;
+    private long grown = 0;
     private final PriorityBlockingQueue<TiredThread> idleMinHeap = new PriorityBlockingQueue<>();
     private final AtomicInteger inFlight = new AtomicInteger(0);
-    
+
+    // Fair-share state, guarded by this
+    private final List<ExecutorJob> jobs = new ArrayList<>();
+    private final ExecutorJob defaultJob;
+    private final long[] closedTasks = new long[JobPriority.values().length];
+    private final long[] closedRunNanos = new long[JobPriority.values().length];
+    private final long[] closedQueueWaitNanos = new long[JobPriority.values().length];
+    private long jobSeq = 0;
+    private double minVruntime = 0;
+
     private boolean accepting = true;
 
+    /**
+     * A group of tasks submitted together by submitAll(); the caller waits for all of them.
+     */
+    static final class Batch {
+        final List<Runnable> tasks;
+        final CancellationToken token;
+        final long submittedAt = System.nanoTime();
+        final AtomicReference<Throwable> failure = new AtomicReference<>(null);
+        final AtomicInteger remaining;
+        int next = 0; // guarded by the executor
+
+        Batch(List<Runnable> tasks, CancellationToken token) {
+            this.tasks = tasks;
+            this.token = token;
+            this.remaining = new AtomicInteger(tasks.size());
+        }
+
+        boolean abandoned() {
+            return failure.get() != null || token.isCancelled();
+        }
+
+        void finish(int n) {
+            if (remaining.addAndGet(-n) == 0) {
+                synchronized (this) {
+                    this.notifyAll();
+                }
+            }
+        }
+    }
 
     public TiredExecutor(int numThreads) {
         // TODO
-        if (numThreads <= 0){
+        this(numThreads, numThreads, 0);
+    }
+
+    /**
+     * Creates an elastic executor that keeps between minThreads and maxThreads workers,
+     * starting with minThreads. An idle worker above the minimum is retired after keepAliveMillis.
+     */
+    public TiredExecutor(int minThreads, int maxThreads, long keepAliveMillis) {
+        if (minThreads <= 0){
             throw new IllegalArgumentException("numThreads must be > 0");
         }
-        this.workers = new TiredThread[numThreads];
+        if (maxThreads < minThreads) {
+            throw new IllegalArgumentException("maxThreads must be >= minThreads");
+        }
+        if (keepAliveMillis < 0) {
+            throw new IllegalArgumentException("keepAliveMillis must be >= 0");
+        }
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.keepAliveNanos = TimeUnit.MILLISECONDS.toNanos(keepAliveMillis);
 
         // Create and start workers, initially all are idle
-        for (int i = 0; i < numThreads; i++) {
-            double fatigueFactor = 0.5 + Math.random(); // [0.5, 1.5)
-            TiredThread w = new TiredThread(i, fatigueFactor);
-            workers[i] = w;
-            w.start();
-            idleMinHeap.add(w);
+        synchronized (this) {
+            for (int i = 0; i < minThreads; i++) {
+                addWorker();
+            }
+        }
+        this.defaultJob = openJob("default", JobPriority.NORMAL);
+        if (maxThreads > minThreads) {
+            scaler = new Thread(this::scaleLoop, "TiredExecutor-scaler");
+            scaler.setDaemon(true);
+            scaler.start();
+        } else {
+            scaler = null;
         }
     }
 
-    public void submit(Runnable task) {
-        // TODO
-        Objects.requireNonNull(task, "task must not be null");
+    // Caller must hold this
+    private TiredThread addWorker() {
+        double fatigueFactor = 0.5 + Math.random(); // [0.5, 1.5)
+        TiredThread w = new TiredThread(nextWorkerId++, fatigueFactor);
+        w.setIdleListener(this::workerIdle);
+        workers.add(w);
+        w.start();
+        idleMinHeap.add(w);
+        return w;
+    }
 
+    private void scaleLoop() {
         while (true) {
-            final TiredThread worker;
-
-            // Reserve an idle worker (or wait)
+            try {
+                Thread.sleep(SCALE_TICK_MILLIS);
+            } catch (InterruptedException e) {
+                return; // shutdown()
+            }
             synchronized (this) {
                 if (!accepting) {
-                    throw new IllegalStateException("Executor is shut down");
+                    return;
                 }
+                rescale(System.nanoTime());
+            }
+        }
+    }
 
-                while (idleMinHeap.isEmpty()) {
-                    try {
-                        this.wait();
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        throw new RuntimeException("Interrupted while waiting for an idle worker", e);
-                    }
-                    if (!accepting) {
-                        throw new IllegalStateException("Executor is shut down");
-                    }
-                }
+    /**
+     * Grows by one worker when queued work has waited too long with no idle worker, otherwise
+     * retires the most fatigued worker whose idle time exceeds the keep-alive.
+     * Caller must hold this.
+     */
+    private void rescale(long now) {
+        if (idleMinHeap.isEmpty() && workers.size() < maxThreads
+                && oldestQueueWaitNanos(now) >= TimeUnit.MILLISECONDS.toNanos(GROW_AFTER_WAIT_MILLIS)) {
+            addWorker();
+            grown++;
+            dispatch();
+            return;
+        }
+        if (workers.size() <= minThreads) {
+            return;
+        }
+        TiredThread victim = null;
+        for (TiredThread w : idleMinHeap) {
+            if (w.getCurrentIdleNanos(now) >= keepAliveNanos
+                    && (victim == null || w.getFatigue() > victim.getFatigue())) {
+                victim = w;
+            }
+        }
+        if (victim != null && idleMinHeap.remove(victim)) {
+            workers.remove(victim);
+            victim.shutdown();
+            retiredCount++;
+            retiredTasks += victim.getTasksCompleted();
+            retiredUsedNanos += victim.getTimeUsed();
+            retiredIdleNanos += victim.getTimeIdle() + victim.getCurrentIdleNanos(now);
+            retiredFatigue += victim.getFatigue();
+        }
+    }
 
-                worker = idleMinHeap.poll();
-                inFlight.incrementAndGet();
+    // Caller must hold this
+    private long oldestQueueWaitNanos(long now) {
+        long oldest = 0;
+        for (ExecutorJob j : jobs) {
+            Batch head = j.batches.peekFirst();
+            if (head != null && j.pending > 0) {
+                oldest = Math.max(oldest, now - head.submittedAt);
             }
+        }
+        return oldest;
+    }
 
-            // Wrap task so executor is notified when it completes
-            Runnable wrapped = () -> {
-                try {
-                    task.run();
-                } catch (Throwable ignored) {
-                    // keep worker alive regardless of task failure
-                } finally {
-                    cleanUp(worker);
-                }
-            };
+    /**
+     * Registers a job that competes for workers with the given priority class.
+     * Close it when the job is done so its totals move to the per-class counters.
+     */
+    public synchronized ExecutorJob openJob(String name, JobPriority priority) {
+        Objects.requireNonNull(name, "name must not be null");
+        Objects.requireNonNull(priority, "priority must not be null");
+        if (!accepting) {
+            throw new IllegalStateException("Executor is shut down");
+        }
+        ExecutorJob job = new ExecutorJob(this, name, priority, jobSeq++);
+        job.vruntime = minVruntime;
+        jobs.add(job);
+        return job;
+    }
 
-            // Hand off to worker; if it fails (rare race), roll back and retry
-            try {
-                worker.newTask(wrapped);
-                return;
-            } catch (IllegalStateException e) {
-                synchronized (this) {
-                    cleanUp(worker);
-                }
-                // retry picking a worker
-            }
+    synchronized void closeJob(ExecutorJob job) {
+        if (job.closed) {
+            return;
+        }
+        if (job == defaultJob) {
+            throw new IllegalStateException("The default job cannot be closed");
+        }
+        if (job.running > 0 || job.pending > 0) {
+            throw new IllegalStateException("Job " + job.getName() + " still has tasks");
         }
-        
+        job.closed = true;
+        jobs.remove(job);
+        int c = job.getPriority().ordinal();
+        closedTasks[c] += job.tasksCompleted;
+        closedRunNanos[c] += job.runNanos;
+        closedQueueWaitNanos[c] += job.queueWaitNanos;
+    }
+
+    /**
+     * Queues a single task on the default job without waiting for it. Failures are dropped;
+     * use submitAll() to observe them.
+     */
+    public void submit(Runnable task) {
+        // TODO
+        Objects.requireNonNull(task, "task must not be null");
+        List<Runnable> one = new ArrayList<>(1);
+        one.add(task);
+        enqueue(defaultJob, new Batch(one, NEVER_CANCELLED));
     }
 
     public void submitAll(Iterable<Runnable> tasks) {
-        // TODO: submit tasks one by one and wait until all finish
+        submitAll(tasks, NEVER_CANCELLED, defaultJob);
+    }
+
+    public void submitAll(Iterable<Runnable> tasks, CancellationToken token) {
+        submitAll(tasks, token, defaultJob);
+    }
+
+    /**
+     * Queues tasks on the job and waits until all of them finish.
+     * After the first task failure or once the token is cancelled, tasks that have not started
+     * are skipped, so the workers are free again as soon as the tasks already running return.
+     * The first failure (or the cancellation) is then rethrown to the caller.
+     */
+    public void submitAll(Iterable<Runnable> tasks, CancellationToken token, ExecutorJob job) {
         Objects.requireNonNull(tasks, "tasks must not be null");
+        Objects.requireNonNull(token, "token must not be null");
+        Objects.requireNonNull(job, "job must not be null");
 
         List<Runnable> list = new ArrayList<>();
         for (Runnable t : tasks) {
@@ -100,91 +274,299 @@ public class TiredExecutor {
             return;
         }
 
-        final Object batchLock = new Object();
-        final AtomicInteger remaining = new AtomicInteger(list.size());
+        Batch batch = new Batch(list, token);
+        enqueue(job, batch);
 
-        for (Runnable t : list) {
-            submit(() -> {
+        while (batch.remaining.get() > 0) {
+            synchronized (batch) {
                 try {
-                    t.run();
-                } finally {
-                    if (remaining.decrementAndGet() == 0) {
-                        synchronized (batchLock) {
-                            batchLock.notifyAll();
-                        }
+                    if (batch.remaining.get() > 0) {
+                        batch.wait(CANCEL_POLL_MILLIS);
                     }
-                }
-            });
-        }
-
-        synchronized (batchLock) {
-            while (remaining.get() > 0) {
-                try {
-                    batchLock.wait();
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     throw new RuntimeException("Interrupted while waiting for submitAll()", e);
                 }
             }
+            if (batch.remaining.get() > 0 && batch.abandoned()) {
+                // cancelled while all workers are busy elsewhere: drop our queued tasks now
+                synchronized (this) {
+                    skipAbandoned(job);
+                }
+            }
+        }
+
+        Throwable e = batch.failure.get();
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        if (e != null) {
+            throw new RuntimeException(e);
+        }
+        token.throwIfCancelled();
+    }
+
+    private synchronized void enqueue(ExecutorJob job, Batch batch) {
+        if (!accepting) {
+            throw new IllegalStateException("Executor is shut down");
+        }
+        if (job.closed) {
+            throw new IllegalStateException("Job " + job.getName() + " is closed");
+        }
+        if (job.pending == 0 && job.running == 0) {
+            // a job waking up starts at the current fair-share clock instead of cashing in idle time
+            job.vruntime = Math.max(job.vruntime, minVruntime);
         }
+        job.batches.addLast(batch);
+        job.pending += batch.tasks.size();
+        dispatch();
+    }
+
+    /**
+     * Hands queued tasks to idle workers, least fatigued worker first, fairest job first.
+     * Caller must hold this.
+     */
+    private void dispatch() {
+        while (!idleMinHeap.isEmpty()) {
+            ExecutorJob job = null;
+            for (ExecutorJob j : jobs) {
+                skipAbandoned(j);
+                if (j.pending == 0) {
+                    continue;
+                }
+                if (job == null || j.shareKey() < job.shareKey()
+                        || (j.shareKey() == job.shareKey() && j.getSeq() < job.getSeq())) {
+                    job = j;
+                }
+            }
+            if (job == null) {
+                return;
+            }
+            minVruntime = Math.max(minVruntime, job.vruntime);
+
+            Batch batch = job.batches.peekFirst();
+            Runnable task = batch.tasks.get(batch.next++);
+            if (batch.next == batch.tasks.size()) {
+                job.batches.pollFirst();
+            }
+            job.pending--;
+            job.running++;
+            inFlight.incrementAndGet();
+
+            TiredThread worker = idleMinHeap.poll();
+            try {
+                worker.newTask(wrap(task, batch, job));
+            } catch (IllegalStateException e) {
+                // an idle worker must accept work; surface the broken invariant to the caller
+                job.running--;
+                inFlight.decrementAndGet();
+                batch.failure.compareAndSet(null, e);
+                batch.finish(1);
+            }
+        }
+    }
+
+    /**
+     * Drops the unstarted tasks of abandoned batches at the head of the job's queue.
+     * Caller must hold this.
+     */
+    private void skipAbandoned(ExecutorJob job) {
+        Batch head;
+        while ((head = job.batches.peekFirst()) != null && head.abandoned()) {
+            int skipped = head.tasks.size() - head.next;
+            head.next = head.tasks.size();
+            job.batches.pollFirst();
+            job.pending -= skipped;
+            head.finish(skipped);
+            this.notifyAll();
+        }
+    }
+
+    private Runnable wrap(Runnable task, Batch batch, ExecutorJob job) {
+        return () -> {
+            long start = System.nanoTime();
+            try {
+                if (!batch.abandoned()) {
+                    task.run();
+                }
+            } catch (Throwable e) {
+                batch.failure.compareAndSet(null, e);
+            } finally {
+                long end = System.nanoTime();
+                EngineMetrics.global().recordTask(start - batch.submittedAt, end - start);
+                taskDone(job, start - batch.submittedAt, end - start);
+                batch.finish(1);
+            }
+        };
+    }
+
+    private synchronized void taskDone(ExecutorJob job, long queueWaitNanos, long runNanos) {
+        inFlight.decrementAndGet();
+        job.running--;
+        job.tasksCompleted++;
+        job.runNanos += runNanos;
+        job.queueWaitNanos += queueWaitNanos;
+        job.vruntime += (double) runNanos / job.getPriority().getWeight();
+        this.notifyAll(); // shutdown() waits for the queues to drain
+    }
+
+    // Called by the worker itself once it is ready for another task
+    private synchronized void workerIdle(TiredThread worker) {
+        idleMinHeap.offer(worker);
+        dispatch();
     }
 
     public void shutdown() throws InterruptedException {
         // TODO
         synchronized (this) {
             accepting = false;
-            this.notifyAll(); // wake any threads blocked in submit()
 
-            while (inFlight.get() > 0) {
-                this.wait(); // onTaskDone() will notifyAll()
+            // queued tasks still run; no new ones are accepted
+            while (inFlight.get() > 0 || hasPendingTasks()) {
+                this.wait();
             }
         }
 
-        for (TiredThread w : workers) {
+        if (scaler != null) {
+            scaler.interrupt();
+            scaler.join();
+        }
+        List<TiredThread> all;
+        synchronized (this) {
+            all = new ArrayList<>(workers);
+        }
+        for (TiredThread w : all) {
             w.shutdown();
         }
-        for (TiredThread w : workers) {
+        for (TiredThread w : all) {
             w.join();
         }
     }
 
+    private boolean hasPendingTasks() {
+        for (ExecutorJob j : jobs) {
+            if (j.pending > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Number of live workers; fixed unless the executor is elastic.
+     */
+    public synchronized int getWorkerCount() {
+        return workers.size();
+    }
+
+    public int getMinWorkers() {
+        return minThreads;
+    }
+
+    public int getMaxWorkers() {
+        return maxThreads;
+    }
+
+    public synchronized int getRetiredWorkerCount() {
+        return retiredCount;
+    }
+
+    public ExecutorJob getDefaultJob() {
+        return defaultJob;
+    }
+
     public synchronized String getWorkerReport() {
         // TODO: return readable statistics for each worker
         StringBuilder sb = new StringBuilder();
         sb.append("TiredExecutor worker report\n");
         sb.append("inFlight=").append(inFlight.get())
           .append(", accepting=").append(accepting)
+          .append(", workers=").append(workers.size())
+          .append(" (min=").append(minThreads).append(", max=").append(maxThreads)
+          .append(", grown=").append(grown).append(", retired=").append(retiredCount).append(")")
           .append("\n");
 
+        double million = 1_000_000.0;
+        long now = System.nanoTime();
+        long totalTasks = retiredTasks;
+        long totalUsed = retiredUsedNanos;
+        long totalIdle = retiredIdleNanos;
+        double totalFatigue = retiredFatigue;
         for (TiredThread w : workers) {
-            double million = 1_000_000.0;
-            double usedMs = w.getTimeUsed() / million ;
-            double idleMs = w.getTimeIdle() / million;
-            double fatigueMs = w.getFatigue() / million;
+            // include the idle interval in progress, as for retired workers
+            long idle = w.getTimeIdle() + w.getCurrentIdleNanos(now);
+            totalTasks += w.getTasksCompleted();
+            totalUsed += w.getTimeUsed();
+            totalIdle += idle;
+            totalFatigue += w.getFatigue();
 
             sb.append(String.format(
                     Locale.US,
-                    "Worker %d (%s): busy=%s, used=%.3fms, idle=%.3fms, fatigue=%.3fms%n",
+                    "Worker %d (%s): busy=%s, tasks=%d, used=%.3fms, idle=%.3fms, fatigue=%.3fms%n",
                     w.getWorkerId(),
                     w.getName(),
                     w.isBusy(),
-                    usedMs,
-                    idleMs,
-                    fatigueMs
+                    w.getTasksCompleted(),
+                    w.getTimeUsed() / million,
+                    idle / million,
+                    w.getFatigue() / million
             ));
         }
-        return sb.toString();
-    }
+        if (retiredCount > 0) {
+            sb.append(String.format(Locale.US, "Retired workers (%d): tasks=%d, used=%.3fms, idle=%.3fms, fatigue=%.3fms%n",
+                    retiredCount, retiredTasks, retiredUsedNanos / million, retiredIdleNanos / million,
+                    retiredFatigue / million));
+        }
+        sb.append(String.format(Locale.US, "All workers: tasks=%d, used=%.3fms, idle=%.3fms, fatigue=%.3fms%n",
+                totalTasks, totalUsed / million, totalIdle / million, totalFatigue / million));
 
-    
+        sb.append("Open jobs:\n");
+        for (ExecutorJob j : jobs) {
+            sb.append(String.format(
+                    Locale.US,
+                    "Job %s (%s, weight=%d): running=%d, pending=%d, tasks=%d, used=%.3fms, meanWait=%.3fms, vruntime=%.3fms%n",
+                    j.getName(),
+                    j.getPriority(),
+                    j.getPriority().getWeight(),
+                    j.running,
+                    j.pending,
+                    j.tasksCompleted,
+                    j.runNanos / million,
+                    j.tasksCompleted == 0 ? 0.0 : j.queueWaitNanos / million / j.tasksCompleted,
+                    j.vruntime / million
+            ));
+        }
 
-    private void cleanUp(TiredThread worker) {
-        synchronized (this) {
-            inFlight.decrementAndGet();
-            if (accepting) {
-                idleMinHeap.offer(worker);
-            }
-            this.notifyAll();
+        // per-class totals over closed and open jobs
+        long[] tasks = closedTasks.clone();
+        long[] run = closedRunNanos.clone();
+        long[] wait = closedQueueWaitNanos.clone();
+        for (ExecutorJob j : jobs) {
+            int c = j.getPriority().ordinal();
+            tasks[c] += j.tasksCompleted;
+            run[c] += j.runNanos;
+            wait[c] += j.queueWaitNanos;
         }
+        long totalRun = 0;
+        for (long r : run) {
+            totalRun += r;
+        }
+        sb.append("Priority classes:\n");
+        for (JobPriority p : JobPriority.values()) {
+            int c = p.ordinal();
+            sb.append(String.format(
+                    Locale.US,
+                    "%s: tasks=%d, used=%.3fms (%.1f%%), meanWait=%.3fms%n",
+                    p,
+                    tasks[c],
+                    run[c] / million,
+                    totalRun == 0 ? 0.0 : 100.0 * run[c] / totalRun,
+                    tasks[c] == 0 ? 0.0 : wait[c] / million / tasks[c]
+            ));
+        }
+        return sb.toString();
     }
 }
@@ -4,6 +4,7 @@ import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class TiredThread extends Thread implements Comparable<TiredThread> {
 
@@ -20,9 +21,12 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
     private final AtomicBoolean busy = new AtomicBoolean(false); // Indicates if the worker is currently executing a task
 
     private final AtomicLong timeUsed = new AtomicLong(0); // Total time spent executing tasks
+    private final AtomicLong tasksCompleted = new AtomicLong(0); // Tasks run, including failed ones
     private final AtomicLong timeIdle = new AtomicLong(0); // Total time spent idle
     private final AtomicLong idleStartTime = new AtomicLong(0); // Timestamp when the worker became idle
 
+    private volatile Consumer<TiredThread> idleListener = null; // Told when the worker can take a new task
+
     public TiredThread(int id, double fatigueFactor) {
         this.id = id;
         this.fatigueFactor = fatigueFactor;
@@ -50,6 +54,26 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
         return timeIdle.get();
     }
 
+    public long getTasksCompleted() {
+        return tasksCompleted.get();
+    }
+
+    /**
+     * How long the worker has been waiting for its next task, or 0 while it is busy.
+     */
+    long getCurrentIdleNanos(long now) {
+        long idleStart = idleStartTime.get();
+        return idleStart == 0L || idleStart > now ? 0L : now - idleStart;
+    }
+
+    /**
+     * Registers the callback run on this thread each time it finishes a task and is ready
+     * for the next one (after its fatigue has been updated).
+     */
+    void setIdleListener(Consumer<TiredThread> listener) {
+        this.idleListener = listener;
+    }
+
     /**
      * Assign a task to this worker.
      * This method is non-blocking: if the worker is not ready to accept a task,
@@ -140,11 +164,17 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
             } finally {
                 long end = System.nanoTime();
                 timeUsed.addAndGet(end - start);
+                tasksCompleted.incrementAndGet();
 
                 // Become idle again.
                 busy.set(false);
                 idleStartTime.set(end);
             }
+
+            Consumer<TiredThread> listener = idleListener;
+            if (listener != null) {
+                listener.accept(this);
+            }
         }
     }
 
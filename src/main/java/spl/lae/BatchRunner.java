@@ -0,0 +1,274 @@
+package spl.lae;
+
+import parser.ComputationNode;
+import parser.Compression;
+import parser.InputParser;
+import parser.OutputWriter;
+import parser.RowStreamWriter;
+import scheduling.CancellationToken;
+import scheduling.ExecutorJob;
+import scheduling.JobPriority;
+import scheduling.TiredExecutor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates many input files in one JVM: one shared TiredExecutor for the row tasks,
+ * a bounded number of files in flight, and one shared parser.
+ */
+public class BatchRunner {
+
+    private static final String OUTPUT_SUFFIX = ".out.json";
+
+    private final TiredExecutor executor;
+    private final int maxConcurrentJobs;
+    private final File outputDir; // null: write next to each input
+    private final ResultCache cache; // null: no cross-job caching
+    private final InputParser parser;
+    private volatile long timeoutMillis = 0; // per file, 0: no deadline
+    private volatile JobPriority priority = JobPriority.BATCH;
+    private volatile CheckpointStore checkpoints = null; // null: no checkpointing
+    private volatile boolean streamOutput = false;
+    private volatile boolean lazyLeaves = false;
+    private volatile FreivaldsVerifier verifier = null; // null: products are not checked
+
+    public static final class JobResult {
+        public final File input;
+        public final File output;
+        public final boolean ok;
+        public final String error;
+        public final long parseNanos;
+        public final long computeNanos;
+        public final long writeNanos;
+
+        JobResult(File input, File output, boolean ok, String error, long parseNanos, long computeNanos, long writeNanos) {
+            this.input = input;
+            this.output = output;
+            this.ok = ok;
+            this.error = error;
+            this.parseNanos = parseNanos;
+            this.computeNanos = computeNanos;
+            this.writeNanos = writeNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s -> %s: %s parse=%.2fms compute=%.2fms write=%.2fms",
+                    input.getPath(), output.getPath(), ok ? "OK" : "ERROR (" + error + ")",
+                    parseNanos / 1e6, computeNanos / 1e6, writeNanos / 1e6);
+        }
+    }
+
+    public BatchRunner(TiredExecutor executor, int maxConcurrentJobs, File outputDir, ResultCache cache) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        if (maxConcurrentJobs <= 0) {
+            throw new IllegalArgumentException("maxConcurrentJobs must be > 0");
+        }
+        this.executor = executor;
+        this.parser = new InputParser(executor);
+        this.maxConcurrentJobs = maxConcurrentJobs;
+        this.outputDir = outputDir;
+        this.cache = cache;
+    }
+
+    /**
+     * Sets the deadline of each file's evaluation, counted from the start of its parse;
+     * a file that misses it gets a timeout error as its output. 0 disables the deadline.
+     */
+    public void setTimeoutMillis(long timeoutMillis) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("timeoutMillis must be >= 0");
+        }
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Checkpoints intermediate results of every job so a rerun after a crash resumes from them.
+     */
+    public void setCheckpointStore(CheckpointStore store) {
+        this.checkpoints = store;
+    }
+
+    /**
+     * Writes each result row by row while the root node is still computing, instead of
+     * building the whole result in memory first.
+     */
+    public void setStreamOutput(boolean streamOutput) {
+        this.streamOutput = streamOutput;
+    }
+
+    /**
+     * Decodes each leaf matrix of uncompressed inputs only when it is first needed and drops it
+     * once consumed, see InputParser.parseLazy().
+     */
+    public void setLazyLeaves(boolean lazyLeaves) {
+        this.lazyLeaves = lazyLeaves;
+    }
+
+    /**
+     * Checks every product of every job with the verifier, which collects the mismatches.
+     */
+    public void setVerifier(FreivaldsVerifier verifier) {
+        this.verifier = verifier;
+    }
+
+    /**
+     * Sets the executor priority class of the files' row tasks (BATCH by default), which matters
+     * when the executor is shared with other work.
+     */
+    public void setPriority(JobPriority priority) {
+        if (priority == null) {
+            throw new IllegalArgumentException("priority must not be null");
+        }
+        this.priority = priority;
+    }
+
+    /**
+     * Runs all inputs and returns one result per input, in input order.
+     */
+    public List<JobResult> runAll(List<File> inputs) throws InterruptedException {
+        if (inputs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        ExecutorService jobs = Executors.newFixedThreadPool(Math.min(maxConcurrentJobs, inputs.size()));
+        try {
+            List<Future<JobResult>> futures = new ArrayList<>();
+            for (File input : inputs) {
+                futures.add(jobs.submit(() -> runOne(input, outputFor(input))));
+            }
+            List<JobResult> results = new ArrayList<>();
+            for (Future<JobResult> f : futures) {
+                try {
+                    results.add(f.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Batch job crashed", e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            jobs.shutdown();
+        }
+    }
+
+    /**
+     * Parses, evaluates and writes a single file. Failures are written as the error JSON.
+     */
+    public JobResult runOne(File input, File output) {
+        long t0 = System.nanoTime();
+        long t1 = t0;
+        long t2 = t0;
+        CancellationToken token = CancellationToken.withTimeout(timeoutMillis);
+        RowStreamWriter stream = streamOutput ? new RowStreamWriter(output.getPath()) : null;
+        try {
+            ComputationNode root;
+            // number conversion gets the file's priority class and stops at its deadline
+            try (ExecutorJob parseJob = executor.openJob(input.getName(), priority)) {
+                root = lazyLeaves ? parser.parseLazy(input.getPath()) : parser.parse(input.getPath(), token, parseJob);
+            }
+            t1 = System.nanoTime();
+            LinearAlgebraEngine engine = new LinearAlgebraEngine(executor);
+            engine.setResultCache(cache);
+            engine.setCheckpointStore(checkpoints);
+            engine.setPriority(priority);
+            engine.setJobName(input.getName());
+            engine.setResultStream(stream);
+            engine.setVerifier(verifier);
+            double[][] result = engine.run(root, token).getMatrix();
+            t2 = System.nanoTime();
+            if (stream != null) {
+                stream.finish(); // most rows are already written; this waits for the rest
+            } else {
+                OutputWriter.write(result, output.getPath());
+            }
+            return new JobResult(input, output, true, null, t1 - t0, t2 - t1, System.nanoTime() - t2);
+        } catch (Exception e) {
+            long now = System.nanoTime();
+            if (t1 == t0) t1 = now;
+            if (t2 == t0) t2 = now;
+            String message = e.getMessage() == null ? e.toString() : e.getMessage();
+            try {
+                if (stream != null) {
+                    stream.close(); // drop the partial result before writing the error over it
+                }
+                OutputWriter.write(message, output.getPath());
+            } catch (IOException io) {
+                message = message + "; also failed to write error output: " + io.getMessage();
+            }
+            return new JobResult(input, output, false, message, t1 - t0, t2 - t1, System.nanoTime() - t2);
+        }
+    }
+
+    /**
+     * x.json -> x.out.json; a compressed input keeps its codec, e.g. x.json.gz -> x.out.json.gz.
+     */
+    File outputFor(File input) {
+        String name = input.getName();
+        Compression compression = Compression.forName(name);
+        name = compression.stripSuffix(name);
+        String base = name.endsWith(".json") ? name.substring(0, name.length() - ".json".length()) : name;
+        File dir = outputDir != null ? outputDir : input.getAbsoluteFile().getParentFile();
+        return new File(dir, base + OUTPUT_SUFFIX + compression.getSuffix());
+    }
+
+    /**
+     * Expands files, directories (their *.json, *.json.gz and *.json.zst files) and glob patterns
+     * such as data/*.json. Previously written outputs (*.out.json[.gz|.zst]) are skipped when
+     * expanding directories and globs.
+     */
+    public static List<File> expandInputs(List<String> specs) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (String spec : specs) {
+            File f = new File(spec);
+            if (f.isDirectory()) {
+                files.addAll(listMatching(f.toPath(), "*.{json,json.gz,json.zst}"));
+            } else if (isGlob(spec)) {
+                Path parent = f.getParentFile() == null ? Path.of(".") : f.getParentFile().toPath();
+                if (isGlob(parent.toString())) {
+                    throw new IllegalArgumentException("Globs are only supported in the file name: " + spec);
+                }
+                files.addAll(listMatching(parent, f.getName()));
+            } else if (f.isFile()) {
+                files.add(f);
+            } else {
+                throw new IllegalArgumentException("Input not found: " + spec);
+            }
+        }
+        return files;
+    }
+
+    private static boolean isGlob(String s) {
+        return s.indexOf('*') >= 0 || s.indexOf('?') >= 0 || s.indexOf('[') >= 0 || s.indexOf('{') >= 0;
+    }
+
+    private static List<File> listMatching(Path dir, String glob) throws IOException {
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        List<File> out = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path p : stream) {
+                String name = p.getFileName().toString();
+                if (Files.isRegularFile(p) && matcher.matches(p.getFileName())
+                        && !Compression.forName(name).stripSuffix(name).endsWith(OUTPUT_SUFFIX)) {
+                    out.add(p.toFile());
+                }
+            }
+        }
+        Collections.sort(out);
+        return out;
+    }
+}
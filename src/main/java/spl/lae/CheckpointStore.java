@@ -0,0 +1,339 @@
+package spl.lae;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Directory of evaluated subtree results that survives the JVM, so a crashed run can resume.
+ * Each result is one file named after its SubtreeKey, written by a background thread while the
+ * engine keeps computing; a bounded amount of queued data applies back-pressure.
+ *
+ * File format (little-endian): magic "LAEC", version, rows, cols, CRC32 of the values, then
+ * rows * cols doubles row by row. Files are written under a temporary name and renamed, so a
+ * crash never leaves a partial checkpoint behind; files that fail the checksum are ignored
+ * and deleted.
+ */
+public class CheckpointStore implements AutoCloseable {
+
+    private static final int MAGIC = 0x4341454C; // "LAEC" little-endian
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    private static final int IO_CHUNK = 1 << 20;
+    private static final String SUFFIX = ".ckpt";
+
+    private final Path dir;
+    private final long maxPendingBytes;
+    private final ExecutorService writer;
+    private final Map<SubtreeKey, double[][]> pending = new ConcurrentHashMap<>(); // queued, not yet on disk
+    private long pendingBytes = 0; // guarded by this
+    private IOException writeFailure = null; // guarded by this; first failed write
+
+    private final AtomicLong written = new AtomicLong(0);
+    private final AtomicLong writtenBytes = new AtomicLong(0);
+    private final AtomicLong writeNanos = new AtomicLong(0);
+    private final AtomicLong loaded = new AtomicLong(0);
+    private final AtomicLong blockedNanos = new AtomicLong(0);
+
+    public CheckpointStore(Path dir) {
+        this(dir, 256L * 1024 * 1024);
+    }
+
+    /**
+     * @param maxPendingBytes results queued for writing beyond this make put() wait
+     */
+    public CheckpointStore(Path dir, long maxPendingBytes) {
+        if (dir == null) {
+            throw new IllegalArgumentException("dir must not be null");
+        }
+        if (maxPendingBytes <= 0) {
+            throw new IllegalArgumentException("maxPendingBytes must be > 0");
+        }
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create checkpoint directory " + dir, e);
+        }
+        this.dir = dir;
+        this.maxPendingBytes = maxPendingBytes;
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "checkpoint-writer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public Path getDirectory() {
+        return dir;
+    }
+
+    public boolean contains(SubtreeKey key) {
+        return pending.containsKey(key) || Files.isRegularFile(file(key));
+    }
+
+    /**
+     * Queues a copy of the result for writing and returns without waiting for the disk,
+     * unless more than maxPendingBytes are already queued.
+     */
+    public void put(SubtreeKey key, double[][] matrix) {
+        if (key == null || matrix == null) {
+            throw new IllegalArgumentException("key and matrix must not be null");
+        }
+        if (pending.containsKey(key) || Files.isRegularFile(file(key))) {
+            return; // results are immutable per key
+        }
+        double[][] copy = new double[matrix.length][];
+        for (int i = 0; i < matrix.length; i++) {
+            copy[i] = matrix[i].clone();
+        }
+        long bytes = bytes(copy);
+        synchronized (this) {
+            long start = System.nanoTime();
+            while (pendingBytes > 0 && pendingBytes + bytes > maxPendingBytes) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return; // the checkpoint is optional
+                }
+            }
+            blockedNanos.addAndGet(System.nanoTime() - start);
+            pendingBytes += bytes;
+        }
+        pending.put(key, copy);
+        writer.execute(() -> {
+            try {
+                long t0 = System.nanoTime();
+                write(key, copy);
+                writeNanos.addAndGet(System.nanoTime() - t0);
+                written.incrementAndGet();
+                writtenBytes.addAndGet(bytes);
+            } catch (IOException e) {
+                synchronized (this) {
+                    if (writeFailure == null) {
+                        writeFailure = e;
+                    }
+                }
+            } finally {
+                pending.remove(key);
+                synchronized (this) {
+                    pendingBytes -= bytes;
+                    notifyAll();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the checkpointed result, or null if there is none (or it is corrupt).
+     */
+    public double[][] get(SubtreeKey key) {
+        double[][] queued = pending.get(key);
+        if (queued != null) {
+            double[][] copy = new double[queued.length][];
+            for (int i = 0; i < queued.length; i++) {
+                copy[i] = queued[i].clone();
+            }
+            return copy;
+        }
+        Path f = file(key);
+        if (!Files.isRegularFile(f)) {
+            return null;
+        }
+        try {
+            double[][] m = read(f);
+            if (m == null) {
+                Files.deleteIfExists(f);
+                return null;
+            }
+            loaded.incrementAndGet();
+            return m;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void write(SubtreeKey key, double[][] m) throws IOException {
+        int rows = m.length;
+        int cols = rows == 0 ? 0 : m[0].length;
+        CRC32 crc = new CRC32();
+        ByteBuffer buf = ByteBuffer.allocateDirect(IO_CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+        Path tmp = dir.resolve(key + SUFFIX + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ch.position(HEADER_BYTES);
+            for (double[] row : m) {
+                int off = 0;
+                while (off < row.length) {
+                    int n = Math.min(row.length - off, buf.remaining() / Double.BYTES);
+                    if (n == 0) {
+                        drain(ch, buf, crc);
+                        continue;
+                    }
+                    buf.asDoubleBuffer().put(row, off, n);
+                    buf.position(buf.position() + n * Double.BYTES);
+                    off += n;
+                }
+            }
+            drain(ch, buf, crc);
+            buf.clear();
+            buf.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(cols).putLong(crc.getValue());
+            buf.flip();
+            ch.write(buf, 0);
+            ch.force(false);
+        }
+        Files.move(tmp, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void drain(FileChannel ch, ByteBuffer buf, CRC32 crc) throws IOException {
+        buf.flip();
+        crc.update(buf.duplicate());
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+        buf.clear();
+    }
+
+    private static double[][] read(Path f) throws IOException {
+        try (FileChannel ch = FileChannel.open(f, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && ch.read(header) >= 0) {
+                // fill the header
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return null;
+            }
+            int rows = header.getInt();
+            int cols = header.getInt();
+            long expectedCrc = header.getLong();
+            if (rows < 0 || cols < 0 || ch.size() != HEADER_BYTES + (long) rows * cols * Double.BYTES) {
+                return null;
+            }
+            double[][] m = new double[rows][cols];
+            CRC32 crc = new CRC32();
+            ByteBuffer buf = ByteBuffer.allocateDirect(IO_CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+            int row = 0;
+            int col = 0;
+            while (row < rows && cols > 0) {
+                int start = buf.position();
+                if (ch.read(buf) < 0) {
+                    return null;
+                }
+                ByteBuffer fresh = buf.duplicate();
+                fresh.position(start).limit(buf.position());
+                crc.update(fresh);
+                buf.flip();
+                DoubleBuffer values = buf.asDoubleBuffer();
+                while (values.hasRemaining() && row < rows) {
+                    int n = Math.min(values.remaining(), cols - col);
+                    values.get(m[row], col, n);
+                    col += n;
+                    if (col == cols) {
+                        col = 0;
+                        row++;
+                    }
+                }
+                // a read may end in the middle of a double; keep those bytes for the next round
+                buf.position(values.position() * Double.BYTES);
+                buf.compact();
+            }
+            return crc.getValue() == expectedCrc ? m : null;
+        }
+    }
+
+    /**
+     * Waits until every queued result is on disk.
+     *
+     * @throws UncheckedIOException if a write failed
+     */
+    public void flush() {
+        synchronized (this) {
+            while (pendingBytes > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (writeFailure != null) {
+                throw new UncheckedIOException("Checkpoint write failed", writeFailure);
+            }
+        }
+    }
+
+    /**
+     * Deletes every checkpoint in the directory, e.g. once a job has finished for good.
+     */
+    public void clear() {
+        flush();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path f : files) {
+                Files.deleteIfExists(f);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot clear " + dir, e);
+        }
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getLoaded() {
+        return loaded.get();
+    }
+
+    public String getStats() {
+        return String.format(Locale.US,
+                "CheckpointStore: %s, written=%d (%.1f MB, %.1f ms), loaded=%d, put blocked %.1f ms",
+                dir, written.get(), writtenBytes.get() / (1024.0 * 1024.0), writeNanos.get() / 1e6,
+                loaded.get(), blockedNanos.get() / 1e6);
+    }
+
+    private Path file(SubtreeKey key) {
+        return dir.resolve(key + SUFFIX);
+    }
+
+    private static long bytes(double[][] m) {
+        long cells = 0;
+        for (double[] row : m) {
+            cells += row.length;
+        }
+        return cells * Double.BYTES;
+    }
+
+    /**
+     * Writes what is queued and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            writer.shutdown();
+            try {
+                writer.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package spl.lae;
+
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Result of {@link ExecutionPlanner#plan}: the inferred shape of every node and the estimated
+ * cost of evaluating it with LinearAlgebraEngine.
+ */
+public class ExecutionPlan {
+
+    /**
+     * Shape and cost estimate of one node. Leaves have zero cost.
+     *   flops:     floating point operations of the node itself
+     *   bytes:     bytes copied or streamed by the node (operand loads, compute, readback)
+     *   peakBytes: engine-owned memory live at the worst point of evaluating the subtree,
+     *              not counting the input leaves
+     */
+    public static final class Step {
+        public final ComputationNode node;
+        public final ComputationNodeType type;
+        public final int depth;
+        public final int rows;
+        public final int cols;
+        public final long flops;
+        public final long bytes;
+        public final long peakBytes;
+
+        Step(ComputationNode node, ComputationNodeType type, int depth, int rows, int cols, long flops, long bytes, long peakBytes) {
+            this.node = node;
+            this.type = type;
+            this.depth = depth;
+            this.rows = rows;
+            this.cols = cols;
+            this.flops = flops;
+            this.bytes = bytes;
+            this.peakBytes = peakBytes;
+        }
+
+        public long resultBytes() {
+            return (long) rows * cols * Double.BYTES;
+        }
+    }
+
+    private final List<Step> steps; // pre-order, root first
+    private final Map<ComputationNode, Step> byNode = new IdentityHashMap<>();
+    private final long inputBytes;
+
+    ExecutionPlan(List<Step> steps, long inputBytes) {
+        this.steps = Collections.unmodifiableList(steps);
+        this.inputBytes = inputBytes;
+        for (Step s : steps) {
+            byNode.putIfAbsent(s.node, s);
+        }
+    }
+
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    public Step get(ComputationNode node) {
+        return byNode.get(node);
+    }
+
+    public Step getRoot() {
+        return steps.get(0);
+    }
+
+    public int getOperationCount() {
+        int n = 0;
+        for (Step s : steps) {
+            if (s.type != ComputationNodeType.MATRIX) n++;
+        }
+        return n;
+    }
+
+    public long getTotalFlops() {
+        long total = 0;
+        for (Step s : steps) total += s.flops;
+        return total;
+    }
+
+    public long getTotalBytes() {
+        long total = 0;
+        for (Step s : steps) total += s.bytes;
+        return total;
+    }
+
+    public long getInputBytes() {
+        return inputBytes;
+    }
+
+    /**
+     * Estimated peak heap use of the whole evaluation, input leaves included.
+     */
+    public long getPeakBytes() {
+        return inputBytes + getRoot().peakBytes;
+    }
+
+    /**
+     * Indented plan tree, one node per line, with totals on the first line.
+     */
+    public String format() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US,
+                "Execution plan: %d operations, %s, %s moved, peak %s (inputs %s)%n",
+                getOperationCount(), flops(getTotalFlops()), bytes(getTotalBytes()), bytes(getPeakBytes()), bytes(inputBytes)));
+        for (Step s : steps) {
+            sb.append("  ".repeat(s.depth + 1)).append(s.type);
+            if (s.type == ComputationNodeType.POWER) {
+                sb.append(" ^").append(s.node.getExponent());
+            }
+            sb.append(' ').append(s.rows).append('x').append(s.cols);
+            if (s.type != ComputationNodeType.MATRIX) {
+                sb.append(String.format(Locale.US, "  %s, %s moved, peak %s", flops(s.flops), bytes(s.bytes), bytes(s.peakBytes)));
+            }
+            sb.append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return format();
+    }
+
+    static String bytes(long b) {
+        if (b < 1024) return b + " B";
+        if (b < 1024L * 1024) return String.format(Locale.US, "%.1f KB", b / 1024.0);
+        if (b < 1024L * 1024 * 1024) return String.format(Locale.US, "%.1f MB", b / (1024.0 * 1024));
+        return String.format(Locale.US, "%.2f GB", b / (1024.0 * 1024 * 1024));
+    }
+
+    private static String flops(long f) {
+        if (f < 1_000_000) return f + " flop";
+        if (f < 1_000_000_000L) return String.format(Locale.US, "%.1f Mflop", f / 1e6);
+        return String.format(Locale.US, "%.2f Gflop", f / 1e9);
+    }
+}
@@ -0,0 +1,367 @@
+package spl.lae;
+
+import memory.MatrixStructure;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Static pre-pass over an expression tree: infers the shape of every node, rejects invalid
+ * trees before any work is done, and estimates what each node costs in LinearAlgebraEngine.
+ *
+ * Cost model (r x c result, k the shared dimension of a MULTIPLY):
+ *   ADD, NEGATE: r*c flops; MULTIPLY: 2*r*k*c flops; TRANSPOSE: none.
+ *   POWER: one n x n MULTIPLY per step of exponentiation by squaring, see powerMultiplies().
+ *   Bytes: operands are copied into the working matrices, the kernel streams its operands
+ *   (B once per row of A for MULTIPLY) and writes the result, which is copied out again.
+ *   Peak: children are evaluated left to right; while a node runs, its children's results,
+ *   their working copies and its own result are live.
+ */
+public class ExecutionPlanner {
+
+    private ExecutionPlanner() {
+    }
+
+    /**
+     * Plans the tree as run() will evaluate it. n-ary ADD and MULTIPLY nodes are planned as
+     * the left-nested chain that associativeNesting() produces.
+     *
+     * @throws IllegalArgumentException naming the first node whose operands do not fit
+     */
+    public static ExecutionPlan plan(ComputationNode root) {
+        if (root == null) {
+            throw new IllegalArgumentException("root must not be null");
+        }
+        List<ExecutionPlan.Step> steps = new ArrayList<>();
+        Set<ComputationNode> leaves = Collections.newSetFromMap(new IdentityHashMap<>());
+        long[] inputBytes = new long[1];
+        visit(root, "root", 0, steps, leaves, inputBytes);
+        return new ExecutionPlan(steps, inputBytes[0]);
+    }
+
+    private static ExecutionPlan.Step visit(ComputationNode node, String path, int depth,
+                                            List<ExecutionPlan.Step> steps,
+                                            Set<ComputationNode> leaves, long[] inputBytes) {
+        ComputationNodeType type = node.getNodeType();
+        if (type == ComputationNodeType.MATRIX) {
+            // a lazy leaf's shape was checked by the input scan, without decoding it
+            int rows = node.getRows();
+            int cols = node.getCols();
+            if (node.getLazySource() == null) {
+                double[][] m = node.getMatrix();
+                for (int i = 0; i < rows; i++) {
+                    if (m[i] == null || m[i].length != cols) {
+                        throw new IllegalArgumentException("Matrix at " + path + " is not rectangular (row " + i + ")");
+                    }
+                }
+            }
+            if (leaves.add(node)) {
+                inputBytes[0] += (long) rows * cols * Double.BYTES;
+            }
+            ExecutionPlan.Step leaf = new ExecutionPlan.Step(node, type, depth, rows, cols, 0, 0, 0);
+            steps.add(leaf);
+            return leaf;
+        }
+
+        List<ComputationNode> children = node.getChildren();
+        int arity = children == null ? 0 : children.size();
+        switch (type) {
+            case ADD:
+            case MULTIPLY:
+                if (arity < 2) {
+                    throw new IllegalArgumentException(type + " at " + path + " requires at least 2 operands, got " + arity);
+                }
+                break;
+            case NEGATE:
+            case TRANSPOSE:
+            case POWER:
+                if (arity != 1) {
+                    throw new IllegalArgumentException(type + " at " + path + " requires 1 operand, got " + arity);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported operation at " + path + ": " + type);
+        }
+
+        int index = steps.size();
+        steps.add(null); // placeholder keeps pre-order once the children are planned
+
+        // children run left to right; earlier results stay live while later ones are evaluated
+        long live = 0;
+        long peak = 0;
+        ExecutionPlan.Step[] operands = new ExecutionPlan.Step[arity];
+        for (int i = 0; i < arity; i++) {
+            operands[i] = visit(children.get(i), path + "." + i, depth + 1, steps, leaves, inputBytes);
+            peak = Math.max(peak, live + operands[i].peakBytes);
+            if (operands[i].type != ComputationNodeType.MATRIX) {
+                live += operands[i].resultBytes();
+            }
+        }
+
+        // fold n-ary chains left to right exactly like associativeNesting() + run()
+        ExecutionPlan.Step acc = operands[0];
+        long flops = 0;
+        long bytes = 0;
+        long working = 0;
+        for (int i = (arity == 1 ? 0 : 1); i < arity; i++) {
+            ExecutionPlan.Step rhs = arity == 1 ? null : operands[i];
+            int rows;
+            int cols;
+            long a = (long) acc.rows * acc.cols;
+            long b = rhs == null ? 0 : (long) rhs.rows * rhs.cols;
+            long stepFlops;
+            long traffic;
+            long repeat = 1;
+            switch (type) {
+                case ADD:
+                    if (acc.rows != rhs.rows || acc.cols != rhs.cols) {
+                        throw new IllegalArgumentException("ADD at " + path + ": dimension mismatch "
+                                + shape(acc) + " + " + shape(rhs) + operandHint(arity, i));
+                    }
+                    rows = acc.rows;
+                    cols = acc.cols;
+                    stepFlops = a;
+                    traffic = 3 * a;
+                    break;
+                case MULTIPLY:
+                    if (acc.cols != rhs.rows) {
+                        throw new IllegalArgumentException("MULTIPLY at " + path + ": dimension mismatch "
+                                + shape(acc) + " * " + shape(rhs) + operandHint(arity, i));
+                    }
+                    rows = acc.rows;
+                    cols = rhs.cols;
+                    stepFlops = 2L * acc.rows * acc.cols * rhs.cols;
+                    traffic = (long) acc.rows * b + a + (long) rows * cols;
+                    break;
+                case NEGATE:
+                    rows = acc.rows;
+                    cols = acc.cols;
+                    stepFlops = a;
+                    traffic = 2 * a;
+                    break;
+                case POWER:
+                    if (acc.rows != acc.cols) {
+                        throw new IllegalArgumentException("POWER at " + path + ": operand must be square, got " + shape(acc));
+                    }
+                    rows = acc.rows;
+                    cols = acc.cols;
+                    b = a;
+                    repeat = powerMultiplies(node.getExponent());
+                    stepFlops = 2L * rows * rows * rows;
+                    traffic = (long) rows * a + 2 * a;
+                    break;
+                default: // TRANSPOSE
+                    rows = acc.cols;
+                    cols = acc.rows;
+                    stepFlops = 0;
+                    traffic = 2 * a;
+                    break;
+            }
+            long c = (long) rows * cols;
+            flops += repeat * stepFlops;
+            bytes += repeat * (2 * (a + b) + traffic + 2 * c) * Double.BYTES;
+            // working copies of the operands plus the computed rows and their row-major readback
+            working = Math.max(working, (a + b + 2 * c) * Double.BYTES);
+            acc = new ExecutionPlan.Step(node, type, depth, rows, cols, 0, 0, 0);
+        }
+        peak = Math.max(peak, live + working);
+
+        ExecutionPlan.Step step = new ExecutionPlan.Step(node, type, depth, acc.rows, acc.cols, flops, bytes, peak);
+        steps.set(index, step);
+        return step;
+    }
+
+    /**
+     * Number of multiplies exponentiation by squaring needs for A^k: one per squaring plus one
+     * per further set bit of k, i.e. floor(log2 k) + bitCount(k) - 1 instead of k - 1.
+     */
+    public static int powerMultiplies(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("Exponent must be positive, got " + k);
+        }
+        return 31 - Integer.numberOfLeadingZeros(k) + Integer.bitCount(k) - 1;
+    }
+
+    /**
+     * Rewrites runs of identical operands in MULTIPLY chains into POWER nodes, e.g.
+     * A * A * A * B into (A ^ 3) * B; operands already of the form A ^ j join a run of A.
+     * Nested MULTIPLY operands are flattened first, since the product is associative.
+     * Operands are identical when they are the same node or have equal SubtreeKeys.
+     * Returns the number of MULTIPLY nodes that were rewritten.
+     */
+    public static int rewritePowers(ComputationNode root) {
+        if (root == null) {
+            throw new IllegalArgumentException("root must not be null");
+        }
+        return rewritePowers(root, new IdentityHashMap<>(), Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    private static int rewritePowers(ComputationNode node, Map<ComputationNode, SubtreeKey> keys, Set<ComputationNode> visited) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX || !visited.add(node)) {
+            return 0;
+        }
+        int rewritten = 0;
+        for (ComputationNode child : node.getChildren()) {
+            rewritten += rewritePowers(child, keys, visited);
+        }
+        if (node.getNodeType() != ComputationNodeType.MULTIPLY) {
+            return rewritten;
+        }
+        List<ComputationNode> operands = new ArrayList<>();
+        flattenProduct(node, operands);
+        List<ComputationNode> bases = new ArrayList<>();
+        List<Integer> exponents = new ArrayList<>();
+        boolean merged = false;
+        for (ComputationNode operand : operands) {
+            ComputationNode base = operand;
+            int exponent = 1;
+            if (operand.getNodeType() == ComputationNodeType.POWER) {
+                base = operand.getChildren().get(0);
+                exponent = operand.getExponent();
+            }
+            int last = bases.size() - 1;
+            if (last >= 0 && identical(bases.get(last), base, keys)) {
+                exponents.set(last, exponents.get(last) + exponent);
+                merged = true;
+            } else {
+                bases.add(base);
+                exponents.add(exponent);
+            }
+        }
+        if (!merged) {
+            return rewritten;
+        }
+        List<ComputationNode> factors = new ArrayList<>();
+        for (int i = 0; i < bases.size(); i++) {
+            int k = exponents.get(i);
+            if (k == 1) {
+                factors.add(bases.get(i));
+            } else {
+                factors.add(new ComputationNode(ComputationNodeType.POWER, new ArrayList<>(List.of(bases.get(i))), k));
+            }
+        }
+        rewritten++;
+        if (factors.size() == 1) {
+            ComputationNode power = factors.get(0);
+            node.rewrite(ComputationNodeType.POWER, new ArrayList<>(power.getChildren()), power.getExponent());
+        } else {
+            node.rewrite(ComputationNodeType.MULTIPLY, factors, 0);
+        }
+        return rewritten;
+    }
+
+    /**
+     * Removes work that structured leaves make unnecessary, on a tree that has been planned
+     * (so shapes are known to fit) and nested into binary operations:
+     *   X * I and I * X become X, I ^ k becomes I, and T(S) becomes S for a symmetric S.
+     * Replaced nodes take over the remaining operand; a leaf operand is shared, not copied.
+     * Returns the number of nodes removed.
+     */
+    public static int eliminateIdentities(ComputationNode root) {
+        if (root == null) {
+            throw new IllegalArgumentException("root must not be null");
+        }
+        return eliminateIdentities(root, new IdentityHashMap<>(), Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    private static int eliminateIdentities(ComputationNode node, Map<ComputationNode, MatrixStructure> structures,
+                                           Set<ComputationNode> visited) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX || !visited.add(node)) {
+            return 0;
+        }
+        int removed = 0;
+        for (ComputationNode child : node.getChildren()) {
+            removed += eliminateIdentities(child, structures, visited);
+        }
+        List<ComputationNode> children = node.getChildren();
+        ComputationNode replacement = null;
+        switch (node.getNodeType()) {
+            case MULTIPLY:
+                if (children.size() == 2) {
+                    if (structureOf(children.get(0), structures) == MatrixStructure.IDENTITY) {
+                        replacement = children.get(1);
+                    } else if (structureOf(children.get(1), structures) == MatrixStructure.IDENTITY) {
+                        replacement = children.get(0);
+                    }
+                }
+                break;
+            case POWER:
+                if (structureOf(children.get(0), structures) == MatrixStructure.IDENTITY) {
+                    replacement = children.get(0);
+                }
+                break;
+            case TRANSPOSE:
+                if (structureOf(children.get(0), structures).isSymmetric()) {
+                    replacement = children.get(0);
+                }
+                break;
+            default:
+                break;
+        }
+        if (replacement == null) {
+            return removed;
+        }
+        if (replacement.getNodeType() == ComputationNodeType.MATRIX) {
+            node.resolve(replacement.getMatrix());
+            structures.put(node, structureOf(replacement, structures));
+        } else {
+            node.rewrite(replacement.getNodeType(), new ArrayList<>(replacement.getChildren()), replacement.getExponent());
+        }
+        return removed + 1;
+    }
+
+    private static MatrixStructure structureOf(ComputationNode node, Map<ComputationNode, MatrixStructure> structures) {
+        if (node.getNodeType() != ComputationNodeType.MATRIX || node.getLazySource() != null) {
+            return MatrixStructure.GENERAL; // unknown until evaluated, or not decoded yet
+        }
+        return structures.computeIfAbsent(node, n -> MatrixStructure.detect(n.getMatrix()));
+    }
+
+    private static void flattenProduct(ComputationNode node, List<ComputationNode> out) {
+        for (ComputationNode child : node.getChildren()) {
+            if (child.getNodeType() == ComputationNodeType.MULTIPLY) {
+                flattenProduct(child, out);
+            } else {
+                out.add(child);
+            }
+        }
+    }
+
+    private static boolean identical(ComputationNode x, ComputationNode y, Map<ComputationNode, SubtreeKey> keys) {
+        if (x == y) {
+            return true;
+        }
+        if (x.getNodeType() != y.getNodeType()) {
+            return false;
+        }
+        if (x.getNodeType() == ComputationNodeType.MATRIX) {
+            if (x.getRows() != y.getRows() || x.getCols() != y.getCols()) {
+                return false;
+            }
+        }
+        return keyOf(x, keys).equals(keyOf(y, keys));
+    }
+
+    private static SubtreeKey keyOf(ComputationNode node, Map<ComputationNode, SubtreeKey> keys) {
+        SubtreeKey key = keys.get(node);
+        if (key == null) {
+            keys.putAll(SubtreeKey.computeAll(node));
+            key = keys.get(node);
+        }
+        return key;
+    }
+
+    private static String shape(ExecutionPlan.Step s) {
+        return s.rows + "x" + s.cols;
+    }
+
+    private static String operandHint(int arity, int i) {
+        return arity > 2 ? " (operand " + i + ")" : "";
+    }
+}
@@ -0,0 +1,221 @@
+package spl.lae;
+
+import memory.SharedVector;
+import memory.VectorOrientation;
+import scheduling.CancellationToken;
+import scheduling.ExecutorJob;
+import scheduling.TiredExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks products C = A * B in O(n^2) with Freivalds' algorithm: for a random vector r of +-1
+ * entries, A * (B * r) must equal C * r. A wrong entry C[i][j] shifts (C * r)[i] by its whole
+ * error, so it is caught in every round; a wrong product that is not off in a single entry
+ * escapes one round with probability at most 1/2. Rows are compared within a rounding bound
+ * derived from |A| * |B|, so floating-point noise is not reported.
+ *
+ * Mismatches are recorded, not thrown; one verifier may be shared by concurrent engines.
+ */
+public class FreivaldsVerifier {
+
+    private static final double EPSILON = Math.ulp(1.0);
+
+    /**
+     * A product that failed at least one round.
+     */
+    public static final class Failure {
+        public final String node;
+        public final int rows;
+        public final int cols;
+        public final int failedRounds;
+        public final int rounds;
+        public final int worstRow;
+        public final double residual; // |(A * B * r)[worstRow] - (C * r)[worstRow]|
+        public final double bound;    // rounding bound of that row
+
+        Failure(String node, int rows, int cols, int failedRounds, int rounds, int worstRow,
+                double residual, double bound) {
+            this.node = node;
+            this.rows = rows;
+            this.cols = cols;
+            this.failedRounds = failedRounds;
+            this.rounds = rounds;
+            this.worstRow = worstRow;
+            this.residual = residual;
+            this.bound = bound;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s (%dx%d): failed %d/%d rounds, worst row %d residual %.3g > bound %.3g",
+                    node, rows, cols, failedRounds, rounds, worstRow, residual, bound);
+        }
+    }
+
+    private final int rounds;
+    private final SplittableRandom random;
+    private final List<Failure> failures = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong checked = new AtomicLong(0);
+    private final AtomicLong verifyNanos = new AtomicLong(0);
+
+    public FreivaldsVerifier(int rounds) {
+        this(rounds, System.nanoTime());
+    }
+
+    public FreivaldsVerifier(int rounds, long seed) {
+        if (rounds < 1) {
+            throw new IllegalArgumentException("rounds must be >= 1");
+        }
+        this.rounds = rounds;
+        this.random = new SplittableRandom(seed);
+    }
+
+    public int getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Checks c = a * b, running the row dot products on the executor, and records a Failure
+     * under the given node name on a mismatch. Returns whether the product passed.
+     */
+    public boolean verify(String node, double[][] a, double[][] b, double[][] c,
+                          TiredExecutor executor, CancellationToken token, ExecutorJob job) {
+        int n = a.length;
+        int m = b.length;
+        int p = c.length == 0 ? 0 : c[0].length;
+        if (c.length != n || (n > 0 && a[0].length != m)) {
+            throw new IllegalArgumentException("Cannot verify " + node + ": operand shapes do not match the result");
+        }
+        long start = System.nanoTime();
+        checked.incrementAndGet();
+        if (n == 0 || p == 0) {
+            return true;
+        }
+
+        SharedVector[] r = new SharedVector[rounds];
+        SplittableRandom rnd;
+        synchronized (random) {
+            rnd = random.split();
+        }
+        for (int k = 0; k < rounds; k++) {
+            double[] v = new double[p];
+            for (int j = 0; j < p; j++) {
+                v[j] = rnd.nextBoolean() ? 1.0 : -1.0;
+            }
+            r[k] = new SharedVector(v, VectorOrientation.COLUMN_MAJOR);
+        }
+
+        // Phase 1: B * r and C * r, plus the row sums of |B| for the rounding bound
+        double[][] br = new double[rounds][m];
+        double[][] cr = new double[rounds][n];
+        double[] absRowSums = new double[m];
+        List<Runnable> tasks = new ArrayList<>(m + n);
+        for (int i = 0; i < m; i++) {
+            final int row = i;
+            tasks.add(() -> {
+                SharedVector v = new SharedVector(b[row], VectorOrientation.ROW_MAJOR);
+                for (int k = 0; k < rounds; k++) {
+                    br[k][row] = v.dot(r[k]);
+                }
+                double sum = 0.0;
+                for (double x : b[row]) {
+                    sum += Math.abs(x);
+                }
+                absRowSums[row] = sum;
+            });
+        }
+        for (int i = 0; i < n; i++) {
+            final int row = i;
+            tasks.add(() -> {
+                SharedVector v = new SharedVector(c[row], VectorOrientation.ROW_MAJOR);
+                for (int k = 0; k < rounds; k++) {
+                    cr[k][row] = v.dot(r[k]);
+                }
+            });
+        }
+        executor.submitAll(tasks, token, job);
+
+        // Phase 2: A * (B * r) against C * r, row by row
+        SharedVector[] brColumns = new SharedVector[rounds];
+        for (int k = 0; k < rounds; k++) {
+            brColumns[k] = new SharedVector(br[k], VectorOrientation.COLUMN_MAJOR);
+        }
+        double[][] residuals = new double[rounds][n];
+        double[] bounds = new double[n];
+        // error of computing C plus error of both sides of the check, each a dot product of length m or p
+        double scale = 2.0 * (m + p) * EPSILON;
+        tasks = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            final int row = i;
+            tasks.add(() -> {
+                SharedVector v = new SharedVector(a[row], VectorOrientation.ROW_MAJOR);
+                double absDot = 0.0;
+                for (int j = 0; j < m; j++) {
+                    absDot += Math.abs(a[row][j]) * absRowSums[j];
+                }
+                bounds[row] = scale * absDot + Double.MIN_NORMAL;
+                for (int k = 0; k < rounds; k++) {
+                    residuals[k][row] = Math.abs(v.dot(brColumns[k]) - cr[k][row]);
+                }
+            });
+        }
+        executor.submitAll(tasks, token, job);
+
+        int failedRounds = 0;
+        int worstRow = -1;
+        double worstRatio = 0.0;
+        for (int k = 0; k < rounds; k++) {
+            boolean failed = false;
+            for (int i = 0; i < n; i++) {
+                if (!Double.isFinite(bounds[i])) {
+                    continue; // infinite operands: nothing meaningful to compare
+                }
+                double ratio = residuals[k][i] / bounds[i];
+                if (!(ratio <= 1.0)) {
+                    failed = true;
+                    if (worstRow < 0 || !(ratio <= worstRatio)) {
+                        worstRow = i;
+                        worstRatio = ratio;
+                    }
+                }
+            }
+            if (failed) {
+                failedRounds++;
+            }
+        }
+        verifyNanos.addAndGet(System.nanoTime() - start);
+        if (failedRounds == 0) {
+            return true;
+        }
+        double residual = 0.0;
+        for (int k = 0; k < rounds; k++) {
+            double x = residuals[k][worstRow];
+            if (!(x <= residual)) {
+                residual = x;
+            }
+        }
+        failures.add(new Failure(node, n, p, failedRounds, rounds, worstRow, residual, bounds[worstRow]));
+        return false;
+    }
+
+    public long getChecked() {
+        return checked.get();
+    }
+
+    public List<Failure> getFailures() {
+        synchronized (failures) {
+            return new ArrayList<>(failures);
+        }
+    }
+
+    public String getStats() {
+        return String.format(Locale.US, "FreivaldsVerifier: rounds=%d, checked=%d, failed=%d, %.1f ms",
+                rounds, checked.get(), failures.size(), verifyNanos.get() / 1e6);
+    }
+}
@@ -0,0 +1,468 @@
+package spl.lae;
+
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+import scheduling.TiredExecutor;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the evaluated intermediates of one expression tree so that it can be re-evaluated
+ * cheaply after a few rows of its input leaves change.
+ *
+ * Every node tracks what changed since the last evaluation as a set of dirty rows and dirty
+ * columns (a TRANSPOSE turns dirty rows into dirty columns) together with the previous values
+ * there. After updateRows(), recompute() visits only the ancestors of changed leaves:
+ *   ADD, NEGATE, TRANSPOSE: only the dirty rows and columns are recomputed.
+ *   MULTIPLY C = A * B: dirty rows of A give the same rows of C, dirty columns of B the same
+ *   columns of C. Changes along the shared dimension (dirty columns of A, dirty rows of B)
+ *   touch every entry of C and are applied as a rank-k update
+ *     C += A[:,K] * B[K,:] - A_old[:,K] * B_old[K,:]
+ *   while k stays small; otherwise C is recomputed in full.
+ *   POWER: any change reaches every entry, so A^k is recomputed by repeated squaring.
+ *
+ * Unlike LinearAlgebraEngine.run() the tree is not resolved in place. Row tasks run on the
+ * executor, which the caller owns. Not thread-safe: one thread updates and recomputes.
+ */
+public class IncrementalEvaluator {
+
+    // a rank-k update is used while k is at most this fraction of the shared dimension
+    private static final double RANK_UPDATE_LIMIT = 0.25;
+
+    private final ComputationNode root;
+    private final TiredExecutor executor;
+    private final ExecutionPlan plan;
+    private final List<ComputationNode> order = new ArrayList<>(); // children before parents
+    private final Map<ComputationNode, double[][]> values = new IdentityHashMap<>();
+    private Map<ComputationNode, Delta> pending = new IdentityHashMap<>(); // leaf changes since the last evaluation
+    private boolean evaluated = false;
+    private int lastRecomputedNodes = 0;
+    private int lastRankUpdates = 0;
+    private long lastFlops = 0;
+
+    /**
+     * Changed region of a node: every entry outside rows x all and all x cols is unchanged.
+     * oldRows holds the previous row arrays of dirty rows (rows are replaced, never written
+     * in place), oldCols the previous values of dirty columns.
+     */
+    private static final class Delta {
+        final BitSet rows;
+        final BitSet cols;
+        final Map<Integer, double[]> oldRows = new HashMap<>();
+        final Map<Integer, double[]> oldCols = new HashMap<>();
+
+        Delta(BitSet rows, BitSet cols) {
+            this.rows = rows;
+            this.cols = cols;
+        }
+
+        boolean isEmpty() {
+            return rows.isEmpty() && cols.isEmpty();
+        }
+    }
+
+    private interface RowKernel {
+        double[] compute(int i);
+    }
+
+    private interface EntryKernel {
+        double compute(int i, int j);
+    }
+
+    /**
+     * Prepares the tree for incremental evaluation; n-ary operations are nested first.
+     *
+     * @throws IllegalArgumentException if the tree is invalid, see ExecutionPlanner
+     */
+    public IncrementalEvaluator(ComputationNode root, TiredExecutor executor) {
+        if (root == null) {
+            throw new IllegalArgumentException("root must not be null");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor must not be null");
+        }
+        root.associativeNesting();
+        this.plan = ExecutionPlanner.plan(root);
+        this.root = root;
+        this.executor = executor;
+        collect(root, Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    private void collect(ComputationNode node, Set<ComputationNode> visited) {
+        if (!visited.add(node)) {
+            return;
+        }
+        if (node.getNodeType() != ComputationNodeType.MATRIX) {
+            for (ComputationNode child : node.getChildren()) {
+                collect(child, visited);
+            }
+        }
+        order.add(node);
+    }
+
+    /**
+     * Evaluates the whole tree from scratch and returns the root's value.
+     */
+    public double[][] evaluate() {
+        Map<ComputationNode, Delta> deltas = new IdentityHashMap<>();
+        for (ComputationNode node : order) {
+            ExecutionPlan.Step s = plan.get(node);
+            if (node.getNodeType() == ComputationNodeType.MATRIX) {
+                values.put(node, node.getMatrix());
+                deltas.put(node, allRows(s.rows));
+            } else {
+                values.put(node, new double[s.rows][]);
+            }
+        }
+        pending = new IdentityHashMap<>();
+        evaluated = true;
+        propagate(deltas);
+        return getResult();
+    }
+
+    /**
+     * Replaces rows [firstRow, firstRow + rows.length) of a leaf of the tree. The leaf's matrix
+     * is updated in place (rows are copied); call recompute() to bring the result up to date.
+     */
+    public void updateRows(ComputationNode leaf, int firstRow, double[][] rows) {
+        if (leaf == null || rows == null) {
+            throw new IllegalArgumentException("leaf and rows must not be null");
+        }
+        if (leaf.getNodeType() != ComputationNodeType.MATRIX || plan.get(leaf) == null) {
+            throw new IllegalArgumentException("Not a leaf of this tree");
+        }
+        double[][] m = leaf.getMatrix();
+        int cols = plan.get(leaf).cols;
+        if (firstRow < 0 || firstRow + rows.length > m.length) {
+            throw new IllegalArgumentException("Rows [" + firstRow + ", " + (firstRow + rows.length)
+                    + ") outside a matrix of " + m.length + " rows");
+        }
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i] == null || rows[i].length != cols) {
+                throw new IllegalArgumentException("Row " + (firstRow + i) + " must have " + cols + " values");
+            }
+        }
+        Delta d = pending.computeIfAbsent(leaf, k -> new Delta(new BitSet(), new BitSet()));
+        for (int i = 0; i < rows.length; i++) {
+            int r = firstRow + i;
+            if (!d.rows.get(r)) {
+                d.rows.set(r);
+                d.oldRows.put(r, m[r]);
+            }
+            m[r] = rows[i].clone();
+        }
+    }
+
+    /**
+     * Brings the result up to date with the updates since the last evaluation, recomputing
+     * only what they affect, and returns the root's value.
+     */
+    public double[][] recompute() {
+        if (!evaluated) {
+            return evaluate();
+        }
+        Map<ComputationNode, Delta> deltas = pending;
+        pending = new IdentityHashMap<>();
+        propagate(deltas);
+        return getResult();
+    }
+
+    /**
+     * The root's current value. It is owned by the evaluator and changes with the next
+     * recompute(); copy it to keep it.
+     */
+    public double[][] getResult() {
+        if (!evaluated) {
+            throw new IllegalStateException("Tree has not been evaluated yet");
+        }
+        return values.get(root);
+    }
+
+    public int getLastRecomputedNodes() {
+        return lastRecomputedNodes;
+    }
+
+    public int getLastRankUpdates() {
+        return lastRankUpdates;
+    }
+
+    /**
+     * Floating point operations of the last evaluate() or recompute().
+     */
+    public long getLastFlops() {
+        return lastFlops;
+    }
+
+    private void propagate(Map<ComputationNode, Delta> deltas) {
+        lastRecomputedNodes = 0;
+        lastRankUpdates = 0;
+        lastFlops = 0;
+        for (ComputationNode node : order) {
+            if (node.getNodeType() == ComputationNodeType.MATRIX) {
+                continue;
+            }
+            List<ComputationNode> children = node.getChildren();
+            boolean changed = false;
+            for (ComputationNode child : children) {
+                Delta d = deltas.get(child);
+                changed |= d != null && !d.isEmpty();
+            }
+            if (!changed) {
+                continue;
+            }
+            lastRecomputedNodes++;
+            deltas.put(node, update(node, children, deltas));
+        }
+    }
+
+    private Delta update(ComputationNode node, List<ComputationNode> children, Map<ComputationNode, Delta> deltas) {
+        ExecutionPlan.Step s = plan.get(node);
+        double[][] c = values.get(node);
+        double[][] a = values.get(children.get(0));
+        Delta da = deltaOf(children.get(0), deltas);
+        int rows = s.rows;
+        int cols = s.cols;
+
+        switch (node.getNodeType()) {
+            case NEGATE: {
+                Delta out = normalize(copy(da.rows), copy(da.cols), rows, cols);
+                rewrite(c, out, cols, i -> {
+                    double[] r = new double[cols];
+                    for (int j = 0; j < cols; j++) r[j] = -a[i][j];
+                    return r;
+                }, (i, j) -> -a[i][j]);
+                lastFlops += changedEntries(out, rows, cols);
+                return out;
+            }
+            case TRANSPOSE: {
+                Delta out = normalize(copy(da.cols), copy(da.rows), rows, cols);
+                rewrite(c, out, cols, i -> {
+                    double[] r = new double[cols];
+                    for (int j = 0; j < cols; j++) r[j] = a[j][i];
+                    return r;
+                }, (i, j) -> a[j][i]);
+                return out;
+            }
+            case ADD: {
+                double[][] b = values.get(children.get(1));
+                Delta db = deltaOf(children.get(1), deltas);
+                BitSet r = copy(da.rows);
+                r.or(db.rows);
+                BitSet k = copy(da.cols);
+                k.or(db.cols);
+                Delta out = normalize(r, k, rows, cols);
+                rewrite(c, out, cols, i -> {
+                    double[] row = new double[cols];
+                    for (int j = 0; j < cols; j++) row[j] = a[i][j] + b[i][j];
+                    return row;
+                }, (i, j) -> a[i][j] + b[i][j]);
+                lastFlops += changedEntries(out, rows, cols);
+                return out;
+            }
+            case MULTIPLY:
+                return multiply(c, a, da, values.get(children.get(1)), deltaOf(children.get(1), deltas), rows, cols);
+            case POWER: {
+                double[][] p = power(a, node.getExponent());
+                Delta out = allRows(rows);
+                rewrite(c, out, cols, i -> p[i] == a[i] ? a[i].clone() : p[i], null);
+                lastFlops += ExecutionPlanner.powerMultiplies(node.getExponent()) * 2L * rows * rows * rows;
+                return out;
+            }
+            default:
+                throw new UnsupportedOperationException("Unsupported operation: " + node.getNodeType());
+        }
+    }
+
+    private Delta multiply(double[][] c, double[][] a, Delta da, double[][] b, Delta db, int rows, int cols) {
+        int shared = b.length;
+        BitSet k = copy(da.cols);
+        k.or(db.rows);
+        int rank = k.cardinality();
+        boolean full = rank > RANK_UPDATE_LIMIT * shared;
+        BitSet r = full ? allBits(rows) : copy(da.rows);
+
+        RowKernel product = i -> {
+            double[] out = new double[cols];
+            double[] ai = a[i];
+            for (int x = 0; x < shared; x++) {
+                double v = ai[x];
+                double[] bx = b[x];
+                for (int j = 0; j < cols; j++) out[j] += v * bx[j];
+            }
+            return out;
+        };
+        if (full || rank == 0) {
+            Delta out = normalize(r, copy(db.cols), rows, cols);
+            double[][] bCols = columns(b, out.cols);
+            rewrite(c, out, cols, product, (i, j) -> dot(a[i], bCols[j]));
+            lastFlops += 2L * shared * changedEntries(out, rows, cols);
+            return out;
+        }
+
+        // Changes along the shared dimension reach every row: rows of A that changed are
+        // recomputed, the others get the rank-k correction plus the dirty columns of B.
+        lastRankUpdates++;
+        BitSet j0 = db.cols;
+        double[][] bCols = columns(b, j0);
+        int[] ks = k.stream().toArray();
+        double[][] bOld = new double[ks.length][];
+        for (int x = 0; x < ks.length; x++) {
+            bOld[x] = db.rows.get(ks[x]) ? db.oldRows.get(ks[x]) : b[ks[x]];
+        }
+        Delta out = new Delta(allBits(rows), new BitSet());
+        rewrite(c, out, cols, i -> {
+            if (r.get(i)) {
+                return product.compute(i);
+            }
+            double[] row = c[i].clone();
+            for (int x = 0; x < ks.length; x++) {
+                int kk = ks[x];
+                double aNew = a[i][kk];
+                double aOld = da.cols.get(kk) ? da.oldCols.get(kk)[i] : aNew;
+                double[] bNew = b[kk];
+                double[] bPrev = bOld[x];
+                for (int j = 0; j < cols; j++) row[j] += aNew * bNew[j] - aOld * bPrev[j];
+            }
+            for (int j = j0.nextSetBit(0); j >= 0; j = j0.nextSetBit(j + 1)) {
+                row[j] = dot(a[i], bCols[j]);
+            }
+            return row;
+        }, null);
+        int changedRows = r.cardinality();
+        lastFlops += 2L * shared * cols * changedRows
+                + (long) (rows - changedRows) * (4L * rank * cols + 2L * shared * j0.cardinality());
+        return out;
+    }
+
+    private double[][] power(double[][] base, int k) {
+        double[][] result = null;
+        double[][] square = base;
+        while (true) {
+            if ((k & 1) != 0) {
+                result = result == null ? square : product(result, square);
+            }
+            k >>>= 1;
+            if (k == 0) {
+                return result;
+            }
+            square = product(square, square);
+        }
+    }
+
+    private double[][] product(double[][] a, double[][] b) {
+        int shared = b.length;
+        int cols = shared == 0 ? 0 : b[0].length;
+        double[][] out = new double[a.length][];
+        List<Runnable> tasks = new ArrayList<>(a.length);
+        for (int i = 0; i < a.length; i++) {
+            final int row = i;
+            tasks.add(() -> {
+                double[] r = new double[cols];
+                for (int x = 0; x < shared; x++) {
+                    double v = a[row][x];
+                    for (int j = 0; j < cols; j++) r[j] += v * b[x][j];
+                }
+                out[row] = r;
+            });
+        }
+        if (!tasks.isEmpty()) {
+            executor.submitAll(tasks);
+        }
+        return out;
+    }
+
+    /**
+     * Writes the node's new values for the rows and columns of out, keeping the previous ones
+     * in out. Dirty rows are replaced by new arrays; dirty columns are written in place.
+     */
+    private void rewrite(double[][] c, Delta out, int cols, RowKernel rowKernel, EntryKernel entryKernel) {
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = out.rows.nextSetBit(0); i >= 0; i = out.rows.nextSetBit(i + 1)) {
+            final int row = i;
+            out.oldRows.put(row, c[row]);
+            tasks.add(() -> c[row] = rowKernel.compute(row));
+        }
+        if (!tasks.isEmpty()) {
+            executor.submitAll(tasks);
+        }
+        tasks.clear();
+        for (int j = out.cols.nextSetBit(0); j >= 0; j = out.cols.nextSetBit(j + 1)) {
+            final int col = j;
+            double[] old = new double[c.length];
+            out.oldCols.put(col, old);
+            tasks.add(() -> {
+                for (int i = 0; i < c.length; i++) {
+                    old[i] = c[i][col];
+                    if (!out.rows.get(i)) {
+                        c[i][col] = entryKernel.compute(i, col);
+                    }
+                }
+            });
+        }
+        if (!tasks.isEmpty()) {
+            executor.submitAll(tasks);
+        }
+    }
+
+    /**
+     * Dirty columns that cover the whole width are tracked as dirty rows instead, and
+     * columns need no tracking once every row is dirty.
+     */
+    private static Delta normalize(BitSet rows, BitSet cols, int rowCount, int colCount) {
+        if (colCount > 0 && cols.cardinality() == colCount) {
+            rows.set(0, rowCount);
+        }
+        if (rows.cardinality() == rowCount) {
+            cols.clear();
+        }
+        return new Delta(rows, cols);
+    }
+
+    private static long changedEntries(Delta d, int rows, int cols) {
+        long r = d.rows.cardinality();
+        return r * cols + (rows - r) * d.cols.cardinality();
+    }
+
+    private static Delta deltaOf(ComputationNode node, Map<ComputationNode, Delta> deltas) {
+        Delta d = deltas.get(node);
+        return d != null ? d : new Delta(new BitSet(), new BitSet());
+    }
+
+    private static Delta allRows(int rows) {
+        return new Delta(allBits(rows), new BitSet());
+    }
+
+    private static BitSet allBits(int n) {
+        BitSet b = new BitSet(n);
+        b.set(0, n);
+        return b;
+    }
+
+    private static BitSet copy(BitSet b) {
+        return (BitSet) b.clone();
+    }
+
+    private static double[][] columns(double[][] m, BitSet cols) {
+        int width = cols.length();
+        double[][] out = new double[width][];
+        for (int j = cols.nextSetBit(0); j >= 0; j = cols.nextSetBit(j + 1)) {
+            double[] col = new double[m.length];
+            for (int i = 0; i < m.length; i++) col[i] = m[i][j];
+            out[j] = col;
+        }
+        return out;
+    }
+
+    private static double dot(double[] x, double[] y) {
+        double sum = 0;
+        for (int i = 0; i < x.length; i++) sum += x[i] * y[i];
+        return sum;
+    }
+}
@@ -0,0 +1,125 @@
+package spl.lae;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import scheduling.JobPriority;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client for {@link JobServer}. submit() returns immediately, so many jobs can be pipelined
+ * over one connection; each future completes with the server's response object.
+ */
+public class JobClient implements AutoCloseable {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final Socket socket;
+    private final OutputStream out;
+    private final Map<Long, CompletableFuture<JsonNode>> pending = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Thread reader;
+
+    public JobClient(int port) throws IOException {
+        this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        this.socket.setTcpNoDelay(true);
+        this.out = socket.getOutputStream();
+        this.reader = new Thread(this::readLoop, "job-client-reader");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * Sends an expression (same JSON format as the input files) for evaluation.
+     */
+    public CompletableFuture<JsonNode> submit(JsonNode expression) throws IOException {
+        return submit(expression, null);
+    }
+
+    /**
+     * Sends an expression with a priority class; null leaves it to the server.
+     */
+    public CompletableFuture<JsonNode> submit(JsonNode expression, JobPriority priority) throws IOException {
+        long id = nextId.getAndIncrement();
+        CompletableFuture<JsonNode> future = new CompletableFuture<>();
+        pending.put(id, future);
+
+        ObjectNode request = mapper.createObjectNode();
+        request.put("id", id);
+        request.set("expression", expression);
+        if (priority != null) {
+            request.put("priority", priority.name().toLowerCase(Locale.ROOT));
+        }
+        byte[] bytes = mapper.writeValueAsBytes(request);
+        try {
+            synchronized (out) {
+                out.write(bytes);
+                out.write('\n');
+                out.flush();
+            }
+        } catch (IOException e) {
+            pending.remove(id);
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * Extracts the result matrix from a response, or throws with the server's error message.
+     */
+    public static double[][] resultOf(JsonNode response) {
+        if (response.has("error")) {
+            throw new IllegalStateException(response.get("error").asText());
+        }
+        JsonNode rows = response.get("result");
+        double[][] m = new double[rows.size()][];
+        for (int i = 0; i < rows.size(); i++) {
+            JsonNode row = rows.get(i);
+            m[i] = new double[row.size()];
+            for (int j = 0; j < row.size(); j++) {
+                m[i][j] = row.get(j).asDouble();
+            }
+        }
+        return m;
+    }
+
+    private void readLoop() {
+        IOException failure = null;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                JsonNode response = mapper.readTree(line);
+                JsonNode id = response.get("id");
+                CompletableFuture<JsonNode> f = (id == null || id.isNull()) ? null : pending.remove(id.asLong());
+                if (f != null) {
+                    f.complete(response);
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+        IOException cause = failure != null ? failure : new IOException("Connection closed by server");
+        for (CompletableFuture<JsonNode> f : pending.values()) {
+            f.completeExceptionally(cause);
+        }
+        pending.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
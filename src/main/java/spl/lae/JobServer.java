@@ -0,0 +1,325 @@
+package spl.lae;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import parser.ComputationNode;
+import parser.InputParser;
+import scheduling.CancellationToken;
+import scheduling.JobPriority;
+import scheduling.TiredExecutor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-running job server on a localhost TCP socket. Keeps one warm TiredExecutor (and an
+ * optional ResultCache) for all jobs.
+ *
+ * Protocol: newline-delimited JSON in both directions.
+ *   request:  {"id": ..., "expression": { same format as the input files },
+ *              "timeoutMs": optional, "priority": optional "interactive" | "normal" | "batch"}
+ *   response: {"id": ..., "result": [[...]], "metrics": {...}} or {"id": ..., "error": "..."}
+ * Requests on one connection may be pipelined; responses carry the request id and are sent
+ * as jobs finish, so they may arrive out of order. Results are written row by row straight to
+ * the socket rather than built as a JSON tree first. When maxQueuedJobs jobs are waiting the
+ * server stops reading from the socket, which pushes back on the client through TCP.
+ * A job's deadline (timeoutMs, else the server default) counts from when it was received,
+ * so time spent queued is included. The priority class decides the job's share of the
+ * executor's workers while other jobs are running (NORMAL when not given).
+ * Every expression is planned before it runs: invalid shapes are rejected without using any
+ * workers, and with a job memory limit set, so are jobs whose estimated peak exceeds it.
+ */
+public class JobServer implements AutoCloseable {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final TiredExecutor executor;
+    private final ResultCache cache;
+    private final ExecutorService jobRunners;
+    private final Semaphore admission;
+    private final InputParser parser = new InputParser();
+    private final ServerSocket serverSocket;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final Set<CancellationToken> activeJobs = ConcurrentHashMap.newKeySet();
+    private final AtomicLong jobsCompleted = new AtomicLong(0);
+    private final AtomicLong jobsFailed = new AtomicLong(0);
+    private final Thread acceptThread;
+
+    private volatile boolean running = true;
+    private volatile long defaultTimeoutMillis = 0; // 0: no deadline unless the request sets one
+    private volatile long maxJobBytes = 0; // 0: no admission limit
+
+    /**
+     * @param port              TCP port on the loopback interface, 0 for an ephemeral port
+     * @param executor          shared executor for row tasks (not shut down by the server)
+     * @param maxConcurrentJobs jobs evaluated at the same time
+     * @param maxQueuedJobs     accepted jobs waiting for a runner before reading stops
+     * @param cache             optional result cache shared by all jobs, may be null
+     */
+    public JobServer(int port, TiredExecutor executor, int maxConcurrentJobs, int maxQueuedJobs, ResultCache cache) throws IOException {
+        if (executor == null) throw new IllegalArgumentException("executor must not be null");
+        if (maxConcurrentJobs <= 0) throw new IllegalArgumentException("maxConcurrentJobs must be > 0");
+        if (maxQueuedJobs < 0) throw new IllegalArgumentException("maxQueuedJobs must be >= 0");
+
+        this.executor = executor;
+        this.cache = cache;
+        this.jobRunners = Executors.newFixedThreadPool(maxConcurrentJobs, r -> {
+            Thread t = new Thread(r, "job-runner");
+            t.setDaemon(true);
+            return t;
+        });
+        this.admission = new Semaphore(maxConcurrentJobs + maxQueuedJobs);
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.acceptThread = new Thread(this::acceptLoop, "job-server-accept");
+        this.acceptThread.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Deadline for requests without a timeoutMs field; 0 disables it.
+     */
+    public void setDefaultTimeoutMillis(long timeoutMillis) {
+        if (timeoutMillis < 0) throw new IllegalArgumentException("timeoutMillis must be >= 0");
+        this.defaultTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Rejects jobs whose planned peak memory exceeds maxBytes; 0 disables the check.
+     */
+    public void setMaxJobBytes(long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("maxBytes must be >= 0");
+        this.maxJobBytes = maxBytes;
+    }
+
+    public long getJobsCompleted() {
+        return jobsCompleted.get();
+    }
+
+    public long getJobsFailed() {
+        return jobsFailed.get();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                Thread reader = new Thread(() -> serve(socket), "job-server-conn-" + socket.getPort());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("JobServer accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            OutputStream out = socket.getOutputStream();
+            String line;
+            while (running && (line = in.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                final long received = System.nanoTime();
+                final JsonNode request;
+                try {
+                    request = mapper.readTree(line);
+                } catch (JsonProcessingException e) {
+                    send(out, error(null, "Malformed request: " + e.getOriginalMessage()));
+                    continue;
+                }
+                JsonNode timeout = request.get("timeoutMs");
+                long timeoutMillis = timeout != null && timeout.canConvertToLong() ? timeout.asLong() : defaultTimeoutMillis;
+                if (timeoutMillis < 0) {
+                    send(out, error(request.get("id"), "timeoutMs must be >= 0"));
+                    continue;
+                }
+                final CancellationToken token = CancellationToken.withTimeout(timeoutMillis);
+
+                // Backpressure: block the reader (and hence the client) while the queue is full
+                admission.acquire();
+                try {
+                    jobRunners.execute(() -> {
+                        try {
+                            handle(request, received, token, out);
+                        } finally {
+                            admission.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    admission.release();
+                    send(out, error(request.get("id"), "Server is shutting down"));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (SocketException e) {
+            // connection closed by the client or by close()
+        } catch (IOException e) {
+            System.err.println("JobServer connection failed: " + e.getMessage());
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    private void handle(JsonNode request, long receivedNanos, CancellationToken token, OutputStream out) {
+        JsonNode id = request.get("id");
+        long start = System.nanoTime();
+        activeJobs.add(token);
+        if (!running) {
+            token.cancel("Server is shutting down");
+        }
+        try {
+            token.throwIfCancelled(); // deadline may have passed while queued
+            ComputationNode root = parser.parse(request.get("expression"));
+            ExecutionPlanner.rewritePowers(root); // plan what the engine will run
+            ExecutionPlan plan = ExecutionPlanner.plan(root);
+            long limit = maxJobBytes;
+            if (limit > 0 && plan.getPeakBytes() > limit) {
+                throw new IllegalArgumentException("Rejected: estimated peak memory " + ExecutionPlan.bytes(plan.getPeakBytes())
+                        + " exceeds the per-job limit of " + ExecutionPlan.bytes(limit));
+            }
+            long parsed = System.nanoTime();
+
+            LinearAlgebraEngine engine = new LinearAlgebraEngine(executor);
+            engine.setResultCache(cache);
+            engine.setPriority(priorityOf(request));
+            engine.setJobName("request " + (id == null ? "?" : id.asText()));
+            double[][] result = engine.run(root, token).getMatrix();
+            long computed = System.nanoTime();
+
+            ObjectNode metrics = mapper.createObjectNode();
+            metrics.put("queueMs", (start - receivedNanos) / 1e6);
+            metrics.put("parseMs", (parsed - start) / 1e6);
+            metrics.put("computeMs", (computed - parsed) / 1e6);
+            metrics.put("estimatedFlops", plan.getTotalFlops());
+            metrics.put("estimatedPeakBytes", plan.getPeakBytes());
+            jobsCompleted.incrementAndGet();
+            sendResult(out, id, result, metrics);
+        } catch (Exception e) {
+            jobsFailed.incrementAndGet();
+            send(out, error(id, e.getMessage() == null ? e.toString() : e.getMessage()));
+        } finally {
+            activeJobs.remove(token);
+        }
+    }
+
+    private static JobPriority priorityOf(JsonNode request) {
+        JsonNode p = request.get("priority");
+        if (p == null || p.isNull()) {
+            return JobPriority.NORMAL;
+        }
+        try {
+            return JobPriority.valueOf(p.asText().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown priority: " + p.asText());
+        }
+    }
+
+    private static ObjectNode error(JsonNode id, String message) {
+        ObjectNode response = mapper.createObjectNode();
+        response.set("id", id);
+        response.put("error", message);
+        return response;
+    }
+
+    private static void send(OutputStream out, ObjectNode response) {
+        try {
+            byte[] bytes = mapper.writeValueAsBytes(response);
+            synchronized (out) {
+                out.write(bytes);
+                out.write('\n');
+                out.flush();
+            }
+        } catch (IOException e) {
+            // client went away; nothing left to report to
+        }
+    }
+
+    /**
+     * Writes {"id", "result", "metrics"} as one line, serialising the rows directly to the
+     * socket so the result is never held twice.
+     */
+    private static void sendResult(OutputStream out, JsonNode id, double[][] result, ObjectNode metrics) {
+        try {
+            synchronized (out) {
+                JsonGenerator gen = mapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+                gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                gen.writeStartObject();
+                gen.writeFieldName("id");
+                if (id == null) {
+                    gen.writeNull();
+                } else {
+                    mapper.writeTree(gen, id);
+                }
+                gen.writeFieldName("result");
+                gen.writeStartArray();
+                for (double[] row : result) {
+                    gen.writeArray(row, 0, row.length);
+                }
+                gen.writeEndArray();
+                gen.writeFieldName("metrics");
+                mapper.writeTree(gen, metrics);
+                gen.writeEndObject();
+                gen.close(); // flushes into out, which stays open
+                out.write('\n');
+                out.flush();
+            }
+        } catch (IOException e) {
+            // client went away; nothing left to report to
+        }
+    }
+
+    /**
+     * Stops accepting connections, closes open ones, cancels running jobs and waits for them
+     * to stop. The shared executor is left running.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        for (CancellationToken token : activeJobs) {
+            token.cancel("Server is shutting down");
+        }
+        for (Socket s : connections) {
+            try {
+                s.close();
+            } catch (IOException ignored) {
+                // best effort
+            }
+        }
+        jobRunners.shutdown();
+        try {
+            acceptThread.join();
+            jobRunners.awaitTermination(1, java.util.concurrent.TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
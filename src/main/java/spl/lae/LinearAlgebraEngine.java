@@ -3,15 +3,41 @@ package spl.lae;
 import parser.*;
 import memory.*;
 import scheduling.*;
+import metrics.EngineMetrics;
+import metrics.MetricsSnapshot;
+import metrics.TraceRecorder;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class LinearAlgebraEngine {
 
     private SharedMatrix leftMatrix = new SharedMatrix();
     private SharedMatrix rightMatrix = new SharedMatrix();
     private TiredExecutor executor;
+    private final boolean ownsExecutor; // only an owned executor is shut down by run()
+    private TraceRecorder tracer = null; // opt-in span recording
+    private int nodeSeq = 0;
+    private boolean cseEnabled = true; // share identical subtrees so they are evaluated once
+    private ResultCache resultCache = null; // optional, may be shared between engines
+    private CheckpointStore checkpoints = null; // optional, persists results for resumed runs
+    private int eliminatedSubtrees = 0;
+    private boolean rowPipelining = true; // evaluate chains of row-local nodes row by row
+    private int pipelinedNodes = 0;
+    private RowStreamWriter resultStream = null; // optional, receives the root's rows as they finish
+    private FreivaldsVerifier verifier = null; // optional, checks every multiply
+    private CancellationToken cancellation = new CancellationToken(); // token of the current run
+    private JobPriority priority = JobPriority.NORMAL;
+    private String jobName = "engine";
+    private ExecutorJob job = null; // executor share of the current run
+    private ExecutionPlan lastPlan = null;
 
     public LinearAlgebraEngine(int numThreads) {
         // TODO: create executor with given thread count
@@ -19,38 +45,582 @@ public class LinearAlgebraEngine {
             throw new IllegalArgumentException("Number of threads must be positive");
         }
         this.executor = new TiredExecutor(numThreads);
+        this.ownsExecutor = true;
+        leftMatrix.setExecutor(executor);
+        rightMatrix.setExecutor(executor);
+        EngineMetrics.global().registerMBean();
+    }
+
+    /**
+     * Creates an engine on a shared executor, e.g. one pool serving many jobs.
+     * The executor stays running after run(); its owner is responsible for shutting it down.
+     * An engine instance evaluates one tree at a time; use one engine per concurrent job.
+     */
+    public LinearAlgebraEngine(TiredExecutor sharedExecutor) {
+        if (sharedExecutor == null) {
+            throw new IllegalArgumentException("Executor must not be null");
+        }
+        this.executor = sharedExecutor;
+        this.ownsExecutor = false;
+        leftMatrix.setExecutor(executor);
+        rightMatrix.setExecutor(executor);
+        EngineMetrics.global().registerMBean();
     }
     
 
     public ComputationNode run(ComputationNode computationRoot) {
         // TODO: resolve computation tree step by step until final matrix is produced
+        return run(computationRoot, new CancellationToken());
+    }
+
+    /**
+     * Evaluates the tree until the token is cancelled or its deadline passes, in which case
+     * a CancellationException is thrown once the row tasks already running have returned.
+     * The tree must not be reused after a failed run.
+     */
+    public ComputationNode run(ComputationNode computationRoot, CancellationToken token) {
+        if (token == null) {
+            throw new IllegalArgumentException("Cancellation token must not be null");
+        }
+        this.cancellation = token;
+        this.job = executor.openJob(jobName, priority);
+        // layout conversions and lazy leaf decodes count against this job and stop with it
+        leftMatrix.setExecutor(executor, job, token);
+        rightMatrix.setExecutor(executor, job, token);
+        List<LazyMatrix> lazyLeaves = new ArrayList<>();
+        collectLazyLeaves(computationRoot, Collections.newSetFromMap(new IdentityHashMap<>()), lazyLeaves);
+        for (LazyMatrix m : lazyLeaves) {
+            m.setJob(job, token);
+        }
+        try {
+            evaluateTree(computationRoot);
+        } finally {
+            leftMatrix.setExecutor(executor);
+            rightMatrix.setExecutor(executor);
+            for (LazyMatrix m : lazyLeaves) {
+                m.setJob(null, null);
+            }
+            job.close();
+            job = null;
+            if (ownsExecutor) {
+                try {
+                    executor.shutdown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    System.err.println("Engine interrupted during shutdown");
+                }
+            }
+        }
+        return computationRoot;
+    }
+
+    private void evaluateTree(ComputationNode computationRoot) {
+        ExecutionPlanner.rewritePowers(computationRoot);
         computationRoot.associativeNesting();
+        // shape errors surface here, before any operand is loaded
+        lastPlan = ExecutionPlanner.plan(computationRoot);
+        if (ExecutionPlanner.eliminateIdentities(computationRoot) > 0) {
+            lastPlan = ExecutionPlanner.plan(computationRoot);
+        }
+
+        Map<ComputationNode, SubtreeKey> keys = null;
+        ResultCache cache = resultCache;
+        CheckpointStore store = checkpoints;
+        if (cseEnabled || cache != null || store != null) {
+            keys = SubtreeKey.computeAll(computationRoot);
+        }
+        if (cseEnabled) {
+            eliminatedSubtrees = shareCommonSubtrees(computationRoot, keys);
+        }
+        // Matrices of nodes resolved by this engine are private to it and can be recycled
+        // once every parent has consumed them; input leaves belong to the caller
+        Set<ComputationNode> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (cache != null) {
+            resolveCachedSubtrees(computationRoot, keys, cache, owned);
+        }
+        if (store != null) {
+            resolveCheckpointedSubtrees(computationRoot, keys, store, owned);
+        }
+        Map<ComputationNode, Integer> pendingParents = countParents(computationRoot);
+        pipelinedNodes = 0;
+
+        try {
+            evaluate(computationRoot, keys, cache, store, owned, pendingParents);
+            RowStreamWriter stream = resultStream;
+            if (stream != null && !stream.isStarted()) {
+                // the root needed no evaluation (an input leaf or a cached result): copy it out
+                double[][] m = computationRoot.getMatrix();
+                startStream(stream, m.length);
+                for (int i = 0; i < m.length; i++) {
+                    double[] row = BufferPool.global().acquire(m[i].length);
+                    System.arraycopy(m[i], 0, row, 0, m[i].length);
+                    stream.put(i, row);
+                }
+            }
+        } finally {
+            leftMatrix.release();
+            rightMatrix.release();
+        }
+    }
+
+    private void evaluate(ComputationNode computationRoot,
+                          Map<ComputationNode, SubtreeKey> keys,
+                          ResultCache cache,
+                          CheckpointStore store,
+                          Set<ComputationNode> owned,
+                          Map<ComputationNode, Integer> pendingParents) {
         while (computationRoot.getNodeType() != ComputationNodeType.MATRIX) {
+            cancellation.throwIfCancelled();
+            // intermediates of a pipeline are never materialised, so there is nothing to cache or verify
+            if (rowPipelining && cache == null && store == null && verifier == null) {
+                ComputationNode pipeline = findRowPipeline(computationRoot, pendingParents,
+                        Collections.newSetFromMap(new IdentityHashMap<>()));
+                if (pipeline != null) {
+                    evaluateRowPipeline(pipeline, owned, pendingParents,
+                            pipeline == computationRoot ? resultStream : null);
+                    continue;
+                }
+            }
             ComputationNode nextNode = computationRoot.findResolvable();
             if (nextNode == null) {
                 throw new IllegalStateException("Could not find a resolvable node in the tree");
             }
-            loadAndCompute(nextNode);
-            double[][] result = leftMatrix.readRowMajor();
+            List<ComputationNode> consumed = nextNode.getChildren();
+            SubtreeKey key = keys == null ? null : keys.get(nextNode);
+            if (cache != null) {
+                double[][] cached = cache.get(key);
+                if (cached != null) {
+                    nextNode.resolve(cached);
+                    owned.add(nextNode);
+                    releaseConsumed(consumed, owned, pendingParents);
+                    continue;
+                }
+            }
+            ComputationNodeType type = nextNode.getNodeType();
+            int nodeId = nodeSeq;
+            long start = System.nanoTime();
+            RowStreamWriter stream = nextNode == computationRoot ? resultStream : null;
+            boolean streamed = loadAndCompute(nextNode, stream);
+            long computed = System.nanoTime();
+            double[][] result;
+            if (streamed) {
+                result = new double[0][0];
+            } else {
+                result = leftMatrix.readRowMajor();
+                if (type == ComputationNodeType.MULTIPLY && verifier != null) {
+                    verify(verifier, type + " #" + nodeId, consumed.get(0).getMatrix(), consumed.get(1).getMatrix(), result);
+                }
+                if (stream != null) {
+                    // TRANSPOSE, POWER and verified products finish all rows together: hand the readback over
+                    startStream(stream, result.length);
+                    for (int i = 0; i < result.length; i++) {
+                        stream.put(i, result[i]);
+                    }
+                    result = new double[0][0];
+                }
+            }
             nextNode.resolve(result);
+            owned.add(nextNode);
+            releaseConsumed(consumed, owned, pendingParents);
+            long end = System.nanoTime();
+            EngineMetrics.global().recordNode(type, end - start);
+            if (cache != null && stream == null) {
+                cache.put(key, result);
+            }
+            if (store != null && nextNode != computationRoot) {
+                store.put(key, result); // written in the background while the next node computes
+            }
+
+            TraceRecorder t = tracer;
+            if (t != null) {
+                int rows = result.length;
+                int cols = rows == 0 ? 0 : result[0].length;
+                t.record("readback", "phase", 0, computed, end, TraceRecorder.args("node", nodeId));
+                t.record(type + " #" + nodeId, "node", 0, start, end,
+                        TraceRecorder.args("node", nodeId, "type", type.name(), "rows", rows, "cols", cols));
+            }
+        }
+    }
+
+    /**
+     * Finds the topmost node whose operands, through a chain of other unshared nodes, can be
+     * produced one row at a time from resolved matrices (see isRowLocal), so each row of the
+     * whole chain is computed by one task without a barrier between the nodes.
+     * Returns null if no chain of at least two nodes is ready.
+     */
+    private static ComputationNode findRowPipeline(ComputationNode node, Map<ComputationNode, Integer> pendingParents,
+                                                   Set<ComputationNode> visited) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX || !visited.add(node)) {
+            return null;
         }
+        if (isRowLocal(node, true, pendingParents)) {
+            for (ComputationNode child : node.getChildren()) {
+                if (child.getNodeType() != ComputationNodeType.MATRIX) {
+                    return node;
+                }
+            }
+        }
+        for (ComputationNode child : node.getChildren()) {
+            ComputationNode found = findRowPipeline(child, pendingParents, visited);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Row i of the node depends only on row i of its operands: ADD and NEGATE of row-local
+     * operands, MULTIPLY of a row-local left operand by a resolved right one, and TRANSPOSE
+     * of a resolved matrix (row i is its column i). Nodes below the pipeline root must have
+     * a single parent, since their rows are consumed as soon as they are produced.
+     */
+    private static boolean isRowLocal(ComputationNode node, boolean root, Map<ComputationNode, Integer> pendingParents) {
+        ComputationNodeType type = node.getNodeType();
+        if (type == ComputationNodeType.MATRIX) {
+            return true;
+        }
+        if (!root && pendingParents.getOrDefault(node, 0) != 1) {
+            return false;
+        }
+        List<ComputationNode> children = node.getChildren();
+        switch (type) {
+            case ADD:
+                return children.size() == 2 && isRowLocal(children.get(0), false, pendingParents)
+                        && isRowLocal(children.get(1), false, pendingParents);
+            case NEGATE:
+                return children.size() == 1 && isRowLocal(children.get(0), false, pendingParents);
+            case MULTIPLY:
+                return children.size() == 2 && isRowLocal(children.get(0), false, pendingParents)
+                        && children.get(1).getNodeType() == ComputationNodeType.MATRIX;
+            case TRANSPOSE:
+                return !root && children.size() == 1 && children.get(0).getNodeType() == ComputationNodeType.MATRIX;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Evaluates a row pipeline found by findRowPipeline; with a stream, its rows go there
+     * instead of into a result matrix.
+     */
+    private void evaluateRowPipeline(ComputationNode root, Set<ComputationNode> owned,
+                                     Map<ComputationNode, Integer> pendingParents, RowStreamWriter stream) {
+        int nodeId = nodeSeq++;
+        long start = System.nanoTime();
+        ComputationNodeType type = root.getNodeType();
+        List<ComputationNode> nodes = new ArrayList<>();
+        collectPostOrder(root, nodes);
+
+        // right operands of the multiplies, loaded column-major once for all rows
+        Map<ComputationNode, SharedMatrix> rightOperands = new IdentityHashMap<>();
+        double[][] out;
         try {
-            executor.shutdown();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.err.println("Engine interrupted during shutdown");
+            for (ComputationNode n : nodes) {
+                if (n.getNodeType() == ComputationNodeType.MULTIPLY) {
+                    SharedMatrix right = new SharedMatrix();
+                    right.setExecutor(executor, job, cancellation);
+                    rightOperands.put(n, right);
+                    right.loadColumnMajor(n.getChildren().get(1).getMatrix());
+                }
+                for (ComputationNode child : n.getChildren()) {
+                    if (child.getNodeType() == ComputationNodeType.MATRIX) {
+                        child.getMatrix(); // decode lazy leaves here rather than inside a row task
+                    }
+                }
+            }
+            int rows = rowCount(root);
+            out = new double[stream == null ? rows : 0][];
+            CancellationToken token = cancellation;
+            List<Runnable> tasks = new ArrayList<>(rows);
+            if (stream != null) {
+                startStream(stream, rows);
+            }
+            for (int i = 0; i < rows; i++) {
+                final int rowIndex = i;
+                if (stream != null) {
+                    tasks.add(() -> {
+                        try {
+                            stream.put(rowIndex, pipelineRow(root, rowIndex, rightOperands, token));
+                        } catch (RuntimeException | Error e) {
+                            stream.abandon(); // this row never comes: release the puts waiting for it
+                            throw e;
+                        }
+                    });
+                } else {
+                    tasks.add(() -> out[rowIndex] = pipelineRow(root, rowIndex, rightOperands, token));
+                }
+            }
+            TraceRecorder t = tracer;
+            if (t != null) {
+                tasks = traceTasks(t, tasks, nodeId, type);
+            }
+            ExecutorJob j = job;
+            try {
+                executor.submitAll(tasks, token, j != null ? j : executor.getDefaultJob());
+            } catch (RuntimeException e) {
+                for (double[] row : out) {
+                    if (row != null) {
+                        BufferPool.global().release(row);
+                    }
+                }
+                throw e;
+            }
+        } finally {
+            for (SharedMatrix m : rightOperands.values()) {
+                m.release();
+            }
         }
 
-        return computationRoot;
+        List<ComputationNode> rootOperands = root.getChildren(); // resolve() drops them
+        root.resolve(out);
+        owned.add(root);
+        for (ComputationNode n : nodes) {
+            releaseConsumed(n == root ? rootOperands : n.getChildren(), owned, pendingParents);
+        }
+        pipelinedNodes += nodes.size() - 1;
+        long end = System.nanoTime();
+        EngineMetrics.global().recordNode(type, end - start);
+        TraceRecorder t = tracer;
+        if (t != null) {
+            t.record(type + " #" + nodeId + " (pipeline of " + nodes.size() + ")", "node", 0, start, end,
+                    TraceRecorder.args("node", nodeId, "type", type.name(), "nodes", nodes.size()));
+        }
+    }
+
+    private static void collectPostOrder(ComputationNode node, List<ComputationNode> out) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            return;
+        }
+        for (ComputationNode child : node.getChildren()) {
+            collectPostOrder(child, out);
+        }
+        out.add(node);
+    }
+
+    private static int rowCount(ComputationNode node) {
+        switch (node.getNodeType()) {
+            case MATRIX:
+                return node.getMatrix().length;
+            case TRANSPOSE:
+                double[][] m = node.getChildren().get(0).getMatrix();
+                return m.length == 0 ? 0 : m[0].length;
+            default:
+                return rowCount(node.getChildren().get(0));
+        }
+    }
+
+    /**
+     * Computes row i of a row-local node into a pooled buffer owned by the caller.
+     */
+    private static double[] pipelineRow(ComputationNode node, int i, Map<ComputationNode, SharedMatrix> rightOperands,
+                                        CancellationToken token) {
+        List<ComputationNode> children = node.getChildren();
+        switch (node.getNodeType()) {
+            case MATRIX: {
+                double[] src = node.getMatrix()[i];
+                double[] row = BufferPool.global().acquire(src.length);
+                System.arraycopy(src, 0, row, 0, src.length);
+                return row;
+            }
+            case TRANSPOSE: {
+                double[][] m = children.get(0).getMatrix();
+                double[] row = BufferPool.global().acquire(m.length);
+                for (int k = 0; k < m.length; k++) {
+                    row[k] = m[k][i];
+                }
+                return row;
+            }
+            case NEGATE: {
+                double[] row = pipelineRow(children.get(0), i, rightOperands, token);
+                for (int k = 0; k < row.length; k++) {
+                    row[k] = -row[k];
+                }
+                return row;
+            }
+            case ADD: {
+                double[] row = pipelineRow(children.get(0), i, rightOperands, token);
+                double[] other = pipelineRow(children.get(1), i, rightOperands, token);
+                for (int k = 0; k < row.length; k++) {
+                    row[k] += other[k];
+                }
+                BufferPool.global().release(other);
+                return row;
+            }
+            case MULTIPLY: {
+                double[] left = pipelineRow(children.get(0), i, rightOperands, token);
+                SharedVector v = new SharedVector(left, VectorOrientation.ROW_MAJOR);
+                try {
+                    v.vecMatMul(rightOperands.get(node), token::isCancelled);
+                } finally {
+                    BufferPool.global().release(left);
+                }
+                return v.takeBuffer();
+            }
+            default:
+                throw new IllegalStateException("Not row-local: " + node.getNodeType());
+        }
+    }
+
+    /**
+     * Counts the distinct parents of every node (more than one when subtrees are shared).
+     */
+    private static void collectLazyLeaves(ComputationNode node, Set<ComputationNode> visited, List<LazyMatrix> out) {
+        if (!visited.add(node)) {
+            return;
+        }
+        if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            if (node.getLazySource() != null) {
+                out.add(node.getLazySource());
+            }
+            return;
+        }
+        for (ComputationNode child : node.getChildren()) {
+            collectLazyLeaves(child, visited, out);
+        }
+    }
+
+    private static Map<ComputationNode, Integer> countParents(ComputationNode root) {
+        Map<ComputationNode, Integer> counts = new IdentityHashMap<>();
+        Set<ComputationNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        countParents(root, counts, visited);
+        return counts;
+    }
+
+    private static void countParents(ComputationNode node, Map<ComputationNode, Integer> counts, Set<ComputationNode> visited) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX || !visited.add(node)) {
+            return;
+        }
+        Set<ComputationNode> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (ComputationNode child : node.getChildren()) {
+            if (distinct.add(child)) {
+                counts.merge(child, 1, Integer::sum);
+                countParents(child, counts, visited);
+            }
+        }
+    }
+
+    private static void releaseConsumed(List<ComputationNode> consumed, Set<ComputationNode> owned, Map<ComputationNode, Integer> pendingParents) {
+        Set<ComputationNode> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (ComputationNode child : consumed) {
+            if (!distinct.add(child)) {
+                continue;
+            }
+            Integer left = pendingParents.merge(child, -1, Integer::sum);
+            if (left != null && left <= 0) {
+                if (owned.remove(child)) {
+                    BufferPool.global().release(child.getMatrix());
+                } else {
+                    child.releaseMatrix(); // a lazy input leaf is decoded again if ever needed
+                }
+            }
+        }
     }
     
 
+    /**
+     * Replaces every repeated subtree by a single shared instance, turning the tree into a DAG.
+     * findResolvable() then resolves the shared node once for all of its parents.
+     * Returns the number of subtrees that were eliminated.
+     */
+    private static int shareCommonSubtrees(ComputationNode root, Map<ComputationNode, SubtreeKey> keys) {
+        Map<SubtreeKey, ComputationNode> canonical = new HashMap<>();
+        canonical.put(keys.get(root), root);
+        Set<ComputationNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        return shareCommonSubtrees(root, keys, canonical, visited);
+    }
+
+    private static int shareCommonSubtrees(ComputationNode node,
+                                           Map<ComputationNode, SubtreeKey> keys,
+                                           Map<SubtreeKey, ComputationNode> canonical,
+                                           Set<ComputationNode> visited) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX || !visited.add(node)) {
+            return 0;
+        }
+        int eliminated = 0;
+        List<ComputationNode> children = node.getChildren();
+        for (int i = 0; i < children.size(); i++) {
+            ComputationNode child = children.get(i);
+            ComputationNode existing = canonical.putIfAbsent(keys.get(child), child);
+            if (existing != null && existing != child) {
+                node.replaceChild(i, existing);
+                eliminated++;
+            } else {
+                eliminated += shareCommonSubtrees(child, keys, canonical, visited);
+            }
+        }
+        return eliminated;
+    }
+
+    /**
+     * Top-down pass resolving the largest subtrees already present in the cache,
+     * so nothing below a cached node is evaluated.
+     */
+    private static void resolveCachedSubtrees(ComputationNode node, Map<ComputationNode, SubtreeKey> keys,
+                                              ResultCache cache, Set<ComputationNode> owned) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            return;
+        }
+        SubtreeKey key = keys.get(node);
+        if (cache.contains(key)) {
+            double[][] cached = cache.get(key);
+            if (cached != null) {
+                node.resolve(cached);
+                owned.add(node);
+                return;
+            }
+        }
+        for (ComputationNode child : node.getChildren()) {
+            resolveCachedSubtrees(child, keys, cache, owned);
+        }
+    }
+
+    /**
+     * Same as resolveCachedSubtrees, for results checkpointed by an earlier (possibly crashed) run.
+     */
+    private static void resolveCheckpointedSubtrees(ComputationNode node, Map<ComputationNode, SubtreeKey> keys,
+                                                    CheckpointStore store, Set<ComputationNode> owned) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            return;
+        }
+        SubtreeKey key = keys.get(node);
+        if (store.contains(key)) {
+            double[][] loaded = store.get(key);
+            if (loaded != null) {
+                node.resolve(loaded);
+                owned.add(node);
+                return;
+            }
+        }
+        for (ComputationNode child : node.getChildren()) {
+            resolveCheckpointedSubtrees(child, keys, store, owned);
+        }
+    }
+
+    private void startStream(RowStreamWriter stream, int rows) {
+        try {
+            stream.start(rows, cancellation); // a put() blocked on the window gives up with the run
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     public void loadAndCompute(ComputationNode node) {
+        loadAndCompute(node, null);
+    }
+
+    /**
+     * With a stream, the rows of ADD, NEGATE and MULTIPLY are handed to it as each row task
+     * finishes, leaving leftMatrix empty; returns whether that happened.
+     */
+    private boolean loadAndCompute(ComputationNode node, RowStreamWriter stream) {
         // TODO: load operand matrices
         // TODO: create compute tasks & submit tasks to executor
         ComputationNodeType type = node.getNodeType();
         List<ComputationNode> children = node.getChildren();
         List<Runnable> tasks = new ArrayList<>();
+        int nodeId = nodeSeq++;
+        long start = System.nanoTime();
 
         switch (type) {
             case ADD:
@@ -77,13 +647,137 @@ public class LinearAlgebraEngine {
                 tasks = createTransposeTasks();
                 break;
 
+            case POWER:
+                if (children.size() != 1) throw new IllegalArgumentException("POWER requires 1 operand");
+                // runs its own multiplies; the result is left in leftMatrix like any other node
+                double[][] base = children.get(0).getMatrix();
+                double[][] result = power(base, node.getExponent(), type + " #" + nodeId);
+                leftMatrix.loadRowMajor(result);
+                releaseIntermediate(result, base, null);
+                break;
+
             default:
                 throw new UnsupportedOperationException("Unsupported operation: " + type);
         }    
+        long loaded = System.nanoTime();
+        boolean streamed = stream != null && type != ComputationNodeType.TRANSPOSE && type != ComputationNodeType.POWER
+                && !(type == ComputationNodeType.MULTIPLY && verifier != null); // the check needs the whole product
+        if (streamed) {
+            startStream(stream, leftMatrix.length());
+            List<Runnable> streaming = new ArrayList<>(tasks.size());
+            for (int i = 0; i < tasks.size(); i++) {
+                final Runnable task = tasks.get(i);
+                final int rowIndex = i;
+                streaming.add(() -> {
+                    try {
+                        task.run();
+                        // hand the finished row over without copying it
+                        stream.put(rowIndex, leftMatrix.get(rowIndex).takeBuffer());
+                    } catch (RuntimeException | Error e) {
+                        stream.abandon(); // this row never comes: release the puts waiting for it
+                        throw e;
+                    }
+                });
+            }
+            tasks = streaming;
+        }
+        TraceRecorder t = tracer;
+        if (t != null) {
+            tasks = traceTasks(t, tasks, nodeId, type);
+        }
         if (!tasks.isEmpty()) {
-            executor.submitAll(tasks);
+            ExecutorJob j = job;
+            executor.submitAll(tasks, cancellation, j != null ? j : executor.getDefaultJob());
+        }
+        if (t != null) {
+            long end = System.nanoTime();
+            t.record("load", "phase", 0, start, loaded, TraceRecorder.args("node", nodeId));
+            t.record("compute", "phase", 0, loaded, end, TraceRecorder.args("node", nodeId, "tasks", tasks.size()));
+        }
+        return streamed;
+    }
+
+    private static List<Runnable> traceTasks(TraceRecorder t, List<Runnable> tasks, int nodeId, ComputationNodeType type) {
+        List<Runnable> traced = new ArrayList<>(tasks.size());
+        String name = type + " row";
+        for (int i = 0; i < tasks.size(); i++) {
+            final Runnable task = tasks.get(i);
+            final int rowIndex = i;
+            traced.add(() -> {
+                Thread current = Thread.currentThread();
+                int tid = 0;
+                if (current instanceof TiredThread) {
+                    TiredThread w = (TiredThread) current;
+                    tid = w.getWorkerId() + 1;
+                    t.nameThread(tid, "worker " + w.getWorkerId() + " (" + w.getName() + ")");
+                }
+                long start = System.nanoTime();
+                try {
+                    task.run();
+                } finally {
+                    t.record(name, "task", tid, start, System.nanoTime(),
+                            TraceRecorder.args("node", nodeId, "row", rowIndex));
+                }
+            });
         }
+        return traced;
+    }
 
+    /**
+     * A^k by repeated squaring: floor(log2 k) squarings plus one multiply per further set bit
+     * of k, each on the parallel row-multiply path. Intermediates go back to the buffer pool.
+     */
+    private double[][] power(double[][] base, int k, String node) {
+        double[][] result = null;
+        double[][] square = base;
+        try {
+            while (true) {
+                if ((k & 1) != 0) {
+                    if (result == null) {
+                        result = square;
+                    } else {
+                        double[][] next = multiply(result, square, node);
+                        releaseIntermediate(result, base, square);
+                        result = next;
+                    }
+                }
+                k >>>= 1;
+                if (k == 0) {
+                    break;
+                }
+                double[][] next = multiply(square, square, node);
+                releaseIntermediate(square, base, result);
+                square = next;
+            }
+            return result;
+        } finally {
+            releaseIntermediate(square, base, result);
+        }
+    }
+
+    private double[][] multiply(double[][] left, double[][] right, String node) {
+        leftMatrix.loadRowMajor(left);
+        rightMatrix.loadColumnMajor(right);
+        ExecutorJob j = job;
+        executor.submitAll(createMultiplyTasks(), cancellation, j != null ? j : executor.getDefaultJob());
+        double[][] product = leftMatrix.readRowMajor();
+        FreivaldsVerifier v = verifier;
+        if (v != null) {
+            verify(v, node, left, right, product);
+        }
+        return product;
+    }
+
+    private void verify(FreivaldsVerifier v, String node, double[][] left, double[][] right, double[][] product) {
+        ExecutorJob j = job;
+        v.verify(jobName + ": " + node, left, right, product, executor, cancellation,
+                j != null ? j : executor.getDefaultJob());
+    }
+
+    private static void releaseIntermediate(double[][] m, double[][] base, double[][] keep) {
+        if (m != null && m != base && m != keep) {
+            BufferPool.global().release(m);
+        }
     }
 
     public List<Runnable> createAddTasks() {
@@ -106,12 +800,17 @@ public class LinearAlgebraEngine {
         // TODO: return tasks that perform row × matrix multiplication
        List<Runnable> tasks = new ArrayList<>();
         int rows = leftMatrix.length();
+        CancellationToken token = cancellation;
+        // rows of a triangular or diagonal left operand are zero outside a known range
+        MatrixStructure left = leftMatrix.getStructure();
 
         for (int i = 0; i < rows; i++) {
             final int rowIndex = i;
+            final int from = left.isUpperTriangular() ? i : 0;
+            final int to = left.isLowerTriangular() ? i + 1 : Integer.MAX_VALUE;
             tasks.add(() -> {
                 SharedVector v1 = leftMatrix.get(rowIndex);
-                v1.vecMatMul(rightMatrix);
+                v1.vecMatMul(rightMatrix, from, to, token::isCancelled);
             });
         }
         return tasks;
@@ -152,4 +851,129 @@ public class LinearAlgebraEngine {
         if (executor == null) return "Executor not initialized";
         return executor.getWorkerReport();
     }
+
+    /**
+     * Shapes and cost estimates of the tree evaluated by the last run(), or null.
+     */
+    public ExecutionPlan getLastPlan() {
+        return lastPlan;
+    }
+
+    /**
+     * Sets the priority class the row tasks of the next run() compete with on the executor.
+     */
+    public void setPriority(JobPriority priority) {
+        if (priority == null) {
+            throw new IllegalArgumentException("Priority must not be null");
+        }
+        this.priority = priority;
+    }
+
+    public JobPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Names the job in the executor's worker report.
+     */
+    public void setJobName(String jobName) {
+        if (jobName == null) {
+            throw new IllegalArgumentException("Job name must not be null");
+        }
+        this.jobName = jobName;
+    }
+
+    /**
+     * Enables or disables sharing of structurally identical subtrees (on by default).
+     */
+    public void setCommonSubexpressionElimination(boolean enabled) {
+        this.cseEnabled = enabled;
+    }
+
+    /**
+     * Streams the root's rows to the writer as they are computed instead of building the result
+     * in memory; the root node then resolves to an empty matrix. The caller starts nothing: the
+     * engine calls start() once the row count is known, and the caller calls finish() after run().
+     * Pass null to disable.
+     */
+    public void setResultStream(RowStreamWriter stream) {
+        this.resultStream = stream;
+    }
+
+    /**
+     * Enables or disables row pipelining of row-local node chains (on by default). It is
+     * skipped while a result cache or checkpoint store is attached, as those need every
+     * intermediate result.
+     */
+    public void setRowPipelining(boolean enabled) {
+        this.rowPipelining = enabled;
+    }
+
+    /**
+     * Number of nodes the last run() evaluated inside a row pipeline without materialising them.
+     */
+    public int getPipelinedNodes() {
+        return pipelinedNodes;
+    }
+
+    /**
+     * Number of repeated subtrees the last run() evaluated only once.
+     */
+    public int getEliminatedSubtrees() {
+        return eliminatedSubtrees;
+    }
+
+    /**
+     * Attaches a result cache consulted before each node is evaluated; pass null to disable.
+     */
+    public void setResultCache(ResultCache cache) {
+        this.resultCache = cache;
+    }
+
+    /**
+     * Checks the product of every MULTIPLY node, and each multiply inside a POWER, with
+     * Freivalds' algorithm; mismatches are recorded on the verifier. Products are then always
+     * materialised, so row pipelining and streaming of multiply rows are skipped.
+     */
+    public void setVerifier(FreivaldsVerifier verifier) {
+        this.verifier = verifier;
+    }
+
+    public FreivaldsVerifier getVerifier() {
+        return verifier;
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Attaches a checkpoint store: every intermediate result is written to it asynchronously,
+     * and subtrees it already holds are loaded instead of evaluated. Pass null to disable.
+     */
+    public void setCheckpointStore(CheckpointStore store) {
+        this.checkpoints = store;
+    }
+
+    public CheckpointStore getCheckpointStore() {
+        return checkpoints;
+    }
+
+    /**
+     * Enables per-node and per-task span recording; pass null to disable.
+     */
+    public void setTracer(TraceRecorder tracer) {
+        this.tracer = tracer;
+        if (tracer != null) {
+            tracer.nameThread(0, "engine");
+        }
+    }
+
+    public TraceRecorder getTracer() {
+        return tracer;
+    }
+
+    public MetricsSnapshot getMetrics() {
+        return EngineMetrics.global().snapshot();
+    }
 }
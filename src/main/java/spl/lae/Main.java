@@ -1,10 +1,390 @@
 package spl.lae;
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
+import distributed.Coordinator;
+import distributed.LocalCluster;
 import parser.*;
+import scheduling.CancellationToken;
+import scheduling.TiredExecutor;
 
 public class Main {
+
+    private static final String USAGE =
+        "Usage:\n"
+      + "  Main <numThreads> <input.json> <output.json> [--timeout-ms MS] [--checkpoint DIR] [--stream] [--lazy] [--verify ROUNDS]\n"
+      + "  Main <numThreads> <input.json> <output.json> --ooc-mb MB [--scratch DIR] [--timeout-ms MS] [--lazy]\n"
+      + "  Main <numThreads> <input.json> <output.json> --workers N [--tile T]\n"
+      + "  Main <numThreads> --batch [--out-dir DIR] [--jobs N] [--cache-mb MB] [--timeout-ms MS] [--checkpoint DIR] [--stream] [--lazy] [--verify ROUNDS] <file|dir|glob>...\n"
+      + "  Main <numThreads> --serve [--port P] [--jobs N] [--queue N] [--cache-mb MB] [--timeout-ms MS] [--max-job-mb MB] [--max-threads N]\n"
+      + "  Main <numThreads> --plan <input.json>\n";
+
     public static void main(String[] args) throws IOException {
-      // TODO: main
+      try {
+        run(args);
+      } catch (IllegalArgumentException e) {
+        // unknown options, missing or malformed values (NumberFormatException included)
+        System.err.println(e.getMessage());
+        System.err.print(USAGE);
+        System.exit(2);
+      }
+    }
+
+    private static void run(String[] args) throws IOException {
+      if (args.length < 2) {
+        System.err.print(USAGE);
+        System.exit(2);
+      }
+      int numThreads;
+      try {
+        numThreads = Integer.parseInt(args[0]);
+      } catch (NumberFormatException e) {
+        System.err.println("numThreads must be an integer: " + args[0]);
+        System.err.print(USAGE);
+        System.exit(2);
+        return;
+      }
+
+      if ("--batch".equals(args[1])) {
+        System.exit(runBatch(numThreads, args));
+      }
+      if ("--serve".equals(args[1])) {
+        runServer(numThreads, args);
+        return;
+      }
+      if ("--plan".equals(args[1])) {
+        System.exit(printPlan(new File(requireValue(args, 2))));
+      }
+      if (args.length < 3) {
+        System.err.print(USAGE);
+        System.exit(2);
+      }
+      long oocBudget = 0;
+      long timeoutMillis = 0;
+      int workers = 0;
+      int tileSize = 256;
+      File checkpointDir = null;
+      boolean stream = false;
+      boolean lazy = false;
+      FreivaldsVerifier verifier = null;
+      File scratch = new File(System.getProperty("java.io.tmpdir"));
+      List<String> given = new ArrayList<>();
+      for (int i = 3; i < args.length; i++) {
+        given.add(args[i]);
+        switch (args[i]) {
+          case "--workers":
+            workers = Integer.parseInt(requireValue(args, ++i));
+            break;
+          case "--tile":
+            tileSize = Integer.parseInt(requireValue(args, ++i));
+            break;
+          case "--ooc-mb":
+            oocBudget = Long.parseLong(requireValue(args, ++i)) * 1024 * 1024;
+            break;
+          case "--scratch":
+            scratch = new File(requireValue(args, ++i));
+            break;
+          case "--timeout-ms":
+            timeoutMillis = Long.parseLong(requireValue(args, ++i));
+            break;
+          case "--checkpoint":
+            checkpointDir = new File(requireValue(args, ++i));
+            break;
+          case "--stream":
+            stream = true;
+            break;
+          case "--lazy":
+            lazy = true;
+            break;
+          case "--verify":
+            verifier = new FreivaldsVerifier(Integer.parseInt(requireValue(args, ++i)));
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown option: " + args[i]);
+        }
+      }
+      if (workers > 0) {
+        rejectOptions("--workers", given, "--verify", "--stream", "--checkpoint", "--timeout-ms", "--lazy",
+            "--ooc-mb", "--scratch");
+        System.exit(runDistributed(numThreads, new File(args[1]), new File(args[2]), workers, tileSize));
+      }
+      if (given.contains("--tile")) {
+        throw new IllegalArgumentException("--tile requires --workers");
+      }
+      if (oocBudget > 0) {
+        // the tiled result is always written band by band
+        rejectOptions("--ooc-mb", given, "--verify", "--stream", "--checkpoint");
+        System.exit(runOutOfCore(numThreads, new File(args[1]), new File(args[2]), oocBudget, scratch, timeoutMillis));
+      }
+      if (given.contains("--scratch")) {
+        throw new IllegalArgumentException("--scratch requires --ooc-mb");
+      }
+      System.exit(runSingle(numThreads, new File(args[1]), new File(args[2]), timeoutMillis, checkpointDir, stream, lazy, verifier));
+    }
+
+    /**
+     * Fails with a usage error if one of the unsupported options was given together with mode,
+     * rather than accepting and ignoring it.
+     */
+    private static void rejectOptions(String mode, List<String> given, String... unsupported) {
+      for (String option : unsupported) {
+        if (given.contains(option)) {
+          throw new IllegalArgumentException(option + " cannot be combined with " + mode);
+        }
+      }
+    }
+
+    private static int printPlan(File input) {
+      try {
+        ComputationNode root = new InputParser().parse(input.getPath());
+        ExecutionPlanner.rewritePowers(root);
+        root.associativeNesting();
+        System.out.print(ExecutionPlanner.plan(root).format());
+        return 0;
+      } catch (Exception e) {
+        System.err.println(input + ": " + e.getMessage());
+        return 1;
+      }
+    }
+
+    /**
+     * Runs the job on worker JVMs launched on this host, numThreads threads each.
+     */
+    private static int runDistributed(int numThreads, File input, File output, int workers, int tileSize) throws IOException {
+      try (LocalCluster cluster = LocalCluster.start(workers, numThreads);
+           Coordinator coordinator = new Coordinator(cluster.getAddresses(), tileSize)) {
+        ComputationNode root = new InputParser().parse(input.getPath());
+        OutputWriter.write(coordinator.run(root), output.getPath());
+        System.err.print(coordinator.getReport());
+        return 0;
+      } catch (Exception e) {
+        OutputWriter.write(e.getMessage() == null ? e.toString() : e.getMessage(), output.getPath());
+        System.err.println(input + ": " + e.getMessage());
+        return 1;
+      }
+    }
+
+    private static int runOutOfCore(int numThreads, File input, File output, long budget, File scratch,
+                                    long timeoutMillis) throws IOException {
+      TiredExecutor executor = new TiredExecutor(numThreads);
+      CancellationToken token = CancellationToken.withTimeout(timeoutMillis);
+      try (OutOfCoreEngine engine = OutOfCoreEngine.withMemoryBudget(executor, scratch.toPath(), budget)) {
+        // leaves are decoded band by band while they are spilled, never as a whole
+        ComputationNode root = new InputParser(executor).parseLazy(input.getPath());
+        try (memory.TiledMatrix result = engine.evaluate(root, token)) {
+          OutputWriter.write(result, output.getPath());
+        }
+        return 0;
+      } catch (Exception e) {
+        OutputWriter.write(e.getMessage() == null ? e.toString() : e.getMessage(), output.getPath());
+        System.err.println(input + ": " + e.getMessage());
+        return 1;
+      } finally {
+        shutdownQuietly(executor);
+      }
+    }
+
+    private static int runSingle(int numThreads, File input, File output, long timeoutMillis, File checkpointDir,
+                                 boolean stream, boolean lazy, FreivaldsVerifier verifier) {
+      TiredExecutor executor = new TiredExecutor(numThreads);
+      CheckpointStore store = checkpointDir == null ? null : new CheckpointStore(checkpointDir.toPath());
+      try {
+        BatchRunner runner = new BatchRunner(executor, 1, null, null);
+        runner.setTimeoutMillis(timeoutMillis);
+        runner.setCheckpointStore(store);
+        runner.setStreamOutput(stream);
+        runner.setLazyLeaves(lazy);
+        runner.setVerifier(verifier);
+        BatchRunner.JobResult r = runner.runOne(input, output);
+        if (!r.ok) {
+          System.err.println(r);
+        }
+        return r.ok && report(verifier) ? 0 : 1;
+      } finally {
+        closeQuietly(store);
+        shutdownQuietly(executor);
+      }
+    }
+
+    /**
+     * Prints the verifier's summary and each failed product; returns whether all passed.
+     */
+    private static boolean report(FreivaldsVerifier verifier) {
+      if (verifier == null) {
+        return true;
+      }
+      System.err.println(verifier.getStats());
+      List<FreivaldsVerifier.Failure> failed = verifier.getFailures();
+      for (FreivaldsVerifier.Failure f : failed) {
+        System.err.println("Verification failed: " + f);
+      }
+      return failed.isEmpty();
+    }
+
+    private static void closeQuietly(CheckpointStore store) {
+      if (store == null) {
+        return;
+      }
+      try {
+        store.close();
+        System.err.println(store.getStats());
+      } catch (RuntimeException e) {
+        System.err.println(e.getMessage());
+      }
+    }
+
+    private static int runBatch(int numThreads, String[] args) throws IOException {
+      File outDir = null;
+      int jobs = Math.max(1, Math.min(4, numThreads));
+      ResultCache cache = null;
+      long timeoutMillis = 0;
+      CheckpointStore store = null;
+      boolean stream = false;
+      boolean lazy = false;
+      FreivaldsVerifier verifier = null;
+      List<String> specs = new ArrayList<>();
+
+      for (int i = 2; i < args.length; i++) {
+        switch (args[i]) {
+          case "--out-dir":
+            outDir = new File(requireValue(args, ++i));
+            if (!outDir.isDirectory() && !outDir.mkdirs()) {
+              throw new IOException("Cannot create output directory " + outDir);
+            }
+            break;
+          case "--jobs":
+            jobs = Integer.parseInt(requireValue(args, ++i));
+            break;
+          case "--cache-mb":
+            cache = new ResultCache(Long.parseLong(requireValue(args, ++i)) * 1024 * 1024);
+            break;
+          case "--timeout-ms":
+            timeoutMillis = Long.parseLong(requireValue(args, ++i));
+            break;
+          case "--checkpoint":
+            store = new CheckpointStore(new File(requireValue(args, ++i)).toPath());
+            break;
+          case "--stream":
+            stream = true;
+            break;
+          case "--lazy":
+            lazy = true;
+            break;
+          case "--verify":
+            verifier = new FreivaldsVerifier(Integer.parseInt(requireValue(args, ++i)));
+            break;
+          default:
+            specs.add(args[i]);
+        }
+      }
+
+      List<File> inputs = BatchRunner.expandInputs(specs);
+      if (inputs.isEmpty()) {
+        System.err.println("No input files matched");
+        return 2;
+      }
+
+      TiredExecutor executor = new TiredExecutor(numThreads);
+      long start = System.nanoTime();
+      int failures = 0;
+      try {
+        BatchRunner runner = new BatchRunner(executor, jobs, outDir, cache);
+        runner.setTimeoutMillis(timeoutMillis);
+        runner.setCheckpointStore(store);
+        runner.setStreamOutput(stream);
+        runner.setLazyLeaves(lazy);
+        runner.setVerifier(verifier);
+        for (BatchRunner.JobResult r : runner.runAll(inputs)) {
+          System.out.println(r);
+          if (!r.ok) failures++;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        System.err.println("Batch interrupted");
+        return 1;
+      } finally {
+        closeQuietly(store);
+        shutdownQuietly(executor);
+      }
+
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.println(String.format(Locale.US, "%d files, %d failed, %.2fs total, %.2f files/s",
+          inputs.size(), failures, seconds, inputs.size() / seconds));
+      if (cache != null) {
+        System.out.println(cache.getStats());
+      }
+      boolean verified = report(verifier);
+      return failures == 0 && verified ? 0 : 1;
+    }
+
+    private static void runServer(int numThreads, String[] args) throws IOException {
+      int port = 7070;
+      int jobs = Math.max(1, Math.min(4, numThreads));
+      int queue = 64;
+      ResultCache cache = null;
+      long timeoutMillis = 0;
+      long maxJobBytes = 0;
+      int maxThreads = numThreads;
+
+      for (int i = 2; i < args.length; i++) {
+        switch (args[i]) {
+          case "--max-threads":
+            maxThreads = Integer.parseInt(requireValue(args, ++i));
+            break;
+          case "--max-job-mb":
+            maxJobBytes = Long.parseLong(requireValue(args, ++i)) * 1024 * 1024;
+            break;
+          case "--port":
+            port = Integer.parseInt(requireValue(args, ++i));
+            break;
+          case "--jobs":
+            jobs = Integer.parseInt(requireValue(args, ++i));
+            break;
+          case "--queue":
+            queue = Integer.parseInt(requireValue(args, ++i));
+            break;
+          case "--cache-mb":
+            cache = new ResultCache(Long.parseLong(requireValue(args, ++i)) * 1024 * 1024);
+            break;
+          case "--timeout-ms":
+            timeoutMillis = Long.parseLong(requireValue(args, ++i));
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown option: " + args[i]);
+        }
+      }
+
+      // with --max-threads the pool grows under load and shrinks back after 30s idle
+      TiredExecutor executor = new TiredExecutor(numThreads, Math.max(numThreads, maxThreads), 30_000);
+      JobServer server = new JobServer(port, executor, jobs, queue, cache);
+      server.setDefaultTimeoutMillis(timeoutMillis);
+      server.setMaxJobBytes(maxJobBytes);
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        try {
+          server.close();
+        } catch (IOException ignored) {
+          // exiting anyway
+        }
+        shutdownQuietly(executor);
+      }));
+      System.out.println("Listening on 127.0.0.1:" + server.getPort());
+    }
+
+    private static String requireValue(String[] args, int i) {
+      if (i >= args.length) {
+        throw new IllegalArgumentException("Missing value for " + args[i - 1]);
+      }
+      return args[i];
+    }
+
+    private static void shutdownQuietly(TiredExecutor executor) {
+      try {
+        executor.shutdown();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
     }
-}
\ No newline at end of file
+}
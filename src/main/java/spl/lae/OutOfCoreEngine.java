@@ -0,0 +1,481 @@
+package spl.lae;
+
+import memory.TiledMatrix;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+import parser.LazyMatrix;
+import scheduling.CancellationToken;
+import scheduling.TiredExecutor;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Evaluates expression trees on {@link TiledMatrix} operands stored in scratch files, streaming
+ * tiles through a bounded memory budget. Each output tile is one task on the TiredExecutor;
+ * MULTIPLY tasks walk the shared dimension tile by tile and prefetch the next pair of operand
+ * tiles on a separate I/O pool, so disk reads overlap with the multiply-accumulate.
+ *
+ * Budget: every running task holds at most five tiles (output, two operands, two prefetched),
+ * so tileSize is chosen such that workers * 5 * tileSize^2 * 8 bytes fits in the budget.
+ * Leaves parsed lazily (InputParser.parseLazy) are decoded and spilled one band of rows at a
+ * time, so an input matrix is never on the heap as a whole. A band holds at most tileSize rows
+ * and no more values than those tiles (workers * 5 * tileSize^2), so very wide matrices are
+ * spilled a few rows at a time; a single row is the lower bound.
+ */
+public class OutOfCoreEngine implements AutoCloseable {
+
+    private static final int TILES_PER_TASK = 5;
+    private static final int MIN_TILE = 16;
+    private static final int MAX_TILE = 4096;
+
+    private final TiredExecutor executor;
+    private final Path scratchDir;
+    private final int tileSize;
+    private final ExecutorService io;
+    private CancellationToken cancellation = new CancellationToken(); // token of the current evaluate()
+    // per evaluate(): parents that have yet to consume a node, and tiles of nodes with several parents
+    private Map<ComputationNode, Integer> pendingUses = new IdentityHashMap<>();
+    private final Map<ComputationNode, TiledMatrix> sharedTiles = new IdentityHashMap<>();
+    private int spilledLeaves = 0;
+
+    public OutOfCoreEngine(TiredExecutor executor, Path scratchDir, int tileSize) {
+        if (executor == null) throw new IllegalArgumentException("executor must not be null");
+        if (scratchDir == null) throw new IllegalArgumentException("scratchDir must not be null");
+        if (tileSize <= 0) throw new IllegalArgumentException("tileSize must be > 0");
+        this.executor = executor;
+        this.scratchDir = scratchDir;
+        this.tileSize = tileSize;
+        this.io = Executors.newFixedThreadPool(Math.max(2, executor.getWorkerCount() / 2), r -> {
+            Thread t = new Thread(r, "tile-prefetch");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Creates an engine whose tile size keeps all running tasks within memoryBudgetBytes.
+     */
+    public static OutOfCoreEngine withMemoryBudget(TiredExecutor executor, Path scratchDir, long memoryBudgetBytes) {
+        if (executor == null) throw new IllegalArgumentException("executor must not be null");
+        return new OutOfCoreEngine(executor, scratchDir, tileSizeFor(memoryBudgetBytes, executor.getWorkerCount()));
+    }
+
+    static int tileSizeFor(long memoryBudgetBytes, int workers) {
+        if (memoryBudgetBytes <= 0) {
+            throw new IllegalArgumentException("memoryBudgetBytes must be > 0");
+        }
+        double perTile = (double) memoryBudgetBytes / ((long) TILES_PER_TASK * Math.max(1, workers) * Double.BYTES);
+        int t = (int) Math.floor(Math.sqrt(perTile));
+        return Math.max(MIN_TILE, Math.min(MAX_TILE, t));
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Leaves written to tiles by the last evaluate(); a leaf used by several parents counts once.
+     */
+    public int getSpilledLeaves() {
+        return spilledLeaves;
+    }
+
+    /**
+     * Evaluates the tree; leaf matrices are spilled to tiles when their parent is evaluated.
+     * The caller owns (and must close) the returned matrix.
+     */
+    public TiledMatrix evaluate(ComputationNode root) {
+        return evaluate(root, new CancellationToken());
+    }
+
+    /**
+     * Evaluates the tree, giving up with a CancellationException once the token is cancelled.
+     * Tokens are checked between tiles, and between shared-dimension steps of a MULTIPLY tile.
+     */
+    public TiledMatrix evaluate(ComputationNode root, CancellationToken token) {
+        if (token == null) throw new IllegalArgumentException("token must not be null");
+        this.cancellation = token;
+        ExecutionPlanner.rewritePowers(root);
+        root.associativeNesting();
+        ExecutionPlanner.plan(root); // reject bad shapes before anything is spilled to disk
+        pendingUses = new IdentityHashMap<>();
+        countUses(root);
+        spilledLeaves = 0;
+        try {
+            return eval(root);
+        } finally {
+            for (TiledMatrix t : sharedTiles.values()) {
+                t.close(); // only left over when evaluation failed
+            }
+            sharedTiles.clear();
+        }
+    }
+
+    private void countUses(ComputationNode node) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            return;
+        }
+        for (ComputationNode child : node.getChildren()) {
+            if (pendingUses.merge(child, 1, Integer::sum) == 1) {
+                countUses(child);
+            }
+        }
+    }
+
+    private TiledMatrix eval(ComputationNode node) {
+        cancellation.throwIfCancelled();
+        if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            return spill(node);
+        }
+        List<ComputationNode> children = node.getChildren();
+        List<TiledMatrix> operands = new ArrayList<>();
+        TiledMatrix result = null;
+        try {
+            for (ComputationNode child : children) {
+                operands.add(operand(child));
+            }
+            result = apply(node, operands);
+            return result;
+        } finally {
+            for (int i = 0; i < operands.size(); i++) {
+                release(children.get(i), operands.get(i), result);
+            }
+        }
+    }
+
+    /**
+     * Writes a leaf to tiles. A lazy leaf is decoded band by band (see bandRows()) and its
+     * matrix dropped; other leaves belong to the caller.
+     */
+    private TiledMatrix spill(ComputationNode leaf) {
+        spilledLeaves++;
+        LazyMatrix lazy = leaf.getLazySource();
+        if (lazy == null) {
+            return TiledMatrix.fromArray(leaf.getMatrix(), scratchDir, tileSize);
+        }
+        leaf.releaseMatrix(); // in case it was decoded before; the tiles are the copy from now on
+        TiledMatrix t = TiledMatrix.create(scratchDir, lazy.getRows(), lazy.getCols(), tileSize);
+        try {
+            int band = bandRows(lazy.getCols());
+            for (int from = 0; from < lazy.getRows(); from += band) {
+                cancellation.throwIfCancelled();
+                t.writeRows(from, lazy.decodeRows(from, Math.min(lazy.getRows(), from + band), cancellation, null));
+            }
+        } catch (RuntimeException e) {
+            t.close();
+            throw e;
+        }
+        return t;
+    }
+
+    /**
+     * Rows of a cols-wide matrix that fit in the tiles budget of the running tasks, between 1
+     * and tileSize.
+     */
+    int bandRows(int cols) {
+        long budget = (long) TILES_PER_TASK * Math.max(1, executor.getWorkerCount()) * tileSize * tileSize;
+        return (int) Math.max(1, Math.min(tileSize, budget / Math.max(1, cols)));
+    }
+
+    /**
+     * Tiles of a child, evaluated (or spilled) only once however many parents share it.
+     */
+    private TiledMatrix operand(ComputationNode child) {
+        TiledMatrix t = sharedTiles.get(child);
+        if (t == null) {
+            t = eval(child);
+            if (pendingUses.getOrDefault(child, 1) > 1) {
+                sharedTiles.put(child, t);
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Called when a parent is done with a child's tiles; closes them after the last parent,
+     * unless they became the parent's result (A ^ 1).
+     */
+    private void release(ComputationNode child, TiledMatrix t, TiledMatrix result) {
+        int left = pendingUses.merge(child, -1, Integer::sum);
+        if (left > 0 && sharedTiles.get(child) == t) {
+            return; // another parent still needs them
+        }
+        sharedTiles.remove(child);
+        if (t != result) {
+            t.close(); // intermediates are consumed by their parent
+        }
+    }
+
+    private TiledMatrix apply(ComputationNode node, List<TiledMatrix> operands) {
+        switch (node.getNodeType()) {
+            case ADD:
+                requireArity(node, 2);
+                return add(operands.get(0), operands.get(1));
+            case MULTIPLY:
+                requireArity(node, 2);
+                return multiply(operands.get(0), operands.get(1));
+            case NEGATE:
+                requireArity(node, 1);
+                return negate(operands.get(0));
+            case TRANSPOSE:
+                requireArity(node, 1);
+                return transpose(operands.get(0));
+            case POWER: {
+                requireArity(node, 1);
+                TiledMatrix result = power(operands.get(0), node.getExponent());
+                if (result == operands.get(0) && sharedTiles.get(node.getChildren().get(0)) == result) {
+                    result = copy(result); // A ^ 1 of a shared operand needs tiles of its own
+                }
+                return result;
+            }
+            default:
+                throw new UnsupportedOperationException("Unsupported operation: " + node.getNodeType());
+        }
+    }
+
+    private static void requireArity(ComputationNode node, int n) {
+        if (node.getChildren().size() != n) {
+            throw new IllegalArgumentException(node.getNodeType() + " requires " + n + " operand" + (n == 1 ? "" : "s"));
+        }
+    }
+
+    // ---------- tiled operations ----------
+
+    public TiledMatrix add(TiledMatrix a, TiledMatrix b) {
+        checkTiling(a);
+        checkTiling(b);
+        if (a.rows() != b.rows() || a.cols() != b.cols()) {
+            throw new IllegalArgumentException("ADD dimension mismatch: " + a.rows() + "x" + a.cols()
+                    + " vs " + b.rows() + "x" + b.cols());
+        }
+        TiledMatrix out = TiledMatrix.create(scratchDir, a.rows(), a.cols(), tileSize);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int ti = 0; ti < out.tileRowCount(); ti++) {
+            for (int tj = 0; tj < out.tileColCount(); tj++) {
+                final int i = ti;
+                final int j = tj;
+                tasks.add(() -> {
+                    CompletableFuture<double[]> right = CompletableFuture.supplyAsync(() -> b.readTile(i, j), io);
+                    double[] x = a.readTile(i, j);
+                    double[] y = join(right);
+                    for (int k = 0; k < x.length; k++) {
+                        x[k] += y[k];
+                    }
+                    out.writeTile(i, j, x);
+                });
+            }
+        }
+        run(tasks, out);
+        return out;
+    }
+
+    public TiledMatrix negate(TiledMatrix a) {
+        checkTiling(a);
+        TiledMatrix out = TiledMatrix.create(scratchDir, a.rows(), a.cols(), tileSize);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int ti = 0; ti < out.tileRowCount(); ti++) {
+            for (int tj = 0; tj < out.tileColCount(); tj++) {
+                final int i = ti;
+                final int j = tj;
+                tasks.add(() -> {
+                    double[] x = a.readTile(i, j);
+                    for (int k = 0; k < x.length; k++) {
+                        x[k] = -x[k];
+                    }
+                    out.writeTile(i, j, x);
+                });
+            }
+        }
+        run(tasks, out);
+        return out;
+    }
+
+    private TiledMatrix copy(TiledMatrix a) {
+        TiledMatrix out = TiledMatrix.create(scratchDir, a.rows(), a.cols(), tileSize);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int ti = 0; ti < out.tileRowCount(); ti++) {
+            for (int tj = 0; tj < out.tileColCount(); tj++) {
+                final int i = ti;
+                final int j = tj;
+                tasks.add(() -> out.writeTile(i, j, a.readTile(i, j)));
+            }
+        }
+        run(tasks, out);
+        return out;
+    }
+
+    public TiledMatrix transpose(TiledMatrix a) {
+        checkTiling(a);
+        TiledMatrix out = TiledMatrix.create(scratchDir, a.cols(), a.rows(), tileSize);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int ti = 0; ti < out.tileRowCount(); ti++) {
+            for (int tj = 0; tj < out.tileColCount(); tj++) {
+                final int i = ti;
+                final int j = tj;
+                tasks.add(() -> {
+                    // out tile (i, j) is the transpose of input tile (j, i)
+                    double[] x = a.readTile(j, i);
+                    int h = a.tileHeight(j);
+                    int w = a.tileWidth(i);
+                    double[] t = new double[x.length];
+                    for (int r = 0; r < h; r++) {
+                        for (int c = 0; c < w; c++) {
+                            t[c * h + r] = x[r * w + c];
+                        }
+                    }
+                    out.writeTile(i, j, t);
+                });
+            }
+        }
+        run(tasks, out);
+        return out;
+    }
+
+    /**
+     * A^k by repeated squaring, closing intermediates as soon as they are consumed.
+     * Returns a itself for k == 1; otherwise a stays open and owned by the caller.
+     */
+    public TiledMatrix power(TiledMatrix a, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("Exponent must be positive, got " + k);
+        }
+        if (a.rows() != a.cols()) {
+            throw new IllegalArgumentException("POWER needs a square matrix, got " + a.rows() + "x" + a.cols());
+        }
+        TiledMatrix result = null;
+        TiledMatrix square = a;
+        boolean done = false;
+        try {
+            while (true) {
+                if ((k & 1) != 0) {
+                    if (result == null) {
+                        result = square;
+                    } else {
+                        TiledMatrix next = multiply(result, square);
+                        closeIntermediate(result, a, square);
+                        result = next;
+                    }
+                }
+                k >>>= 1;
+                if (k == 0) {
+                    break;
+                }
+                TiledMatrix next = multiply(square, square);
+                closeIntermediate(square, a, result);
+                square = next;
+            }
+            done = true;
+            return result;
+        } finally {
+            closeIntermediate(square, a, result);
+            if (!done) {
+                closeIntermediate(result, a, null);
+            }
+        }
+    }
+
+    private static void closeIntermediate(TiledMatrix t, TiledMatrix input, TiledMatrix keep) {
+        if (t != null && t != input && t != keep) {
+            t.close();
+        }
+    }
+
+    public TiledMatrix multiply(TiledMatrix a, TiledMatrix b) {
+        checkTiling(a);
+        checkTiling(b);
+        if (a.cols() != b.rows()) {
+            throw new IllegalArgumentException("MULTIPLY dimension mismatch: " + a.rows() + "x" + a.cols()
+                    + " * " + b.rows() + "x" + b.cols());
+        }
+        TiledMatrix out = TiledMatrix.create(scratchDir, a.rows(), b.cols(), tileSize);
+        int kTiles = a.tileColCount();
+        CancellationToken token = cancellation;
+        List<Runnable> tasks = new ArrayList<>();
+        for (int ti = 0; ti < out.tileRowCount(); ti++) {
+            for (int tj = 0; tj < out.tileColCount(); tj++) {
+                final int i = ti;
+                final int j = tj;
+                tasks.add(() -> {
+                    int h = out.tileHeight(i);
+                    int w = out.tileWidth(j);
+                    double[] c = new double[h * w];
+                    if (kTiles > 0) {
+                        CompletableFuture<double[][]> next = fetchPair(a, b, i, 0, j);
+                        for (int k = 0; k < kTiles; k++) {
+                            token.throwIfCancelled();
+                            double[][] pair = join(next);
+                            if (k + 1 < kTiles) {
+                                next = fetchPair(a, b, i, k + 1, j);
+                            }
+                            multiplyAccumulate(pair[0], pair[1], c, h, a.tileWidth(k), w);
+                        }
+                    }
+                    out.writeTile(i, j, c);
+                });
+            }
+        }
+        run(tasks, out);
+        return out;
+    }
+
+    private CompletableFuture<double[][]> fetchPair(TiledMatrix a, TiledMatrix b, int i, int k, int j) {
+        return CompletableFuture.supplyAsync(() -> new double[][]{a.readTile(i, k), b.readTile(k, j)}, io);
+    }
+
+    private static void multiplyAccumulate(double[] a, double[] b, double[] c, int h, int inner, int w) {
+        // i-k-j order keeps the inner loop on contiguous rows of b and c
+        for (int i = 0; i < h; i++) {
+            int cRow = i * w;
+            int aRow = i * inner;
+            for (int k = 0; k < inner; k++) {
+                double aik = a[aRow + k];
+                int bRow = k * w;
+                for (int j = 0; j < w; j++) {
+                    c[cRow + j] += aik * b[bRow + j];
+                }
+            }
+        }
+    }
+
+    private void run(List<Runnable> tasks, TiledMatrix out) {
+        try {
+            executor.submitAll(tasks, cancellation);
+        } catch (RuntimeException | Error e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    private void checkTiling(TiledMatrix m) {
+        if (m.tileSize() != tileSize) {
+            throw new IllegalArgumentException("Operand tile size " + m.tileSize() + " does not match engine tile size " + tileSize);
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> f) {
+        try {
+            return f.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Stops the prefetch pool. The TiredExecutor is not owned and stays running.
+     */
+    @Override
+    public void close() {
+        io.shutdown();
+    }
+}
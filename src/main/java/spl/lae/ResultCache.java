@@ -0,0 +1,122 @@
+package spl.lae;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Size-bounded LRU cache of evaluated subtree results, shared across runs in the same process.
+ * Entries are weighed by their payload size (rows * cols * 8 bytes) and stored as private
+ * copies, so callers may freely mutate what they put in or get out.
+ */
+public class ResultCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<SubtreeKey, double[][]> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long sizeBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public ResultCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be > 0");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a copy of the cached result, or null on a miss.
+     */
+    public synchronized double[][] get(SubtreeKey key) {
+        double[][] m = entries.get(key);
+        if (m == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return copy(m);
+    }
+
+    public synchronized boolean contains(SubtreeKey key) {
+        return entries.containsKey(key);
+    }
+
+    public synchronized void put(SubtreeKey key, double[][] matrix) {
+        long weight = weigh(matrix);
+        if (weight > maxBytes) {
+            return; // would evict everything else and still not fit
+        }
+        double[][] previous = entries.put(key, copy(matrix));
+        if (previous != null) {
+            sizeBytes -= weigh(previous);
+        }
+        sizeBytes += weight;
+
+        Iterator<Map.Entry<SubtreeKey, double[][]>> it = entries.entrySet().iterator();
+        while (sizeBytes > maxBytes && it.hasNext()) {
+            Map.Entry<SubtreeKey, double[][]> eldest = it.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            sizeBytes -= weigh(eldest.getValue());
+            it.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        sizeBytes = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized String getStats() {
+        long lookups = hits + misses;
+        return String.format(Locale.US,
+                "ResultCache: entries=%d, size=%d/%d bytes, hits=%d, misses=%d, hitRate=%.1f%%, evictions=%d",
+                entries.size(), sizeBytes, maxBytes, hits, misses,
+                lookups == 0 ? 0.0 : 100.0 * hits / lookups, evictions);
+    }
+
+    private static long weigh(double[][] m) {
+        long cells = 0;
+        for (double[] row : m) {
+            cells += row.length;
+        }
+        return cells * Double.BYTES;
+    }
+
+    private static double[][] copy(double[][] m) {
+        double[][] out = new double[m.length][];
+        for (int i = 0; i < m.length; i++) {
+            out[i] = m[i].clone();
+        }
+        return out;
+    }
+}
@@ -0,0 +1,115 @@
+package spl.lae;
+
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+import parser.LazyMatrix;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 128-bit structural fingerprint of a computation subtree.
+ * Leaves are fingerprinted by shape and content, operation nodes by their type and the
+ * ordered fingerprints of their operands, so equal keys mean equal results.
+ * Keys do not reference the matrices they were computed from.
+ */
+public final class SubtreeKey {
+
+    private final long hi;
+    private final long lo;
+
+    private SubtreeKey(long hi, long lo) {
+        this.hi = hi;
+        this.lo = lo;
+    }
+
+    /**
+     * Fingerprints every node of the tree rooted at root (shared nodes are visited once).
+     */
+    public static Map<ComputationNode, SubtreeKey> computeAll(ComputationNode root) {
+        Map<ComputationNode, SubtreeKey> keys = new IdentityHashMap<>();
+        compute(root, keys);
+        return keys;
+    }
+
+    private static SubtreeKey compute(ComputationNode node, Map<ComputationNode, SubtreeKey> keys) {
+        SubtreeKey known = keys.get(node);
+        if (known != null) {
+            return known;
+        }
+        SubtreeKey key;
+        if (node.getNodeType() == ComputationNodeType.MATRIX && node.getLazySource() != null) {
+            key = ofLazy(node.getLazySource());
+        } else if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            key = ofMatrix(node.getMatrix());
+        } else {
+            long hi = mix(0x9E3779B97F4A7C15L ^ node.getNodeType().ordinal());
+            long lo = mix(0xC2B2AE3D27D4EB4FL + node.getNodeType().ordinal());
+            if (node.getNodeType() == ComputationNodeType.POWER) {
+                hi = mix(hi + node.getExponent());
+                lo = mix(lo ^ ((long) node.getExponent() << 21));
+            }
+            List<ComputationNode> children = node.getChildren();
+            for (ComputationNode child : children) {
+                SubtreeKey c = compute(child, keys);
+                hi = mix(hi * 31 + c.hi);
+                lo = mix(lo ^ Long.rotateLeft(c.lo, 17)) + 0x632BE59BD9B4E019L;
+            }
+            key = new SubtreeKey(hi, lo);
+        }
+        keys.put(node, key);
+        return key;
+    }
+
+    public static SubtreeKey ofMatrix(double[][] matrix) {
+        int rows = matrix.length;
+        int cols = rows == 0 ? 0 : matrix[0].length;
+        long hi = mix(0x2545F4914F6CDD1DL ^ ((long) rows << 32 | cols));
+        long lo = mix(0x6A09E667F3BCC909L + ((long) cols << 32 | rows));
+        for (double[] row : matrix) {
+            for (double v : row) {
+                // +0.0 and -0.0 compare equal as results, normalise them
+                long bits = Double.doubleToLongBits(v == 0.0 ? 0.0 : v);
+                hi = (hi ^ bits) * 0x100000001B3L;
+                lo = Long.rotateLeft(lo + bits * 0x9E3779B97F4A7C15L, 31) * 0xBF58476D1CE4E5B9L;
+            }
+        }
+        return new SubtreeKey(mix(hi), mix(lo));
+    }
+
+    /**
+     * Keys a lazy leaf by the bytes of its literal, so it need not be decoded. Such keys never
+     * equal ofMatrix() keys, even for the same values.
+     */
+    public static SubtreeKey ofLazy(LazyMatrix lazy) {
+        long shape = (long) lazy.getRows() << 32 | lazy.getCols();
+        return new SubtreeKey(mix(0x3C6EF372FE94F82BL ^ lazy.getHashHi() ^ mix(shape)),
+                mix(0xA54FF53A5F1D36F1L + lazy.getHashLo() + shape));
+    }
+
+    private static long mix(long z) {
+        // SplitMix64 finaliser
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SubtreeKey)) return false;
+        SubtreeKey other = (SubtreeKey) o;
+        return hi == other.hi && lo == other.lo;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hi ^ (hi >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", hi, lo);
+    }
+}
@@ -0,0 +1,128 @@
+package distributed;
+
+import org.junit.jupiter.api.Test;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CoordinatorTest {
+
+    private static double[][] random(Random rnd, int rows, int cols) {
+        double[][] m = new double[rows][cols];
+        for (double[] row : m) {
+            for (int j = 0; j < cols; j++) row[j] = rnd.nextInt(9) - 4;
+        }
+        return m;
+    }
+
+    private static ComputationNode op(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, new ArrayList<>(List.of(children)));
+    }
+
+    private static double[][] multiply(double[][] a, double[][] b) {
+        double[][] c = new double[a.length][b[0].length];
+        for (int i = 0; i < a.length; i++)
+            for (int k = 0; k < b.length; k++)
+                for (int j = 0; j < b[0].length; j++) c[i][j] += a[i][k] * b[k][j];
+        return c;
+    }
+
+    private static double[][] add(double[][] a, double[][] b) {
+        double[][] c = new double[a.length][a[0].length];
+        for (int i = 0; i < a.length; i++)
+            for (int j = 0; j < a[0].length; j++) c[i][j] = a[i][j] + b[i][j];
+        return c;
+    }
+
+    private static void assertMatrix(double[][] expected, double[][] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) assertArrayEquals(expected[i], actual[i], 1e-9, "row " + i);
+    }
+
+    private static List<InetSocketAddress> addresses(WorkerNode... nodes) {
+        List<InetSocketAddress> out = new ArrayList<>();
+        for (WorkerNode n : nodes) out.add(new InetSocketAddress("127.0.0.1", n.getPort()));
+        return out;
+    }
+
+    @Test
+    void chainOfProducts_matchesLocalResult() throws Exception {
+        Random rnd = new Random(1);
+        double[][] a = random(rnd, 23, 17), b = random(rnd, 17, 30), c = random(rnd, 23, 30);
+        try (WorkerNode w1 = WorkerNode.start(0, 2); WorkerNode w2 = WorkerNode.start(0, 2);
+             Coordinator coordinator = new Coordinator(addresses(w1, w2), 8)) {
+            // A * B + C, then T(that) * (A * B + C) to reuse result tiles
+            ComputationNode sum = op(ComputationNodeType.ADD,
+                    op(ComputationNodeType.MULTIPLY, new ComputationNode(a), new ComputationNode(b)),
+                    new ComputationNode(c));
+            double[][] expected = add(multiply(a, b), c);
+            assertMatrix(expected, coordinator.run(sum));
+
+            double[][] t = new double[30][23];
+            for (int i = 0; i < 23; i++) for (int j = 0; j < 30; j++) t[j][i] = expected[i][j];
+            ComputationNode gram = op(ComputationNodeType.MULTIPLY,
+                    op(ComputationNodeType.TRANSPOSE, new ComputationNode(expected)), new ComputationNode(expected));
+            assertMatrix(multiply(t, expected), coordinator.run(gram));
+            assertEquals(0, coordinator.getRetries());
+        }
+    }
+
+    @Test
+    void unaryChain_runsAsTileTasksAndReleasesIntermediates() throws Exception {
+        Random rnd = new Random(4);
+        double[][] a = random(rnd, 40, 24), b = random(rnd, 24, 40);
+        try (WorkerNode w1 = WorkerNode.start(0, 2); WorkerNode w2 = WorkerNode.start(0, 2);
+             Coordinator coordinator = new Coordinator(addresses(w1, w2), 8)) {
+            // P = A * B is shared; -(T(-(T(P)))) + P == 2P, then squared
+            ComputationNode p = op(ComputationNodeType.MULTIPLY, new ComputationNode(a), new ComputationNode(b));
+            ComputationNode chain = op(ComputationNodeType.NEGATE, op(ComputationNodeType.TRANSPOSE,
+                    op(ComputationNodeType.NEGATE, op(ComputationNodeType.TRANSPOSE, p))));
+            ComputationNode root = op(ComputationNodeType.MULTIPLY, op(ComputationNodeType.ADD, chain, p),
+                    op(ComputationNodeType.ADD, p, p));
+            double[][] twice = add(multiply(a, b), multiply(a, b));
+            assertMatrix(multiply(twice, twice), coordinator.run(root));
+
+            // every intermediate is 40x40; without releasing them the coordinator would hold all eight
+            long intermediate = 40 * 40 * 8;
+            assertTrue(coordinator.getPeakHeldBytes() <= 5 * intermediate, "peak " + coordinator.getPeakHeldBytes());
+            assertEquals(0, coordinator.getRetries());
+        }
+    }
+
+    @Test
+    void deadWorker_tasksAreRetriedElsewhere() throws Exception {
+        Random rnd = new Random(2);
+        double[][] a = random(rnd, 40, 40), b = random(rnd, 40, 40);
+        try (WorkerNode w1 = WorkerNode.start(0, 1); WorkerNode w2 = WorkerNode.start(0, 1);
+             Coordinator coordinator = new Coordinator(addresses(w1, w2), 4)) {
+            w2.close();
+            ComputationNode root = op(ComputationNodeType.MULTIPLY, new ComputationNode(a), new ComputationNode(b));
+            assertMatrix(multiply(a, b), coordinator.run(root));
+            assertEquals(1, coordinator.getLiveWorkers());
+
+            w1.close();
+            ComputationNode again = op(ComputationNodeType.MULTIPLY, new ComputationNode(a), new ComputationNode(b));
+            assertThrows(IllegalStateException.class, () -> coordinator.run(again));
+        }
+    }
+
+    @Test
+    void localCluster_runsWorkerProcesses() throws Exception {
+        Random rnd = new Random(3);
+        double[][] a = random(rnd, 20, 12), b = random(rnd, 12, 9);
+        try (LocalCluster cluster = LocalCluster.start(2, 1);
+             Coordinator coordinator = new Coordinator(cluster.getAddresses(), 5)) {
+            ComputationNode root = op(ComputationNodeType.MULTIPLY, new ComputationNode(a), new ComputationNode(b));
+            assertMatrix(multiply(a, b), coordinator.run(root));
+            cluster.kill(0);
+            ComputationNode again = op(ComputationNodeType.MULTIPLY, new ComputationNode(a), new ComputationNode(b));
+            assertMatrix(multiply(a, b), coordinator.run(again));
+        }
+    }
+}
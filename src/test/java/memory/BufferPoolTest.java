@@ -0,0 +1,46 @@
+package memory;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BufferPoolTest {
+
+    @Test
+    void release_thenAcquireSameLength_reusesBuffer() {
+        BufferPool pool = new BufferPool(1024);
+        double[] a = pool.acquire(8);
+        pool.release(a);
+        assertEquals(64, pool.getPooledBytes());
+        assertSame(a, pool.acquire(8));
+        assertEquals(1, pool.getHits());
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    void acquire_differentLength_doesNotReuse() {
+        BufferPool pool = new BufferPool(1024);
+        double[] a = pool.acquire(8);
+        pool.release(a);
+        assertNotSame(a, pool.acquire(4));
+        assertEquals(2, pool.getMisses());
+    }
+
+    @Test
+    void release_beyondCapacity_isDropped() {
+        BufferPool pool = new BufferPool(100);
+        pool.release(new double[8]);
+        pool.release(new double[8]);
+        assertEquals(64, pool.getPooledBytes());
+        assertEquals(1, pool.getDropped());
+    }
+
+    @Test
+    void acquireZeroed_clearsRecycledContents() {
+        BufferPool pool = new BufferPool(1024);
+        double[] a = pool.acquire(3);
+        a[0] = 1; a[1] = 2; a[2] = 3;
+        pool.release(a);
+        assertArrayEquals(new double[3], pool.acquireZeroed(3));
+    }
+}
@@ -0,0 +1,87 @@
+package memory;
+
+import org.junit.jupiter.api.Test;
+import scheduling.CancellationToken;
+import scheduling.ExecutorJob;
+import scheduling.JobPriority;
+import scheduling.TiredExecutor;
+
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LayoutConverterTest {
+
+    private static double[][] random(int rows, int cols) {
+        Random rnd = new Random(rows * 31L + cols);
+        double[][] m = new double[rows][cols];
+        for (double[] row : m) {
+            for (int j = 0; j < cols; j++) {
+                row[j] = rnd.nextDouble();
+            }
+        }
+        return m;
+    }
+
+    private static double[][] naiveTranspose(double[][] m) {
+        int cols = m.length == 0 ? 0 : m[0].length;
+        double[][] t = new double[cols][m.length];
+        for (int i = 0; i < m.length; i++) {
+            for (int j = 0; j < cols; j++) {
+                t[j][i] = m[i][j];
+            }
+        }
+        return t;
+    }
+
+    @Test
+    void transpose_matchesNaiveLoop_forEdgeTiles() {
+        for (int[] shape : new int[][]{{1, 1}, {31, 33}, {64, 5}, {97, 130}}) {
+            double[][] m = random(shape[0], shape[1]);
+            double[][] t = new double[shape[1]][shape[0]];
+            LayoutConverter.transpose(m, t);
+            assertArrayEquals(naiveTranspose(m), t, shape[0] + "x" + shape[1]);
+        }
+    }
+
+    @Test
+    void parallelConversion_roundTripsThroughSharedMatrix() throws InterruptedException {
+        TiredExecutor executor = new TiredExecutor(3);
+        try {
+            double[][] m = random(700, 450); // above PARALLEL_MIN_ELEMENTS
+            double[][] t = new double[450][700];
+            LayoutConverter.transpose(m, t, executor);
+            assertArrayEquals(naiveTranspose(m), t);
+
+            SharedMatrix columns = new SharedMatrix();
+            columns.setExecutor(executor);
+            columns.loadColumnMajor(m);
+            assertEquals(450, columns.length());
+            assertEquals(m[699][17], columns.get(17).get(699));
+            assertArrayEquals(m, columns.readRowMajor());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void parallelConversion_runsOnTheCallersJobAndToken() throws InterruptedException {
+        TiredExecutor executor = new TiredExecutor(2);
+        try (ExecutorJob job = executor.openJob("conversion", JobPriority.BATCH)) {
+            double[][] m = random(600, 600);
+            double[][] t = new double[600][600];
+            LayoutConverter.transpose(m, t, executor, new CancellationToken(), job);
+            assertTrue(job.getTasksCompleted() > 0);
+            assertEquals(0, executor.getDefaultJob().getTasksCompleted());
+
+            CancellationToken cancelled = new CancellationToken();
+            cancelled.cancel("test");
+            SharedMatrix columns = new SharedMatrix();
+            columns.setExecutor(executor, job, cancelled);
+            assertThrows(CancellationException.class, () -> columns.loadColumnMajor(m));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
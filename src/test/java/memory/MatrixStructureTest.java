@@ -0,0 +1,86 @@
+package memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MatrixStructureTest {
+
+    private static double[][] random(Random rnd, int n, MatrixStructure s) {
+        double[][] m = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                boolean zero = (s.isUpperTriangular() && i > j) || (s.isLowerTriangular() && i < j);
+                m[i][j] = zero ? 0.0 : rnd.nextInt(19) - 9 + 0.5;
+            }
+        }
+        if (s == MatrixStructure.SYMMETRIC) {
+            for (int i = 0; i < n; i++) for (int j = 0; j < i; j++) m[i][j] = m[j][i];
+        }
+        if (s == MatrixStructure.IDENTITY) {
+            for (int i = 0; i < n; i++) m[i][i] = 1.0;
+        }
+        return m;
+    }
+
+    private static double[][] dense(double[][] a, double[][] b) {
+        double[][] c = new double[a.length][b[0].length];
+        for (int i = 0; i < a.length; i++)
+            for (int k = 0; k < b.length; k++)
+                for (int j = 0; j < b[0].length; j++) c[i][j] += a[i][k] * b[k][j];
+        return c;
+    }
+
+    @Test
+    void detect_classifiesStructure() {
+        Random rnd = new Random(1);
+        for (MatrixStructure s : MatrixStructure.values()) {
+            assertEquals(s, MatrixStructure.detect(random(rnd, 150, s)), s.name());
+        }
+        assertEquals(MatrixStructure.GENERAL, MatrixStructure.detect(new double[][]{{1, 0, 0}, {0, 1, 0}}));
+        assertEquals(MatrixStructure.GENERAL, MatrixStructure.detect(new double[0][0]));
+    }
+
+    @Test
+    void load_tagsStructure_andSymmetricColumnLoadMatchesRows() {
+        Random rnd = new Random(2);
+        double[][] s = random(rnd, 70, MatrixStructure.SYMMETRIC);
+        SharedMatrix m = new SharedMatrix();
+        m.loadColumnMajor(s);
+        assertEquals(MatrixStructure.SYMMETRIC, m.getStructure());
+        assertEquals(VectorOrientation.COLUMN_MAJOR, m.getOrientation());
+        double[][] back = m.readRowMajor();
+        for (int i = 0; i < s.length; i++) assertArrayEquals(s[i], back[i]);
+        m.release();
+        assertEquals(MatrixStructure.GENERAL, m.getStructure());
+    }
+
+    @Test
+    void structuredProducts_matchDenseProducts() {
+        Random rnd = new Random(3);
+        int n = 90;
+        for (MatrixStructure left : MatrixStructure.values()) {
+            for (MatrixStructure right : MatrixStructure.values()) {
+                double[][] a = random(rnd, n, left);
+                double[][] b = random(rnd, n, right);
+                SharedMatrix l = new SharedMatrix();
+                l.loadRowMajor(a);
+                SharedMatrix r = new SharedMatrix();
+                r.loadColumnMajor(b);
+                MatrixStructure tag = l.getStructure();
+                for (int i = 0; i < n; i++) {
+                    int from = tag.isUpperTriangular() ? i : 0;
+                    int to = tag.isLowerTriangular() ? i + 1 : Integer.MAX_VALUE;
+                    l.get(i).vecMatMul(r, from, to, () -> false);
+                }
+                double[][] expected = dense(a, b);
+                double[][] actual = l.readRowMajor();
+                for (int i = 0; i < n; i++) {
+                    assertArrayEquals(expected[i], actual[i], 1e-9, left + " * " + right + ", row " + i);
+                }
+            }
+        }
+    }
+}
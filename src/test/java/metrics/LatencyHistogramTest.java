@@ -0,0 +1,70 @@
+package metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    void emptyHistogram_reportsZero() {
+        LatencyHistogram h = new LatencyHistogram();
+        LatencyHistogram.Snapshot s = h.snapshot();
+        assertEquals(0, s.getCount());
+        assertEquals(0, s.valueAtPercentile(99));
+        assertEquals(0.0, s.getMeanNanos());
+    }
+
+    @Test
+    void smallValues_areExact() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v = 1; v <= 50; v++) {
+            h.record(v);
+        }
+        LatencyHistogram.Snapshot s = h.snapshot();
+        assertEquals(50, s.getCount());
+        assertEquals(25, s.valueAtPercentile(50));
+        assertEquals(50, s.valueAtPercentile(100));
+    }
+
+    @Test
+    void largeValues_withinRelativeError() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            h.record(i * 1_000_000L); // 1ms .. 1s
+        }
+        LatencyHistogram.Snapshot s = h.snapshot();
+        long p99 = s.valueAtPercentile(99);
+        assertEquals(990_000_000L, p99, 990_000_000L * 0.035);
+        assertEquals(1_000_000_000L, s.getMaxNanos());
+    }
+
+    @Test
+    void negativeValues_clampedToZero() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(-5);
+        assertEquals(1, h.getCount());
+        assertEquals(0, h.snapshot().valueAtPercentile(50));
+    }
+
+    @Test
+    void indexAndHighestValue_areConsistent() {
+        long[] samples = {0, 1, 63, 64, 65, 1000, 123_456_789L, Long.MAX_VALUE / 3, Long.MAX_VALUE};
+        for (long v : samples) {
+            int idx = LatencyHistogram.indexOf(v);
+            assertTrue(LatencyHistogram.highestEquivalentValue(idx) >= v, "bucket upper bound below value " + v);
+            if (idx > 0) {
+                assertTrue(LatencyHistogram.highestEquivalentValue(idx - 1) < v, "value " + v + " fits in lower bucket");
+            }
+        }
+    }
+
+    @Test
+    void reset_clearsCounts() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(10);
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.snapshot().getCount());
+    }
+}
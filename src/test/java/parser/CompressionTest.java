@@ -0,0 +1,122 @@
+package parser;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.airlift.compress.zstd.ZstdOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import scheduling.TiredExecutor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompressionTest {
+
+    private static final String INPUT = "{\"operator\":\"+\",\"operands\":[[[1,2],[3,4]],[[5,6],[7,8]]]}";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void parse_readsGzipAndZstdByContent() throws Exception {
+        Path gz = dir.resolve("in.json.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gz))) {
+            out.write(INPUT.getBytes(StandardCharsets.UTF_8));
+        }
+        Path zst = dir.resolve("in.bin"); // detection does not depend on the name
+        try (OutputStream out = new ZstdOutputStream(Files.newOutputStream(zst))) {
+            out.write(INPUT.getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(Compression.GZIP, Compression.detect(gz));
+        assertEquals(Compression.ZSTD, Compression.detect(zst));
+
+        TiredExecutor executor = new TiredExecutor(2);
+        try {
+            for (Path p : new Path[]{gz, zst}) {
+                // threshold 0 would pick the parallel reader for a plain file
+                ComputationNode root = new InputParser(executor, 0).parse(p.toString());
+                assertEquals(ComputationNodeType.ADD, root.getNodeType());
+                assertArrayEquals(new double[][]{{5, 6}, {7, 8}}, root.getChildren().get(1).getMatrix());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void write_compressesBySuffix_largeOutput() throws IOException {
+        double[][] m = new double[600][300];
+        for (int i = 0; i < m.length; i++) {
+            for (int j = 0; j < m[i].length; j++) {
+                m[i][j] = i * 0.5 - j / 3.0;
+            }
+        }
+        ObjectMapper mapper = new ObjectMapper();
+        for (String suffix : new String[]{".gz", ".zst", ""}) {
+            Path out = dir.resolve("out.json" + suffix);
+            OutputWriter.write(m, out.toString());
+            assertEquals(Compression.forName(out.toString()), Compression.detect(out));
+            JsonNode result;
+            try (InputStream in = Compression.openInput(out)) {
+                result = mapper.readTree(in).get("result");
+            }
+            assertEquals(600, result.size());
+            assertEquals(m[599][299], result.get(599).get(299).asDouble());
+        }
+    }
+
+    @Test
+    void truncatedInput_failsWithParseException() throws IOException {
+        Path gz = dir.resolve("bad.json.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gz))) {
+            out.write(INPUT.getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] bytes = Files.readAllBytes(gz);
+        Files.write(gz, java.util.Arrays.copyOf(bytes, bytes.length - 12));
+        assertThrows(java.text.ParseException.class, () -> new InputParser().parse(gz.toString()));
+    }
+
+    @Test
+    void failingSink_writeAndCloseThrowInsteadOfBlocking() throws Exception {
+        CountDownLatch failNow = new CountDownLatch(1);
+        OutputStream sink = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                try {
+                    failNow.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                throw new IOException("disk full");
+            }
+        };
+        PipelinedOutputStream out = new PipelinedOutputStream(sink, "failing-writer");
+        byte[] block = new byte[64 * 1024];
+        FutureTask<Void> writer = new FutureTask<>(() -> {
+            for (int i = 0; i < 1000; i++) out.write(block);
+            return null;
+        });
+        Thread thread = new Thread(writer);
+        thread.start();
+        // fail the sink only once the writer is blocked on the full queue
+        while (thread.getState() != Thread.State.WAITING) Thread.sleep(10);
+        failNow.countDown();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> writer.get(10, TimeUnit.SECONDS));
+        assertEquals("disk full", e.getCause().getMessage());
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThrows(IOException.class, out::close));
+    }
+}
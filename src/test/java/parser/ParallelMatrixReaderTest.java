@@ -0,0 +1,193 @@
+package parser;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import scheduling.CancellationToken;
+import scheduling.ExecutorJob;
+import scheduling.JobPriority;
+import scheduling.TiredExecutor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelMatrixReaderTest {
+
+    private static TiredExecutor executor;
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    static void start() {
+        executor = new TiredExecutor(3);
+    }
+
+    @AfterAll
+    static void stop() throws InterruptedException {
+        executor.shutdown();
+    }
+
+    private Path write(String json) throws IOException {
+        Path f = Files.createTempFile(dir, "in", ".json");
+        Files.writeString(f, json);
+        return f;
+    }
+
+    private static String matrix(int rows, int cols, Random rnd) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < rows; i++) {
+            sb.append(i == 0 ? "" : ",\n  ").append('[');
+            for (int j = 0; j < cols; j++) {
+                if (j > 0) sb.append(", ");
+                switch (rnd.nextInt(4)) {
+                    case 0: sb.append(rnd.nextInt(2001) - 1000); break;
+                    case 1: sb.append(rnd.nextGaussian()); break;
+                    case 2: sb.append(String.format(Locale.US, "%.3e", rnd.nextDouble() * 1e-9)); break;
+                    default: sb.append(-rnd.nextDouble() * 1e300); break;
+                }
+            }
+            sb.append(']');
+        }
+        return sb.append(']').toString();
+    }
+
+    private static void assertSameTree(ComputationNode expected, ComputationNode actual) {
+        assertEquals(expected.getNodeType(), actual.getNodeType());
+        assertEquals(expected.getExponent(), actual.getExponent());
+        if (expected.getNodeType() == ComputationNodeType.MATRIX) {
+            assertArrayEquals(expected.getMatrix(), actual.getMatrix());
+            return;
+        }
+        assertEquals(expected.getChildren().size(), actual.getChildren().size());
+        for (int i = 0; i < expected.getChildren().size(); i++) {
+            assertSameTree(expected.getChildren().get(i), actual.getChildren().get(i));
+        }
+    }
+
+    @Test
+    void matchesJacksonParser() throws Exception {
+        Random rnd = new Random(7);
+        String json = "{\"operator\": \"+\", \"comment\": {\"a\": [1, \"]\"]}, \"operands\": [\n"
+                + matrix(120, 37, rnd) + ",\n"
+                + "{\"operands\": [" + matrix(37, 120, rnd) + "], \"operator\": \"T\"},\n"
+                + "{\"operator\": \"*\", \"operands\": [" + matrix(120, 37, rnd) + ", "
+                + "{\"operator\": \"^\", \"exponent\": 5, \"operands\": [" + matrix(37, 37, rnd) + "]}]}]}\n";
+        Path f = write(json);
+        ComputationNode expected = new InputParser().parse(f.toString());
+        ComputationNode actual = new InputParser(executor, 0).parse(f.toString());
+        assertSameTree(expected, actual);
+    }
+
+    @Test
+    void lazyLeaves_knowTheirShapeAndDecodeOnDemand() throws Exception {
+        Random rnd = new Random(11);
+        String json = "{\"operator\": \"*\", \"operands\": [" + matrix(300, 40, rnd) + ", "
+                + "{\"operator\": \"T\", \"operands\": [" + matrix(50, 40, rnd) + "]}]}";
+        Path f = write(json);
+        ComputationNode expected = new InputParser().parse(f.toString());
+        ComputationNode lazy = new InputParser(executor).parseLazy(f.toString());
+
+        ComputationNode left = lazy.getChildren().get(0);
+        ComputationNode right = lazy.getChildren().get(1).getChildren().get(0);
+        assertNotNull(left.getLazySource());
+        assertEquals(300, left.getRows());
+        assertEquals(40, left.getCols());
+        assertEquals(50, right.getRows());
+
+        assertSameTree(expected, lazy);
+        left.releaseMatrix();
+        assertArrayEquals(expected.getChildren().get(0).getMatrix(), left.getMatrix());
+    }
+
+    @Test
+    void decodeTasks_runOnTheCallersJobAndToken() throws Exception {
+        Random rnd = new Random(13);
+        Path f = write("{\"operator\": \"-\", \"operands\": [" + matrix(300, 40, rnd) + "]}");
+        CancellationToken cancelled = new CancellationToken();
+        cancelled.cancel("test");
+        try (ExecutorJob job = executor.openJob("parse", JobPriority.INTERACTIVE)) {
+            new InputParser(executor, 0).parse(f.toString(), new CancellationToken(), job);
+            long eager = job.getTasksCompleted();
+            assertTrue(eager > 0);
+            assertThrows(CancellationException.class,
+                    () -> new InputParser(executor, 0).parse(f.toString(), cancelled, job));
+
+            LazyMatrix lazy = new InputParser(executor).parseLazy(f.toString()).getChildren().get(0).getLazySource();
+            lazy.setJob(job, new CancellationToken());
+            lazy.decodeRows(0, 300);
+            assertTrue(job.getTasksCompleted() > eager);
+            assertThrows(CancellationException.class, () -> lazy.decodeRows(0, 300, cancelled, null));
+        }
+    }
+
+    @Test
+    void parseDouble_isCorrectlyRounded() throws Exception {
+        String[] numbers = {"0", "-0", "1", "-17", "0.1", "3.141592653589793", "1e22", "1e23", "2.2250738585072014E-308",
+                "4.9e-324", "1.7976931348623157e308", "123456789012345678901234567890", "0.000000000000000000001234",
+                "9007199254740993", "1E+5", "-2.5e-3"};
+        StringBuilder sb = new StringBuilder("[[");
+        for (int i = 0; i < numbers.length; i++) {
+            sb.append(i == 0 ? "" : ",").append(numbers[i]);
+        }
+        sb.append("]]");
+        double[] row = new InputParser(executor, 0).parse(write(sb.toString()).toString()).getMatrix()[0];
+        for (int i = 0; i < numbers.length; i++) {
+            assertEquals(Double.doubleToLongBits(Double.parseDouble(numbers[i])), Double.doubleToLongBits(row[i]), numbers[i]);
+        }
+    }
+
+    @Test
+    void randomNumbers_matchDoubleParseDouble() throws Exception {
+        Random rnd = new Random(11);
+        int n = 20_000;
+        String[] numbers = new String[n];
+        for (int i = 0; i < n; i++) {
+            switch (i % 3) {
+                case 0:
+                    numbers[i] = Double.toString(Double.longBitsToDouble(rnd.nextLong() & 0x7FEFFFFFFFFFFFFFL));
+                    break;
+                case 1:
+                    numbers[i] = Double.toString(rnd.nextGaussian() * Math.pow(10, rnd.nextInt(40) - 20));
+                    break;
+                default:
+                    StringBuilder digits = new StringBuilder();
+                    for (int d = 1 + rnd.nextInt(25); d > 0; d--) digits.append(rnd.nextInt(10));
+                    numbers[i] = digits + "e" + (rnd.nextInt(640) - 330);
+            }
+        }
+        double[] row = new InputParser(executor, 0).parse(write("[[" + String.join(",", numbers) + "]]").toString()).getMatrix()[0];
+        for (int i = 0; i < n; i++) {
+            assertEquals(Double.doubleToLongBits(Double.parseDouble(numbers[i])), Double.doubleToLongBits(row[i]), numbers[i]);
+        }
+    }
+
+    @Test
+    void inconsistentRows_areRejected() throws IOException {
+        Path f = write("[[1, 2], [3]]");
+        ParseException e = assertThrows(ParseException.class, () -> new InputParser(executor, 0).parse(f.toString()));
+        assertTrue(e.getMessage().startsWith("Inconsistent row sizes in matrix."), e.getMessage());
+    }
+
+    @Test
+    void missingSeparator_isRejected() throws IOException {
+        for (String row : new String[]{"[1 2]", "[1-2, 3]"}) {
+            Path f = write("{\"operator\": \"-\", \"operands\": [[" + row + "]]}");
+            assertThrows(ParseException.class, () -> new InputParser(executor, 0).parse(f.toString()), row);
+        }
+    }
+
+    @Test
+    void badNumber_isReportedAsParseError() throws IOException {
+        Path f = write("[[1, 2], [3, -]]");
+        assertThrows(ParseException.class, () -> new InputParser(executor, 0).parse(f.toString()));
+    }
+}
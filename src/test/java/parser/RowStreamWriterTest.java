@@ -0,0 +1,99 @@
+package parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import scheduling.CancellationToken;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RowStreamWriterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void rowsPutOutOfOrder_areWrittenLikeTheWholeMatrix() throws Exception {
+        double[][] m = new double[50][7];
+        for (int i = 0; i < m.length; i++) {
+            for (int j = 0; j < m[i].length; j++) {
+                m[i][j] = i * 0.25 - j;
+            }
+        }
+        Path expected = dir.resolve("expected.json");
+        OutputWriter.write(m, expected.toString());
+
+        Path streamed = dir.resolve("streamed.json");
+        try (RowStreamWriter writer = new RowStreamWriter(streamed.toString())) {
+            writer.start(m.length);
+            for (int i = m.length - 1; i >= 0; i -= 2) {
+                writer.put(i, m[i].clone());
+            }
+            for (int i = m.length - 2; i >= 0; i -= 2) {
+                writer.put(i, m[i].clone());
+            }
+            writer.finish();
+        }
+        assertEquals(Files.readString(expected), Files.readString(streamed));
+    }
+
+    @Test
+    void finish_withMissingRows_isRejected() throws Exception {
+        try (RowStreamWriter writer = new RowStreamWriter(dir.resolve("partial.json").toString())) {
+            writer.start(3);
+            writer.put(0, new double[]{1});
+            writer.put(2, new double[]{3});
+            assertThrows(IllegalStateException.class, writer::finish);
+        }
+    }
+
+    @Test
+    void putFarAhead_blocksUntilTheWriterCatchesUp() throws Exception {
+        Path out = dir.resolve("window.json");
+        try (RowStreamWriter writer = new RowStreamWriter(out.toString(), 4)) {
+            writer.start(10);
+            FutureTask<Void> ahead = new FutureTask<>(() -> writer.put(5, new double[]{5}), null);
+            new Thread(ahead).start();
+            assertThrows(TimeoutException.class, () -> ahead.get(200, TimeUnit.MILLISECONDS));
+            for (int i = 0; i < 5; i++) {
+                writer.put(i, new double[]{i});
+            }
+            ahead.get(10, TimeUnit.SECONDS);
+            for (int i = 6; i < 10; i++) {
+                writer.put(i, new double[]{i});
+            }
+            writer.finish();
+        }
+        double[][] expected = new double[10][];
+        for (int i = 0; i < 10; i++) expected[i] = new double[]{i};
+        Path reference = dir.resolve("reference.json");
+        OutputWriter.write(expected, reference.toString());
+        assertEquals(Files.readString(reference), Files.readString(out));
+    }
+
+    @Test
+    void blockedPut_isReleasedByAbandonOrCancellation() throws Exception {
+        CancellationToken token = new CancellationToken();
+        try (RowStreamWriter writer = new RowStreamWriter(dir.resolve("cancelled.json").toString(), 2)) {
+            writer.start(10, token);
+            FutureTask<Void> blocked = new FutureTask<>(() -> writer.put(8, new double[]{8}), null);
+            new Thread(blocked).start();
+            assertThrows(TimeoutException.class, () -> blocked.get(200, TimeUnit.MILLISECONDS));
+            token.cancel("test");
+            blocked.get(10, TimeUnit.SECONDS);
+        }
+        try (RowStreamWriter writer = new RowStreamWriter(dir.resolve("abandoned.json").toString(), 2)) {
+            writer.start(10);
+            FutureTask<Void> blocked = new FutureTask<>(() -> writer.put(8, new double[]{8}), null);
+            new Thread(blocked).start();
+            assertThrows(TimeoutException.class, () -> blocked.get(200, TimeUnit.MILLISECONDS));
+            writer.abandon();
+            blocked.get(10, TimeUnit.SECONDS);
+        }
+    }
+}
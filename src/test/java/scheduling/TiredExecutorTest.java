@@ -0,0 +1,139 @@
+package scheduling;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TiredExecutorTest {
+
+    private TiredExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = new TiredExecutor(2);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        executor.shutdown();
+    }
+
+    @Test
+    void submitAll_runsEveryTask() {
+        AtomicInteger ran = new AtomicInteger();
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            tasks.add(ran::incrementAndGet);
+        }
+        executor.submitAll(tasks);
+        assertEquals(50, ran.get());
+    }
+
+    @Test
+    void submitAll_rethrowsFirstTaskFailure() {
+        List<Runnable> tasks = new ArrayList<>();
+        tasks.add(() -> { throw new IllegalArgumentException("boom"); });
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> executor.submitAll(tasks));
+        assertEquals("boom", e.getMessage());
+
+        // workers survive the failure
+        AtomicInteger ran = new AtomicInteger();
+        executor.submitAll(List.of(ran::incrementAndGet));
+        assertEquals(1, ran.get());
+    }
+
+    @Test
+    void submitAll_cancelled_skipsRemainingTasks() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger ran = new AtomicInteger();
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            tasks.add(() -> {
+                if (ran.incrementAndGet() == 3) {
+                    token.cancel("stop");
+                }
+            });
+        }
+        CancellationException e = assertThrows(CancellationException.class, () -> executor.submitAll(tasks, token));
+        assertEquals("stop", e.getMessage());
+        assertTrue(ran.get() < 100);
+    }
+
+    @Test
+    void interactiveJob_doesNotQueueBehindBatchJob() throws Exception {
+        ExecutorJob batch = executor.openJob("batch", JobPriority.BATCH);
+        ExecutorJob interactive = executor.openJob("interactive", JobPriority.INTERACTIVE);
+        List<Runnable> big = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            big.add(() -> sleep(2));
+        }
+        Thread background = new Thread(() -> executor.submitAll(big, new CancellationToken(), batch));
+        background.start();
+        Thread.sleep(20);
+
+        long start = System.nanoTime();
+        executor.submitAll(List.of(() -> sleep(2), () -> sleep(2)), new CancellationToken(), interactive);
+        long waitedMs = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(background.isAlive(), "batch job should still be running");
+        assertTrue(waitedMs < 200, "interactive job waited " + waitedMs + "ms");
+
+        background.join();
+        interactive.close();
+        batch.close();
+        String report = executor.getWorkerReport();
+        assertTrue(report.contains("BATCH: tasks=400"), report);
+        assertTrue(report.contains("INTERACTIVE: tasks=2"), report);
+    }
+
+    @Test
+    void elasticExecutor_growsUnderLoadAndRetiresIdleWorkers() throws InterruptedException {
+        TiredExecutor elastic = new TiredExecutor(1, 4, 20);
+        try {
+            List<Runnable> tasks = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                tasks.add(() -> sleep(5));
+            }
+            elastic.submitAll(tasks);
+            int peak = elastic.getWorkerCount() + elastic.getRetiredWorkerCount();
+            assertTrue(peak > 1, "executor never grew");
+            assertTrue(peak <= 4);
+
+            long deadline = System.currentTimeMillis() + 2000;
+            while (elastic.getWorkerCount() > 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, elastic.getWorkerCount());
+            assertEquals(peak - 1, elastic.getRetiredWorkerCount());
+
+            String report = elastic.getWorkerReport();
+            assertTrue(report.contains("Retired workers (" + (peak - 1) + "): tasks="), report);
+            assertTrue(report.contains("All workers: tasks=40,"), report);
+        } finally {
+            elastic.shutdown();
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void token_withTimeout_expires() throws InterruptedException {
+        CancellationToken token = CancellationToken.withTimeout(20);
+        assertFalse(token.isCancelled());
+        Thread.sleep(40);
+        assertTrue(token.isCancelled());
+        assertEquals("Timed out after 20 ms", token.getReason());
+    }
+}
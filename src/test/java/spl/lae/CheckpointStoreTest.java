@@ -0,0 +1,96 @@
+package spl.lae;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CheckpointStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private static ComputationNode op(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, new ArrayList<>(List.of(children)));
+    }
+
+    private static double[][] filled(int rows, int cols, double seed) {
+        double[][] m = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                m[i][j] = seed + i * 0.5 - j;
+            }
+        }
+        return m;
+    }
+
+    @Test
+    void roundTrip_acrossIoChunks() {
+        // 400x401 doubles span more than one 1 MB I/O chunk, with rows straddling the boundary
+        double[][] m = filled(400, 401, 3);
+        SubtreeKey key = SubtreeKey.ofMatrix(m);
+        try (CheckpointStore store = new CheckpointStore(dir)) {
+            store.put(key, m);
+            store.flush();
+            assertEquals(1, store.getWritten());
+        }
+        try (CheckpointStore reopened = new CheckpointStore(dir)) {
+            assertTrue(reopened.contains(key));
+            assertArrayEquals(m, reopened.get(key));
+        }
+    }
+
+    @Test
+    void corruptFile_isIgnoredAndDeleted() throws IOException {
+        double[][] m = filled(4, 4, 1);
+        SubtreeKey key = SubtreeKey.ofMatrix(m);
+        try (CheckpointStore store = new CheckpointStore(dir)) {
+            store.put(key, m);
+        }
+        try (RandomAccessFile f = new RandomAccessFile(dir.resolve(key + ".ckpt").toFile(), "rw")) {
+            f.seek(40);
+            f.write(0x7f);
+        }
+        try (CheckpointStore store = new CheckpointStore(dir)) {
+            assertNull(store.get(key));
+            assertFalse(store.contains(key));
+        }
+    }
+
+    @Test
+    void rerun_loadsCheckpointedSubtreeInsteadOfEvaluating() {
+        double[][] a = filled(6, 5, 1);
+        double[][] b = filled(6, 5, 2);
+        double[][] c = filled(5, 4, -1);
+
+        double[][] first;
+        try (CheckpointStore store = new CheckpointStore(dir)) {
+            LinearAlgebraEngine engine = new LinearAlgebraEngine(2);
+            engine.setCheckpointStore(store);
+            first = engine.run(op(ComputationNodeType.NEGATE, op(ComputationNodeType.MULTIPLY,
+                    op(ComputationNodeType.ADD, new ComputationNode(a), new ComputationNode(b)),
+                    new ComputationNode(c)))).getMatrix();
+            store.flush();
+            assertEquals(2, store.getWritten()); // ADD and MULTIPLY, not the root
+        }
+
+        try (CheckpointStore store = new CheckpointStore(dir)) {
+            LinearAlgebraEngine engine = new LinearAlgebraEngine(2);
+            engine.setCheckpointStore(store);
+            double[][] second = engine.run(op(ComputationNodeType.NEGATE, op(ComputationNodeType.MULTIPLY,
+                    op(ComputationNodeType.ADD, new ComputationNode(a), new ComputationNode(b)),
+                    new ComputationNode(c)))).getMatrix();
+            assertArrayEquals(first, second);
+            assertEquals(1, store.getLoaded()); // the MULTIPLY; the ADD below it is never reached
+            assertEquals(0, store.getWritten());
+        }
+    }
+}
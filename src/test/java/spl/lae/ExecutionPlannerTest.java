@@ -0,0 +1,159 @@
+package spl.lae;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+import parser.InputParser;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExecutionPlannerTest {
+
+    private static ComputationNode m(int rows, int cols) {
+        return new ComputationNode(new double[rows][cols]);
+    }
+
+    private static ComputationNode op(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, new ArrayList<>(List.of(children)));
+    }
+
+    @Test
+    void infersShapes_andMultiplyFlops() {
+        // T(A) * B with A 5x3, B 5x4
+        ComputationNode transpose = op(ComputationNodeType.TRANSPOSE, m(5, 3));
+        ComputationNode root = op(ComputationNodeType.MULTIPLY, transpose, m(5, 4));
+        ExecutionPlan plan = ExecutionPlanner.plan(root);
+
+        assertEquals(3, plan.getRoot().rows);
+        assertEquals(4, plan.getRoot().cols);
+        assertEquals(3, plan.get(transpose).rows);
+        assertEquals(2L * 3 * 5 * 4, plan.getRoot().flops);
+        assertEquals(2, plan.getOperationCount());
+        assertEquals((15 + 20) * 8L, plan.getInputBytes());
+        assertTrue(plan.getPeakBytes() > plan.getInputBytes());
+    }
+
+    @Test
+    void naryChain_isPlannedLikeNestedBinaryOps() {
+        // A(2x3) * B(3x4) * C(4x5): 2*2*3*4 + 2*2*4*5 flops
+        ComputationNode root = op(ComputationNodeType.MULTIPLY, m(2, 3), m(3, 4), m(4, 5));
+        ExecutionPlan plan = ExecutionPlanner.plan(root);
+        assertEquals(2, plan.getRoot().rows);
+        assertEquals(5, plan.getRoot().cols);
+        assertEquals(48 + 80, plan.getTotalFlops());
+    }
+
+    @Test
+    void mismatch_isRejectedWithItsPath() {
+        ComputationNode root = op(ComputationNodeType.NEGATE,
+                op(ComputationNodeType.ADD, m(2, 2), op(ComputationNodeType.TRANSPOSE, m(2, 3))));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> ExecutionPlanner.plan(root));
+        assertEquals("ADD at root.0: dimension mismatch 2x2 + 3x2", e.getMessage());
+    }
+
+    @Test
+    void engine_rejectsInvalidTree_beforeEvaluatingAnything() {
+        ComputationNode inner = op(ComputationNodeType.NEGATE, m(2, 2));
+        ComputationNode root = op(ComputationNodeType.MULTIPLY, inner, m(3, 3));
+        LinearAlgebraEngine engine = new LinearAlgebraEngine(1);
+        assertThrows(IllegalArgumentException.class, () -> engine.run(root));
+        assertEquals(ComputationNodeType.NEGATE, inner.getNodeType()); // never resolved
+    }
+
+    @Test
+    void repeatedOperands_areRewrittenIntoPower() {
+        double[][] a = {{1, 1}, {1, 0}};
+        double[][] b = {{2, 0}, {0, 3}};
+        // A * (A * A) * B * A, with equal but distinct copies of A
+        ComputationNode root = op(ComputationNodeType.MULTIPLY, new ComputationNode(a),
+                op(ComputationNodeType.MULTIPLY, new ComputationNode(a), new ComputationNode(a.clone())),
+                new ComputationNode(b), new ComputationNode(a));
+        assertEquals(2, ExecutionPlanner.rewritePowers(root)); // the inner A * A, then the whole chain
+        ComputationNode power = root.getChildren().get(0);
+        assertEquals(ComputationNodeType.POWER, power.getNodeType());
+        assertEquals(3, power.getExponent());
+        assertEquals(3, root.getChildren().size());
+
+        // A^3 = [[3, 2], [2, 1]]; A^3 * B * A = [[12, 6], [7, 4]]
+        double[][] result = new LinearAlgebraEngine(2).run(root).getMatrix();
+        assertArrayEquals(new double[][]{{12, 6}, {7, 4}}, result);
+    }
+
+    @Test
+    void power_isPlannedAsRepeatedSquaring() {
+        // A^13: 3 squarings + 2 extra multiplies instead of 12 multiplies
+        ComputationNode root = new ComputationNode(ComputationNodeType.POWER, new ArrayList<>(List.of(m(10, 10))), 13);
+        assertEquals(5, ExecutionPlanner.powerMultiplies(13));
+        assertEquals(5L * 2 * 10 * 10 * 10, ExecutionPlanner.plan(root).getTotalFlops());
+
+        ComputationNode chain = op(ComputationNodeType.MULTIPLY, m(4, 4), m(4, 4), m(4, 4));
+        ExecutionPlanner.rewritePowers(chain);
+        assertEquals(ComputationNodeType.POWER, chain.getNodeType()); // zero matrices are all equal
+
+        ComputationNode notSquare = new ComputationNode(ComputationNodeType.POWER, new ArrayList<>(List.of(m(2, 3))), 2);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> ExecutionPlanner.plan(notSquare));
+        assertEquals("POWER at root: operand must be square, got 2x3", e.getMessage());
+    }
+
+    @Test
+    void power_matchesRepeatedMultiplication() {
+        double[][] a = {{0.5, 1, 0}, {0, 1, 2}, {1, 0, -1}};
+        double[][] expected = a;
+        for (int i = 1; i < 11; i++) {
+            double[][] next = new double[3][3];
+            for (int r = 0; r < 3; r++)
+                for (int k = 0; k < 3; k++)
+                    for (int c = 0; c < 3; c++) next[r][c] += expected[r][k] * a[k][c];
+            expected = next;
+        }
+        ComputationNode root = new ComputationNode(ComputationNodeType.POWER, new ArrayList<>(List.of(new ComputationNode(a))), 11);
+        double[][] actual = new LinearAlgebraEngine(2).run(root).getMatrix();
+        for (int r = 0; r < 3; r++) {
+            assertArrayEquals(expected[r], actual[r], 1e-9);
+        }
+    }
+
+    @Test
+    void identityOperands_andSymmetricTransposes_areEliminated() {
+        double[][] id = {{1, 0}, {0, 1}};
+        double[][] s = {{2, 5}, {5, 3}};
+        double[][] x = {{1, 2}, {3, 4}};
+        // T(S) * I * (I ^ 4 * X)
+        ComputationNode root = op(ComputationNodeType.MULTIPLY,
+                op(ComputationNodeType.TRANSPOSE, new ComputationNode(s)), new ComputationNode(id),
+                op(ComputationNodeType.MULTIPLY,
+                        new ComputationNode(ComputationNodeType.POWER, new ArrayList<>(List.of(new ComputationNode(id))), 4),
+                        new ComputationNode(x)));
+        LinearAlgebraEngine engine = new LinearAlgebraEngine(1);
+        double[][] result = engine.run(root).getMatrix();
+        assertArrayEquals(new double[][]{{17, 24}, {14, 22}}, result);
+        assertEquals(1, engine.getLastPlan().getOperationCount()); // only S * X is left
+    }
+
+    @Test
+    void lazyLeaves_arePlannedWithoutDecoding_andEvaluateLikeEagerOnes(@TempDir Path dir) throws Exception {
+        // (A + A) * B + T(C): A appears twice and is shared by its byte fingerprint
+        Path f = dir.resolve("in.json");
+        Files.writeString(f, "{\"operator\": \"+\", \"operands\": ["
+                + "{\"operator\": \"*\", \"operands\": ["
+                + "{\"operator\": \"+\", \"operands\": [[[1, 2], [3, 4]], [[1,2],[3,4]]]}, [[0.5, -1, 2], [1, 0, 3]]]},"
+                + "{\"operator\": \"T\", \"operands\": [[[1, 2], [3, 4], [5, 6]]]}]}");
+
+        ComputationNode lazy = new InputParser().parseLazy(f.toString());
+        ExecutionPlan plan = ExecutionPlanner.plan(lazy);
+        assertEquals(2, plan.getRoot().rows);
+        assertEquals(3, plan.getRoot().cols);
+
+        LinearAlgebraEngine engine = new LinearAlgebraEngine(2);
+        double[][] actual = engine.run(lazy).getMatrix();
+        double[][] expected = new LinearAlgebraEngine(2).run(new InputParser().parse(f.toString())).getMatrix();
+        assertArrayEquals(expected, actual);
+        assertEquals(1, engine.getEliminatedSubtrees());
+    }
+}
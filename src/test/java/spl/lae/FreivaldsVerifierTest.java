@@ -0,0 +1,77 @@
+package spl.lae;
+
+import org.junit.jupiter.api.Test;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+import scheduling.CancellationToken;
+import scheduling.TiredExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FreivaldsVerifierTest {
+
+    private static double[][] random(int rows, int cols, long seed) {
+        Random rnd = new Random(seed);
+        double[][] m = new double[rows][cols];
+        for (double[] row : m) {
+            for (int j = 0; j < cols; j++) {
+                row[j] = rnd.nextDouble() * 2e6 - 1e6;
+            }
+        }
+        return m;
+    }
+
+    private static double[][] product(double[][] a, double[][] b) {
+        double[][] c = new double[a.length][b[0].length];
+        for (int i = 0; i < a.length; i++) {
+            for (int k = 0; k < b.length; k++) {
+                for (int j = 0; j < c[i].length; j++) {
+                    c[i][j] += a[i][k] * b[k][j];
+                }
+            }
+        }
+        return c;
+    }
+
+    @Test
+    void verify_acceptsCorrectProduct_andReportsCorruptedEntry() throws InterruptedException {
+        TiredExecutor executor = new TiredExecutor(3);
+        try {
+            FreivaldsVerifier verifier = new FreivaldsVerifier(4, 42);
+            double[][] a = random(37, 50, 1);
+            double[][] b = random(50, 23, 2);
+            double[][] c = product(a, b);
+            assertTrue(verifier.verify("ok", a, b, c, executor, new CancellationToken(), executor.getDefaultJob()));
+
+            c[11][7] *= 1 + 1e-6;
+            assertFalse(verifier.verify("bad", a, b, c, executor, new CancellationToken(), executor.getDefaultJob()));
+            assertEquals(2, verifier.getChecked());
+            List<FreivaldsVerifier.Failure> failures = verifier.getFailures();
+            assertEquals(1, failures.size());
+            assertEquals("bad", failures.get(0).node);
+            assertEquals(11, failures.get(0).worstRow);
+            assertEquals(4, failures.get(0).failedRounds); // a single wrong entry fails every round
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void engine_verifiesMultipliesAndPowerSteps() {
+        LinearAlgebraEngine engine = new LinearAlgebraEngine(2);
+        FreivaldsVerifier verifier = new FreivaldsVerifier(3, 7);
+        engine.setVerifier(verifier);
+        ComputationNode product = new ComputationNode(ComputationNodeType.MULTIPLY, new ArrayList<>(List.of(
+                new ComputationNode(random(20, 30, 3)), new ComputationNode(random(30, 20, 4)))));
+        ComputationNode root = new ComputationNode(ComputationNodeType.POWER, new ArrayList<>(List.of(product)), 3);
+        engine.run(root);
+
+        // the product, then A^2 and A^2 * A inside the power
+        assertEquals(3, verifier.getChecked());
+        assertTrue(verifier.getFailures().isEmpty(), verifier.getFailures().toString());
+    }
+}
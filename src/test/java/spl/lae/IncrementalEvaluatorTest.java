@@ -0,0 +1,128 @@
+package spl.lae;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+import scheduling.TiredExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IncrementalEvaluatorTest {
+
+    private static TiredExecutor executor;
+
+    @BeforeAll
+    static void start() {
+        executor = new TiredExecutor(3);
+    }
+
+    @AfterAll
+    static void stop() throws InterruptedException {
+        executor.shutdown();
+    }
+
+    private static double[][] random(Random rnd, int rows, int cols) {
+        double[][] m = new double[rows][cols];
+        for (double[] row : m) {
+            for (int j = 0; j < cols; j++) row[j] = rnd.nextInt(21) - 10;
+        }
+        return m;
+    }
+
+    private static ComputationNode op(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, new ArrayList<>(List.of(children)));
+    }
+
+    private static ComputationNode copy(ComputationNode node) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            double[][] m = node.getMatrix();
+            double[][] c = new double[m.length][];
+            for (int i = 0; i < m.length; i++) c[i] = m[i].clone();
+            return new ComputationNode(c);
+        }
+        List<ComputationNode> children = new ArrayList<>();
+        for (ComputationNode child : node.getChildren()) children.add(copy(child));
+        return new ComputationNode(node.getNodeType(), children);
+    }
+
+    private static double[][] fromScratch(ComputationNode root) {
+        return new LinearAlgebraEngine(executor).run(copy(root)).getMatrix();
+    }
+
+    private static void assertClose(double[][] expected, double[][] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(expected[i], actual[i], 1e-9, "row " + i);
+        }
+    }
+
+    @Test
+    void rowUpdates_matchFullEvaluation() {
+        Random rnd = new Random(7);
+        // -(T(A) * B) + T(C) * D * E with A 12x10, B 12x9, C 8x10, D 8x8, E 8x9
+        ComputationNode a = new ComputationNode(random(rnd, 12, 10));
+        ComputationNode b = new ComputationNode(random(rnd, 12, 9));
+        ComputationNode c = new ComputationNode(random(rnd, 8, 10));
+        ComputationNode d = new ComputationNode(random(rnd, 8, 8));
+        ComputationNode e = new ComputationNode(random(rnd, 8, 9));
+        ComputationNode root = op(ComputationNodeType.ADD,
+                op(ComputationNodeType.NEGATE, op(ComputationNodeType.MULTIPLY, op(ComputationNodeType.TRANSPOSE, a), b)),
+                op(ComputationNodeType.MULTIPLY, op(ComputationNodeType.TRANSPOSE, c), d, e));
+        ComputationNode reference = copy(root);
+        IncrementalEvaluator inc = new IncrementalEvaluator(root, executor);
+        assertClose(fromScratch(reference), inc.evaluate());
+
+        ComputationNode[] leaves = {a, b, c, d, e};
+        for (int round = 0; round < 20; round++) {
+            int which = rnd.nextInt(leaves.length);
+            double[][] m = leaves[which].getMatrix();
+            int first = rnd.nextInt(m.length);
+            int count = 1 + rnd.nextInt(Math.min(2, m.length - first));
+            inc.updateRows(leaves[which], first, random(rnd, count, m[0].length));
+            assertClose(fromScratch(root), inc.recompute());
+        }
+    }
+
+    @Test
+    void singleRowChange_usesRankUpdate_andLessWork() {
+        Random rnd = new Random(3);
+        ComputationNode a = new ComputationNode(random(rnd, 40, 40));
+        ComputationNode b = new ComputationNode(random(rnd, 40, 40));
+        ComputationNode root = op(ComputationNodeType.MULTIPLY, a, b);
+        IncrementalEvaluator inc = new IncrementalEvaluator(root, executor);
+        inc.evaluate();
+        long full = inc.getLastFlops();
+
+        inc.updateRows(b, 5, random(rnd, 1, 40)); // one row of B: rank-1 update of every row of A*B
+        assertClose(fromScratch(root), inc.recompute());
+        assertEquals(1, inc.getLastRankUpdates());
+        assertTrue(inc.getLastFlops() * 5 < full, inc.getLastFlops() + " vs " + full);
+
+        inc.updateRows(a, 0, random(rnd, 1, 40)); // one row of A: one row of A*B
+        assertClose(fromScratch(root), inc.recompute());
+        assertEquals(0, inc.getLastRankUpdates());
+        assertEquals(2L * 40 * 40, inc.getLastFlops());
+    }
+
+    @Test
+    void unchangedSubtrees_areNotRecomputed() {
+        Random rnd = new Random(5);
+        ComputationNode a = new ComputationNode(random(rnd, 4, 4));
+        ComputationNode root = op(ComputationNodeType.ADD,
+                op(ComputationNodeType.NEGATE, a),
+                op(ComputationNodeType.TRANSPOSE, new ComputationNode(random(rnd, 4, 4))));
+        IncrementalEvaluator inc = new IncrementalEvaluator(root, executor);
+        inc.evaluate();
+        inc.updateRows(a, 2, random(rnd, 1, 4));
+        assertClose(fromScratch(root), inc.recompute());
+        assertEquals(2, inc.getLastRecomputedNodes());
+        assertThrows(IllegalArgumentException.class, () -> inc.updateRows(a, 3, random(rnd, 2, 4)));
+        assertThrows(IllegalArgumentException.class, () -> inc.updateRows(a, 0, random(rnd, 1, 3)));
+    }
+}
@@ -0,0 +1,87 @@
+package spl.lae;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import scheduling.TiredExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JobServerTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private TiredExecutor executor;
+    private JobServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        executor = new TiredExecutor(2);
+        server = new JobServer(0, executor, 2, 1, null);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.close();
+        executor.shutdown();
+    }
+
+    @Test
+    void pipelinedJobs_allCompleteWithMatchingIds() throws Exception {
+        try (JobClient client = new JobClient(server.getPort())) {
+            List<CompletableFuture<JsonNode>> futures = new ArrayList<>();
+            for (int k = 1; k <= 8; k++) {
+                JsonNode expr = mapper.readTree(
+                        "{\"operator\":\"+\",\"operands\":[[[" + k + ",0],[0," + k + "]],[[1,1],[1,1]]]}");
+                futures.add(client.submit(expr));
+            }
+            for (int k = 1; k <= 8; k++) {
+                JsonNode response = futures.get(k - 1).get(10, TimeUnit.SECONDS);
+                assertEquals(k, response.get("id").asLong());
+                assertTrue(response.has("metrics"));
+                assertArrayEquals(new double[][]{{k + 1, 1}, {1, k + 1}}, JobClient.resultOf(response));
+            }
+        }
+        assertEquals(8, server.getJobsCompleted());
+    }
+
+    @Test
+    void largeResult_isStreamedBackIntact() throws Exception {
+        int n = 300;
+        StringBuilder m = new StringBuilder("[");
+        for (int i = 0; i < n; i++) {
+            m.append(i == 0 ? "[" : ",[");
+            for (int j = 0; j < n; j++) {
+                m.append(j == 0 ? "" : ",").append(i * n + j);
+            }
+            m.append(']');
+        }
+        m.append(']');
+        try (JobClient client = new JobClient(server.getPort())) {
+            JsonNode response = client.submit(mapper.readTree("{\"operator\":\"-\",\"operands\":[" + m + "]}"))
+                    .get(10, TimeUnit.SECONDS);
+            double[][] result = JobClient.resultOf(response);
+            assertEquals(n, result.length);
+            assertEquals(-(n * n - 1), result[n - 1][n - 1]);
+            assertEquals(-n - 2, result[1][2]);
+            assertTrue(response.has("metrics"));
+        }
+    }
+
+    @Test
+    void invalidExpression_returnsError() throws Exception {
+        try (JobClient client = new JobClient(server.getPort())) {
+            JsonNode response = client.submit(mapper.readTree("{\"operator\":\"%\",\"operands\":[[[1]]]}"))
+                    .get(10, TimeUnit.SECONDS);
+            assertTrue(response.get("error").asText().contains("Unknown operator"));
+            assertThrows(IllegalStateException.class, () -> JobClient.resultOf(response));
+        }
+        assertEquals(1, server.getJobsFailed());
+    }
+}
@@ -0,0 +1,27 @@
+package spl.lae;
+
+import org.junit.jupiter.api.Test;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LinearAlgebraEngineTest {
+
+    @Test
+    void transpose_nonSquareOperand_swapsShape() {
+        double[][] m = {
+                {1, 2, 3},
+                {4, 5, 6}
+        };
+        ComputationNode root = new ComputationNode(ComputationNodeType.TRANSPOSE,
+                new ArrayList<>(List.of(new ComputationNode(m))));
+
+        double[][] result = new LinearAlgebraEngine(2).run(root).getMatrix();
+
+        assertArrayEquals(new double[][]{{1, 4}, {2, 5}, {3, 6}}, result);
+    }
+}
@@ -0,0 +1,174 @@
+package spl.lae;
+
+import memory.TiledMatrix;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+import parser.InputParser;
+import scheduling.TiredExecutor;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OutOfCoreEngineTest {
+
+    @TempDir
+    Path scratch;
+
+    private TiredExecutor executor;
+    private OutOfCoreEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        executor = new TiredExecutor(3);
+        engine = new OutOfCoreEngine(executor, scratch, 3); // tiny tiles so edges are exercised
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        engine.close();
+        executor.shutdown();
+    }
+
+    private static double[][] random(int rows, int cols, long seed) {
+        Random rnd = new Random(seed);
+        double[][] m = new double[rows][cols];
+        for (int i = 0; i < rows; i++)
+            for (int j = 0; j < cols; j++)
+                m[i][j] = rnd.nextInt(11) - 5;
+        return m;
+    }
+
+    private static double[][] multiply(double[][] a, double[][] b) {
+        double[][] c = new double[a.length][b[0].length];
+        for (int i = 0; i < a.length; i++)
+            for (int k = 0; k < b.length; k++)
+                for (int j = 0; j < b[0].length; j++)
+                    c[i][j] += a[i][k] * b[k][j];
+        return c;
+    }
+
+    private static ComputationNode op(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, new ArrayList<>(List.of(children)));
+    }
+
+    @Test
+    void tiles_roundTrip() {
+        double[][] m = random(7, 5, 1);
+        try (TiledMatrix t = TiledMatrix.fromArray(m, scratch, 3)) {
+            assertEquals(3, t.tileRowCount());
+            assertEquals(2, t.tileColCount());
+            assertArrayEquals(m, t.toArray());
+            // row ranges that start and end inside tile rows
+            assertArrayEquals(java.util.Arrays.copyOfRange(m, 2, 6), t.readRows(2, 6));
+            t.writeRows(1, new double[][]{m[6], m[5]});
+            assertArrayEquals(m[6], t.readRows(1, 2)[0]);
+            assertArrayEquals(m[5], t.readRowBand(0)[2]);
+        }
+    }
+
+    @Test
+    void multiply_matchesReference() {
+        double[][] a = random(7, 5, 2);
+        double[][] b = random(5, 8, 3);
+        try (TiledMatrix r = engine.evaluate(op(ComputationNodeType.MULTIPLY, new ComputationNode(a), new ComputationNode(b)))) {
+            assertArrayEquals(multiply(a, b), r.toArray());
+        }
+    }
+
+    @Test
+    void multiply_zeroTimesInfinity_isNaNLikeTheInMemoryEngine() {
+        double[][] a = {{0, 1}, {1, 1}};
+        double[][] b = {{Double.POSITIVE_INFINITY, 1}, {2, Double.NaN}};
+        try (TiledMatrix r = engine.evaluate(op(ComputationNodeType.MULTIPLY, new ComputationNode(a), new ComputationNode(b)))) {
+            double[][] out = r.toArray();
+            assertTrue(Double.isNaN(out[0][0]));
+            assertEquals(Double.POSITIVE_INFINITY, out[1][0]);
+            assertArrayEquals(multiply(a, b), out);
+        }
+    }
+
+    @Test
+    void mixedTree_matchesReference() {
+        // -(A + T(B)) with A 4x7, B 7x4
+        double[][] a = random(4, 7, 4);
+        double[][] b = random(7, 4, 5);
+        ComputationNode root = op(ComputationNodeType.NEGATE,
+                op(ComputationNodeType.ADD, new ComputationNode(a), op(ComputationNodeType.TRANSPOSE, new ComputationNode(b))));
+
+        double[][] expected = new double[4][7];
+        for (int i = 0; i < 4; i++)
+            for (int j = 0; j < 7; j++)
+                expected[i][j] = -(a[i][j] + b[j][i]);
+
+        try (TiledMatrix r = engine.evaluate(root)) {
+            assertArrayEquals(expected, r.toArray());
+        }
+    }
+
+    @Test
+    void lazyLeaves_areSpilledOnceAndNotKeptOnTheHeap() throws Exception {
+        double[][] a = random(7, 5, 8);
+        String m = new ObjectMapper().writeValueAsString(a);
+        Path input = Files.createTempFile(scratch, "input", ".json");
+        Files.writeString(input, "{\"operator\": \"+\", \"operands\": [" + m + ", " + m + "]}");
+        ComputationNode root = new InputParser(executor).parseLazy(input.toString());
+        ComputationNode leaf = root.getChildren().get(0);
+        root.replaceChild(1, leaf); // A + A with one shared leaf
+        assertNotNull(leaf.getLazySource());
+
+        try (TiledMatrix r = engine.evaluate(root)) {
+            double[][] expected = new double[7][5];
+            for (int i = 0; i < 7; i++)
+                for (int j = 0; j < 5; j++)
+                    expected[i][j] = 2 * a[i][j];
+            assertArrayEquals(expected, r.toArray());
+        }
+        assertEquals(1, engine.getSpilledLeaves());
+        assertFalse(leaf.isResident());
+    }
+
+    @Test
+    void wideLazyLeaf_isSpilledInBandsWithinTheBudget() throws Exception {
+        // 3 workers * 5 tiles * 3 * 3 = 135 values per band: a 200-wide leaf goes one row at a time
+        assertEquals(1, engine.bandRows(200));
+        assertEquals(3, engine.bandRows(10));
+        double[][] a = random(5, 200, 9);
+        Path input = Files.createTempFile(scratch, "input", ".json");
+        Files.writeString(input, "{\"operator\": \"-\", \"operands\": [" + new ObjectMapper().writeValueAsString(a) + "]}");
+        ComputationNode root = new InputParser(executor).parseLazy(input.toString());
+
+        try (TiledMatrix r = engine.evaluate(root)) {
+            double[][] out = r.toArray();
+            for (int i = 0; i < 5; i++)
+                for (int j = 0; j < 200; j++)
+                    assertEquals(-a[i][j], out[i][j]);
+        }
+    }
+
+    @Test
+    void dimensionMismatch_throws_andLeavesNoScratchFiles() {
+        ComputationNode root = op(ComputationNodeType.ADD, new ComputationNode(random(2, 3, 6)), new ComputationNode(random(3, 2, 7)));
+        assertThrows(IllegalArgumentException.class, () -> engine.evaluate(root));
+        File[] left = scratch.toFile().listFiles();
+        assertNotNull(left);
+        assertEquals(0, left.length);
+    }
+
+    @Test
+    void tileSizeFor_respectsBudget() {
+        int t = OutOfCoreEngine.tileSizeFor(64L * 1024 * 1024, 4);
+        assertTrue(4L * 5 * t * t * Double.BYTES <= 64L * 1024 * 1024);
+        assertTrue(t >= 16);
+    }
+}
@@ -0,0 +1,125 @@
+package spl.lae;
+
+import org.junit.jupiter.api.Test;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultCacheTest {
+
+    private static double[][] m(double... values) {
+        // 2x2 helper
+        return new double[][]{{values[0], values[1]}, {values[2], values[3]}};
+    }
+
+    private static ComputationNode op(ComputationNodeType type, ComputationNode... children) {
+        List<ComputationNode> list = new ArrayList<>(List.of(children));
+        return new ComputationNode(type, list);
+    }
+
+    // ---------- ResultCache ----------
+
+    @Test
+    void getAndPut_countHitsAndMisses() {
+        ResultCache cache = new ResultCache(1024);
+        SubtreeKey key = SubtreeKey.ofMatrix(m(1, 2, 3, 4));
+
+        assertNull(cache.get(key));
+        cache.put(key, m(5, 6, 7, 8));
+        assertArrayEquals(m(5, 6, 7, 8), cache.get(key));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(32, cache.getSizeBytes());
+    }
+
+    @Test
+    void returnedMatrix_isACopy() {
+        ResultCache cache = new ResultCache(1024);
+        SubtreeKey key = SubtreeKey.ofMatrix(m(1, 2, 3, 4));
+        double[][] value = m(5, 6, 7, 8);
+        cache.put(key, value);
+
+        value[0][0] = 100;
+        cache.get(key)[0][1] = 100;
+
+        assertArrayEquals(m(5, 6, 7, 8), cache.get(key));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed_whenOverBudget() {
+        ResultCache cache = new ResultCache(64); // room for two 2x2 matrices
+        SubtreeKey a = SubtreeKey.ofMatrix(m(1, 0, 0, 0));
+        SubtreeKey b = SubtreeKey.ofMatrix(m(2, 0, 0, 0));
+        SubtreeKey c = SubtreeKey.ofMatrix(m(3, 0, 0, 0));
+
+        cache.put(a, m(1, 1, 1, 1));
+        cache.put(b, m(2, 2, 2, 2));
+        cache.get(a); // a is now most recently used
+        cache.put(c, m(3, 3, 3, 3));
+
+        assertTrue(cache.contains(a));
+        assertFalse(cache.contains(b));
+        assertTrue(cache.contains(c));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(64, cache.getSizeBytes());
+    }
+
+    @Test
+    void oversizedEntry_isNotCached() {
+        ResultCache cache = new ResultCache(16);
+        SubtreeKey key = SubtreeKey.ofMatrix(m(1, 2, 3, 4));
+        cache.put(key, m(1, 2, 3, 4));
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    // ---------- SubtreeKey ----------
+
+    @Test
+    void structurallyEqualTrees_haveEqualKeys() {
+        ComputationNode t1 = op(ComputationNodeType.MULTIPLY, new ComputationNode(m(1, 2, 3, 4)), new ComputationNode(m(5, 6, 7, 8)));
+        ComputationNode t2 = op(ComputationNodeType.MULTIPLY, new ComputationNode(m(1, 2, 3, 4)), new ComputationNode(m(5, 6, 7, 8)));
+        ComputationNode swapped = op(ComputationNodeType.MULTIPLY, new ComputationNode(m(5, 6, 7, 8)), new ComputationNode(m(1, 2, 3, 4)));
+
+        SubtreeKey k1 = SubtreeKey.computeAll(t1).get(t1);
+        assertEquals(k1, SubtreeKey.computeAll(t2).get(t2));
+        assertNotEquals(k1, SubtreeKey.computeAll(swapped).get(swapped));
+    }
+
+    // ---------- engine integration ----------
+
+    @Test
+    void repeatedSubtrees_areEvaluatedOnce() {
+        // (A*B) + (A*B) with distinct but equal leaf instances
+        ComputationNode left = op(ComputationNodeType.MULTIPLY, new ComputationNode(m(1, 2, 3, 4)), new ComputationNode(m(1, 0, 0, 1)));
+        ComputationNode right = op(ComputationNodeType.MULTIPLY, new ComputationNode(m(1, 2, 3, 4)), new ComputationNode(m(1, 0, 0, 1)));
+        ComputationNode root = op(ComputationNodeType.ADD, left, right);
+
+        LinearAlgebraEngine engine = new LinearAlgebraEngine(2);
+        ComputationNode result = engine.run(root);
+
+        assertArrayEquals(m(2, 4, 6, 8), result.getMatrix());
+        assertEquals(1, engine.getEliminatedSubtrees());
+    }
+
+    @Test
+    void cacheIsReusedAcrossRuns() {
+        ResultCache cache = new ResultCache(1 << 20);
+
+        LinearAlgebraEngine first = new LinearAlgebraEngine(2);
+        first.setResultCache(cache);
+        ComputationNode r1 = first.run(op(ComputationNodeType.NEGATE, new ComputationNode(m(1, 2, 3, 4))));
+
+        LinearAlgebraEngine second = new LinearAlgebraEngine(2);
+        second.setResultCache(cache);
+        ComputationNode r2 = second.run(op(ComputationNodeType.NEGATE, new ComputationNode(m(1, 2, 3, 4))));
+
+        assertArrayEquals(m(-1, -2, -3, -4), r1.getMatrix());
+        assertArrayEquals(m(-1, -2, -3, -4), r2.getMatrix());
+        assertEquals(1, cache.getHits());
+    }
+}
@@ -0,0 +1,122 @@
+package spl.lae;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+import parser.OutputWriter;
+import parser.RowStreamWriter;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RowPipelineTest {
+
+    private static ComputationNode op(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, new ArrayList<>(List.of(children)));
+    }
+
+    private static ComputationNode leaf(double[][] m) {
+        double[][] copy = new double[m.length][];
+        for (int i = 0; i < m.length; i++) {
+            copy[i] = m[i].clone();
+        }
+        return new ComputationNode(copy);
+    }
+
+    private static double[][] random(int rows, int cols, long seed) {
+        Random rnd = new Random(seed);
+        double[][] m = new double[rows][cols];
+        for (double[] row : m) {
+            for (int j = 0; j < cols; j++) {
+                row[j] = rnd.nextInt(19) - 9;
+            }
+        }
+        return m;
+    }
+
+    private static double[][] run(Supplier<ComputationNode> tree, boolean pipelined, int[] pipelinedNodes) {
+        LinearAlgebraEngine engine = new LinearAlgebraEngine(3);
+        engine.setRowPipelining(pipelined);
+        double[][] result = engine.run(tree.get()).getMatrix();
+        pipelinedNodes[0] = engine.getPipelinedNodes();
+        return result;
+    }
+
+    private static void assertSameAsNodeByNode(Supplier<ComputationNode> tree, int expectedPipelined) {
+        int[] count = new int[1];
+        double[][] expected = run(tree, false, count);
+        assertEquals(0, count[0]);
+        double[][] actual = run(tree, true, count);
+        assertArrayEquals(expected, actual);
+        assertEquals(expectedPipelined, count[0]);
+    }
+
+    @Test
+    void negatedSum_isOnePipeline() {
+        double[][] a = random(7, 5, 1);
+        double[][] b = random(7, 5, 2);
+        assertSameAsNodeByNode(() -> op(ComputationNodeType.NEGATE,
+                op(ComputationNodeType.ADD, leaf(a), leaf(b))), 1);
+    }
+
+    @Test
+    void transposePlusMatrix_readsColumnsDirectly() {
+        double[][] a = random(4, 6, 3);
+        double[][] c = random(6, 4, 4);
+        assertSameAsNodeByNode(() -> op(ComputationNodeType.ADD,
+                op(ComputationNodeType.TRANSPOSE, leaf(a)), leaf(c)), 1);
+    }
+
+    @Test
+    void productOfSum_plusMatrix_fusesAcrossTheMultiply() {
+        double[][] a = random(5, 3, 5);
+        double[][] b = random(5, 3, 6);
+        double[][] c = random(3, 4, 7);
+        double[][] d = random(5, 4, 8);
+        // -(((A + B) * C) + D): four nodes, the root plus three pipelined ones
+        assertSameAsNodeByNode(() -> op(ComputationNodeType.NEGATE, op(ComputationNodeType.ADD,
+                op(ComputationNodeType.MULTIPLY, op(ComputationNodeType.ADD, leaf(a), leaf(b)), leaf(c)),
+                leaf(d))), 3);
+    }
+
+    @Test
+    void sharedSubtree_isMaterialisedOnce() {
+        double[][] a = random(4, 4, 9);
+        double[][] b = random(4, 4, 10);
+        // (A + B) appears twice and is shared, so it is evaluated on its own first
+        assertSameAsNodeByNode(() -> op(ComputationNodeType.ADD,
+                op(ComputationNodeType.NEGATE, op(ComputationNodeType.ADD, leaf(a), leaf(b))),
+                op(ComputationNodeType.ADD, leaf(a), leaf(b))), 1);
+    }
+
+    @Test
+    void streamedRoot_matchesTheWrittenResult(@TempDir Path dir) throws Exception {
+        double[][] a = random(6, 6, 11);
+        double[][] b = random(6, 6, 12);
+        List<Supplier<ComputationNode>> trees = List.of(
+                () -> op(ComputationNodeType.NEGATE, op(ComputationNodeType.ADD, leaf(a), leaf(b))), // pipeline
+                () -> op(ComputationNodeType.MULTIPLY, leaf(a), leaf(b)),                           // row tasks
+                () -> op(ComputationNodeType.TRANSPOSE, leaf(a)),                                   // readback
+                () -> leaf(b));                                                                     // no evaluation
+        for (int k = 0; k < trees.size(); k++) {
+            Path expected = dir.resolve(k + ".expected.json");
+            OutputWriter.write(new LinearAlgebraEngine(2).run(trees.get(k).get()).getMatrix(), expected.toString());
+
+            Path streamed = dir.resolve(k + ".streamed.json");
+            try (RowStreamWriter stream = new RowStreamWriter(streamed.toString())) {
+                LinearAlgebraEngine engine = new LinearAlgebraEngine(2);
+                engine.setResultStream(stream);
+                engine.run(trees.get(k).get());
+                stream.finish();
+            }
+            assertEquals(Files.readString(expected), Files.readString(streamed), "tree " + k);
+        }
+    }
+}